@@ -0,0 +1,25 @@
+import java_cup.runtime.*;
+
+/***
+ * BatchScanner
+ *
+ * A Scanner that can also hand over its tokens several at a time.  The
+ * parser (see scan() in brevis.cup) refills a small array of lookahead
+ * tokens with one next_tokens call instead of making an interface call
+ * per token.
+ *
+ * The Scanner returned by TokenBuffer.scanner() is a BatchScanner: its
+ * tokens are already scanned into primitive arrays, and next_tokens
+ * builds the Symbols for a batch in one loop over them.  Yylex is not,
+ * since it would still have to run its matching loop once per token.
+ ***/
+interface BatchScanner extends Scanner {
+    /***
+     * Stores the next tokens in buf[offset], buf[offset+1], ..., at most
+     * count of them, and returns how many were stored (at least one, if
+     * count is positive).  Fewer than count are stored only when the
+     * last one is the EOF token; after that every call stores just EOF,
+     * as next_token() would return.
+     ***/
+    int next_tokens(Symbol[] buf, int offset, int count) throws Exception;
+}
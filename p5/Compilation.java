@@ -0,0 +1,63 @@
+/**
+ * Compilation
+ *
+ * Per-compilation state that used to live in static fields: the error
+ * flag and diagnostics (formerly ErrMsg's statics), plus the table of
+ * interned identifiers and the file's line-start table, which turns
+ * token positions into lines and columns.  One Compilation is shared by
+ * the Yylex, parser and name analysis working on a file, so several
+ * files can be compiled at once in one JVM as long as each has its own
+ * Compilation.
+ */
+class Compilation {
+    private final ErrMsg errMsg;
+    private final NameTable names = new NameTable();
+    private LineMap lineMap = new LineMap();
+
+    /**
+     * Creates a compilation that reports diagnostics on System.err.
+     */
+    Compilation() {
+        this(new ErrMsg());
+    }
+
+    /**
+     * Creates a compilation that reports diagnostics through errMsg.
+     */
+    Compilation(ErrMsg errMsg) {
+        this.errMsg = errMsg;
+        errMsg.setLineMap(lineMap);
+    }
+
+    /**
+     * Returns the error flag and diagnostics of this compilation.
+     */
+    ErrMsg errMsg() {
+        return errMsg;
+    }
+
+    /**
+     * Returns the table identifiers in this compilation are interned in.
+     */
+    NameTable names() {
+        return names;
+    }
+
+    /**
+     * Returns the line-start table of the file being compiled, which the
+     * scanner fills in.
+     */
+    LineMap lineMap() {
+        return lineMap;
+    }
+
+    /**
+     * Replaces the line-start table, e.g. with that of an edited copy of
+     * the file (see IncrementalLexer).  Positions in later diagnostics
+     * are resolved with the new table.
+     */
+    void setLineMap(LineMap lineMap) {
+        this.lineMap = lineMap;
+        errMsg.setLineMap(lineMap);
+    }
+}
@@ -1,10 +1,86 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ * Each Compilation has its own ErrMsg, and so its own error flag.
+ * Errors are located either by line and character number or by a
+ * position in the file, which the compilation's LineMap resolves.
+ *
+ * An ErrMsg created by held() prints nothing; it keeps its messages
+ * until replay() passes them on to another ErrMsg.  Parallel lexing
+ * uses this to report each chunk's messages in source order.
+ *
+ * A printing ErrMsg can also hold its messages for a while: after
+ * hold(), each message waits until release() is passed a position at
+ * or after the one it was reported at.  P5 holds the messages of a file
+ * scanned into a TokenBuffer, and the parser releases them as it reaches
+ * the tokens (see scan() in brevis.cup).
  */
 class ErrMsg {
-    private static boolean err = false;
+    private boolean err = false;
+    private final PrintStream out;
+    private final List<Message> held;  // null unless created by held()
+    private List<Message> waiting;     // non-null while hold() is in force
+    private LineMap lineMap;           // resolves positions
+
+    /**
+     * Creates an ErrMsg that prints its messages on System.err.
+     */
+    ErrMsg() {
+        this(System.err);
+    }
+
+    /**
+     * Creates an ErrMsg that prints its messages on out.
+     */
+    ErrMsg(PrintStream out) {
+        this.out = out;
+        this.held = null;
+    }
+
+    private ErrMsg(List<Message> held) {
+        this.out = null;
+        this.held = held;
+    }
+
+    /**
+     * Creates an ErrMsg that keeps its messages for a later replay().
+     */
+    static ErrMsg held() {
+        return new ErrMsg(new ArrayList<Message>());
+    }
+
+    /**
+     * Sets the map used to resolve positions into lines and columns.
+     */
+    void setLineMap(LineMap lineMap) {
+        this.lineMap = lineMap;
+    }
+
+    /**
+     * Generates a fatal error message.
+     * @param pos position in the file of the error
+     * @param msg associated message for error
+     */
+    void fatal(int pos, String msg) {
+        err = true;
+        report(new Message(pos, lineMap.line(pos), lineMap.column(pos),
+                           Message.ERROR, msg));
+    }
+
+    /**
+     * Generates a warning message.
+     * @param pos position in the file of the warning
+     * @param msg associated message for warning
+     */
+    void warn(int pos, String msg) {
+        report(new Message(pos, lineMap.line(pos), lineMap.column(pos),
+                           Message.WARNING, msg));
+    }
 
     /**
      * Generates a fatal error message.
@@ -12,9 +88,9 @@ class ErrMsg {
      * @param charNum character number (i.e., column) for error location
      * @param msg associated message for error
      */
-    static void fatal(int lineNum, int charNum, String msg) {
+    void fatal(int lineNum, int charNum, String msg) {
         err = true;
-        System.err.println(lineNum + ":" + charNum + " ****ERROR**** " + msg);
+        report(new Message(-1, lineNum, charNum, Message.ERROR, msg));
     }
 
     /**
@@ -23,14 +99,102 @@ class ErrMsg {
      * @param charNum character number (i.e., column) for warning location
      * @param msg associated message for warning
      */
-    static void warn(int lineNum, int charNum, String msg) {
-        System.err.println(lineNum + ":" + charNum + " ****WARNING**** " + msg);
+    void warn(int lineNum, int charNum, String msg) {
+        report(new Message(-1, lineNum, charNum, Message.WARNING, msg));
     }
 
     /**
      * Returns the err flag.
      */
-    static boolean getErr() {
+    boolean getErr() {
         return err;
     }
+
+    /**
+     * Passes the messages held so far on to another ErrMsg, in the order
+     * they were generated, with lineDelta added to their line numbers.
+     * They lose their positions, which are in a different text, so if
+     * the other ErrMsg is holding, the next release() prints them.
+     */
+    void replay(ErrMsg to, int lineDelta) {
+        for (Message m : held) {
+            if (m.kind == Message.ERROR) {
+                to.err = true;
+            }
+            to.report(new Message(-1, m.lineNum + lineDelta, m.charNum,
+                                  m.kind, m.msg));
+        }
+        held.clear();
+    }
+
+    /**
+     * Starts holding messages instead of printing them, until release()
+     * or stopHolding().  Does nothing if they are already being held.
+     */
+    void hold() {
+        if (held == null && waiting == null) {
+            waiting = new ArrayList<Message>();
+        }
+    }
+
+    /**
+     * Prints, in the order they were generated, the waiting messages
+     * reported at or before position pos, and those reported by line
+     * and character number.  Later ones go on waiting.
+     */
+    void release(int pos) {
+        if (waiting == null) {
+            return;
+        }
+        int kept = 0;
+        for (Message m : waiting) {
+            if (m.pos <= pos) {
+                print(m);
+            } else {
+                waiting.set(kept++, m);
+            }
+        }
+        waiting.subList(kept, waiting.size()).clear();
+    }
+
+    /**
+     * Stops holding messages.  Those still waiting are dropped: they
+     * belong to text after the point the caller stopped at.
+     */
+    void stopHolding() {
+        waiting = null;
+    }
+
+    private void report(Message m) {
+        if (held != null) {
+            held.add(m);
+        } else if (waiting != null) {
+            waiting.add(m);
+        } else {
+            print(m);
+        }
+    }
+
+    private void print(Message m) {
+        out.println(m.lineNum + ":" + m.charNum + m.kind + m.msg);
+    }
+
+    private static class Message {
+        static final String ERROR = " ****ERROR**** ";
+        static final String WARNING = " ****WARNING**** ";
+
+        final int pos;      // -1 if reported by line and character
+        final int lineNum;
+        final int charNum;
+        final String kind;
+        final String msg;
+
+        Message(int pos, int lineNum, int charNum, String kind, String msg) {
+            this.pos = pos;
+            this.lineNum = lineNum;
+            this.charNum = charNum;
+            this.kind = kind;
+            this.msg = msg;
+        }
+    }
 }
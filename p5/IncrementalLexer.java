@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/***
+ * IncrementalLexer
+ *
+ * Re-lexes a file after an edit without rescanning all of it.  No
+ * brevis token crosses a newline, so replacing some whole lines can
+ * only change the tokens on those lines: relex() scans just the
+ * replacement text, copies the tokens before it, and copies the tokens
+ * after it with their lines and offsets moved by however many lines and
+ * characters the edit added or removed.
+ *
+ * The result refers to a new copy of the edited text, has its own
+ * LineMap, and is what Yylex.tokenize() would give for that text.  The
+ * new LineMap also replaces the compilation's, so that its diagnostics
+ * and the result's positions agree.
+ * Diagnostics are only reported for the rescanned lines (with their
+ * lines in the new text); those for the rest of the file were reported
+ * when it was first lexed.
+ *
+ * Only the rescanning is proportional to the edit.  Each relex still
+ * costs O(n) in the size of the whole file: the text is copied into a
+ * new array (Yylex and TokenBuffer need it in one piece), the line
+ * starts are copied, and so are the tokens after the edit, whose
+ * offsets change.  The tokens before it are shared with the old buffer,
+ * a chunk at a time, rather than copied.  These are plain array copies,
+ * far cheaper per character than scanning (see RelexBench, `make
+ * relexbench`), but an editor relexing at every keystroke of a large
+ * file would want a gap buffer or piece table under Yylex instead.
+ ***/
+class IncrementalLexer {
+    /***
+     * Replaces lines firstLine .. lastLine (1-based, inclusive) of the
+     * text lexed into old with text, and returns the tokens of the
+     * result.  Pass lastLine = firstLine - 1 to insert text before
+     * firstLine without replacing anything.  text normally consists of
+     * whole lines, each ending in a newline; if it does not end in one,
+     * the line it runs into is rescanned as well.  comp is the
+     * compilation old was lexed in; it gets the result's LineMap.
+     * Takes time linear in the size of the text (see above).
+     ***/
+    static TokenBuffer relex(TokenBuffer old, int firstLine, int lastLine,
+                             String text, Compilation comp) {
+        if (firstLine < 1 || lastLine < firstLine - 1) {
+            throw new IllegalArgumentException("bad line range " +
+                                               firstLine + ".." + lastLine);
+        }
+        char[] oldText = old.source();
+        int oldBase = old.base();
+        int oldLength = old.textLength();
+        LineMap oldLines = old.lineMap();
+        if (firstLine > oldLines.lines()) {
+            throw new IllegalArgumentException("bad line range " +
+                                               firstLine + ".." + lastLine);
+        }
+        int from = oldLines.start(firstLine);
+        int oldTo = lastLine < oldLines.lines() ? oldLines.start(lastLine + 1)
+                                                : oldLength;
+
+        // the new text: old[0 .. from-1], text, old[oldTo ..]
+        int delta = text.length() - (oldTo - from);
+        int length = oldLength + delta;
+        char[] source = new char[length];
+        System.arraycopy(oldText, oldBase, source, 0, from);
+        text.getChars(0, text.length(), source, from);
+        System.arraycopy(oldText, oldBase + oldTo, source,
+                         from + text.length(), oldLength - oldTo);
+
+        // rescan up to the end of a line, even if text stops short of one
+        int to = from + text.length();
+        while (to < length && to > from && source[to - 1] != '\n') {
+            to++;
+        }
+        oldTo = to - delta;
+
+        Compilation scanComp = new Compilation(ErrMsg.held());
+        Yylex scanner = new Yylex(source, from, to - from);
+        scanner.setCompilation(scanComp);
+        TokenBuffer middle;
+        try {
+            middle = scanner.tokenize();
+        } catch (IOException ex) {  // cannot happen: there is no reader
+            throw new UncheckedIOException(ex);
+        }
+        scanComp.errMsg().replay(comp.errMsg(), firstLine - 1);
+
+        // the line starts: those before the edit, those in the rescanned
+        // stretch (up to and including its end), then the rest, moved
+        LineMap lines = oldLines.prefix(firstLine);
+        lines.append(scanComp.lineMap(), from);
+        for (int line = oldLines.line(oldTo) + 1; line <= oldLines.lines();
+             line++) {
+            lines.add(oldLines.start(line) + delta);
+        }
+
+        comp.setLineMap(lines);
+        TokenBuffer result = new TokenBuffer(source, 0, length, comp.names(),
+                                             lines);
+        result.appendShared(old, old.find(from));
+        result.append(middle, from);
+        result.append(old, old.find(oldTo), old.size(), delta);
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+/***
+ * Keywords
+ *
+ * Classifies the text of an identifier-shaped token as a keyword or a
+ * plain ID.  The scanner's DFA only recognises the identifier pattern;
+ * keeping a literal rule per keyword ahead of it would give the DFA a
+ * chain of states for every keyword prefix, and every identifier would
+ * walk them.  Instead, each identifier is looked up here with a perfect
+ * hash on its first and last characters and its length, followed by
+ * one comparison against the only keyword it could be.
+ *
+ * The hash is generated when the class is loaded: the multipliers are
+ * the first pair for which no two keywords collide, so adding a keyword
+ * to KEYWORDS is all it takes.
+ ***/
+class Keywords {
+    private static final String[] KEYWORDS = {
+        "boolean", "integer", "void", "record", "if", "else",
+        "while", "scan", "print", "return", "true", "false"
+    };
+    private static final int[] KINDS = {
+        sym.BOOL, sym.INT, sym.VOID, sym.RECORD, sym.IF, sym.ELSE,
+        sym.WHILE, sym.SCAN, sym.PRINT, sym.RETURN, sym.TRUE, sym.FALSE
+    };
+
+    private static int mask;       // table size - 1
+    private static int first;      // multiplier for the first character
+    private static int last;       // multiplier for the last character
+    private static char[][] words;  // keyword text by hash slot, or null
+    private static int[] kinds;     // keyword kind by hash slot
+
+    static {
+        for (int size = 16; words == null; size *= 2) {
+            search(size);
+        }
+    }
+
+    /***
+     * Looks for multipliers giving a collision-free table of the given
+     * size (a power of 2), and fills the table if there are some.
+     ***/
+    private static void search(int size) {
+        for (int a = 1; a < size * 4; a++) {
+            for (int b = 0; b < size * 4; b++) {
+                boolean[] used = new boolean[size];
+                boolean perfect = true;
+                for (String w : KEYWORDS) {
+                    int h = hash(w.charAt(0), w.charAt(w.length() - 1),
+                                 w.length(), a, b, size - 1);
+                    if (used[h]) {
+                        perfect = false;
+                        break;
+                    }
+                    used[h] = true;
+                }
+                if (perfect) {
+                    mask = size - 1;
+                    first = a;
+                    last = b;
+                    words = new char[size][];
+                    kinds = new int[size];
+                    for (int k = 0; k < KEYWORDS.length; k++) {
+                        String w = KEYWORDS[k];
+                        int h = hash(w.charAt(0), w.charAt(w.length() - 1),
+                                     w.length(), a, b, mask);
+                        words[h] = w.toCharArray();
+                        kinds[h] = KINDS[k];
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int hash(char c0, char cn, int length, int a, int b,
+                            int mask) {
+        return (c0 * a + cn * b + length) & mask;
+    }
+
+    /***
+     * Returns the kind of the token buf[offset .. offset+length-1], which
+     * matched the identifier pattern: the keyword's kind, or sym.ID.
+     ***/
+    static int kind(char[] buf, int offset, int length) {
+        int h = hash(buf[offset], buf[offset + length - 1], length,
+                     first, last, mask);
+        char[] w = words[h];
+        if (w == null || w.length != length) {
+            return sym.ID;
+        }
+        for (int i = 1; i < length; i++) {
+            if (w[i] != buf[offset + i]) {
+                return sym.ID;
+            }
+        }
+        return w[0] == buf[offset] ? kinds[h] : sym.ID;
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java_cup.runtime.*;
+
+/****
+ * Scanner throughput benchmark.
+ *
+ * Lexes a brevis source file to EOF several times in each of the
+ * scanner's modes and reports, for each, the best time, throughput and
+ * the bytes allocated per token:
+ *   reader    the usual Reader-based Yylex, one Symbol per token
+ *   mapped    Yylex run straight out of a memory-mapped copy of the file
+ *   line      mapped, with YylexLines: the same rules with %line, and
+ *             yyline kept up to date at every match (see the Makefile)
+ *   flat      mapped, with YylexTable: the same rules with transition
+ *             tables in one %flat array instead of %directcode
+ *   buffered  mapped, with the tokens collected into a TokenBuffer
+ *   parallel  buffered, split into newline-aligned chunks lexed on the
+ *             common fork/join pool (see ParallelLexer)
+ *
+ * Command-line arguments:
+ * 1. the file to be scanned
+ * 2. (optional) the number of rounds to run, default 5
+ ****/
+
+public class LexBench {
+    /***
+     * One way of scanning a file; returns the number of tokens seen.
+     ***/
+    interface Mode {
+        int run(File file) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: java LexBench <file> [rounds]");
+            System.exit(-1);
+        }
+        File file = new File(args[0]);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String[] names = { "reader", "mapped", "line", "flat", "buffered",
+                           "parallel" };
+        Mode[] modes = {
+            f -> count(new Yylex(new FileReader(f))),
+            f -> count(new Yylex(Yylex.map(f))),
+            f -> countLines(new YylexLines(Yylex.map(f))),
+            f -> count(new YylexTable(Yylex.map(f))),
+            f -> new Yylex(Yylex.map(f)).tokenize().size(),
+            f -> ParallelLexer.tokenize(Yylex.map(f),
+                                        new Compilation()).size()
+        };
+        run(file, rounds, names, modes);
+    }
+
+    /***
+     * Runs each mode on file, rounds times in turn, and reports the best
+     * time of each and what it allocated per token in the last round.
+     ***/
+    static void run(File file, int rounds, String[] names, Mode[] modes)
+        throws Exception {
+        long[] best = new long[modes.length];
+        long[] allocated = new long[modes.length];
+        java.util.Arrays.fill(best, Long.MAX_VALUE);
+        int tokens = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int m = 0; m < modes.length; m++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                tokens = modes[m].run(file);
+                best[m] = Math.min(best[m], System.nanoTime() - start);
+                allocated[m] = allocatedBytes() - bytes;
+            }
+        }
+
+        System.out.println(file + ": " + file.length() + " bytes, " +
+                           tokens + " tokens");
+        for (int m = 0; m < modes.length; m++) {
+            report(names[m], file.length(), best[m],
+                   (double)allocated[m] / Math.max(tokens, 1));
+        }
+    }
+
+    /***
+     * Scans to EOF and returns the number of tokens seen.
+     ***/
+    private static int count(Scanner scanner) throws Exception {
+        int n = 0;
+        while (scanner.next_token().sym != sym.EOF) {
+            n++;
+        }
+        return n;
+    }
+
+    /***
+     * Scans to EOF with %line and returns the number of tokens seen.
+     * Checks that yyline has counted every line.
+     ***/
+    private static int countLines(YylexLines scanner) throws IOException {
+        int n = 0;
+        while (scanner.next_token().sym != sym.EOF) {
+            n++;
+        }
+        int expected = scanner.compilation().lineMap().lines() - 1;
+        if (scanner.line() != expected) {
+            throw new IllegalStateException("yyline is " + scanner.line() +
+                                            ", not " + expected);
+        }
+        return n;
+    }
+
+    /***
+     * Bytes allocated so far by this thread (HotSpot only; 0 elsewhere).
+     ***/
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private static void report(String mode, long bytes, long nanos,
+                               double bytesPerToken) {
+        double ms = nanos / 1e6;
+        double mbs = (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+        System.out.printf("  %-9s %9.1f ms %8.1f MB/s %8.1f B/token%n",
+                          mode, ms, mbs, bytesPerToken);
+    }
+}
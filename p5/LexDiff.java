@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java_cup.runtime.*;
+
+/****
+ * Differential check of the scanner's forms.
+ *
+ * Yylex is built from brevis.jlex with %directcode, so its transitions
+ * are code; YylexTable is built from the same rules with JLex's usual
+ * transition tables (see the lexdiff target in the Makefile).  For each
+ * file, both are run over a memory-mapped copy, and Yylex also over a
+ * Reader, and the token streams (kind, position and value) and the
+ * warnings and errors printed must be the same.
+ *
+ * The file is also lexed by ParallelLexer, cut into chunks at many
+ * places, and rebuilt by IncrementalLexer after random edits of its
+ * lines, and those must give the same tokens and messages too (for an
+ * edit, just the messages on the lines that relex rescans).
+ *
+ * Command-line arguments: the files to be scanned.
+ ****/
+
+public class LexDiff {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java LexDiff <file> ...");
+            System.exit(-1);
+        }
+        boolean same = true;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String arg : args) {
+            File file = new File(arg);
+            ByteArrayOutputStream tableMsgs = new ByteArrayOutputStream();
+            Compilation tableComp =
+                new Compilation(new ErrMsg(new PrintStream(tableMsgs)));
+            YylexTable table = new YylexTable(Yylex.map(file));
+            table.setCompilation(tableComp);
+            String expectedTokens = tokens(table, tableComp);
+            String expected = expectedTokens + tableMsgs;
+
+            ByteArrayOutputStream mappedMsgs = new ByteArrayOutputStream();
+            Compilation mappedComp =
+                new Compilation(new ErrMsg(new PrintStream(mappedMsgs)));
+            Yylex mapped = new Yylex(Yylex.map(file));
+            mapped.setCompilation(mappedComp);
+            same &= check(file, "mapped", expected,
+                          tokens(mapped, mappedComp) + mappedMsgs);
+
+            ByteArrayOutputStream readerMsgs = new ByteArrayOutputStream();
+            Compilation readerComp =
+                new Compilation(new ErrMsg(new PrintStream(readerMsgs)));
+            // UTF-8, as the mapped input is decoded
+            Yylex reader = new Yylex(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+            reader.setCompilation(readerComp);
+            same &= check(file, "reader", expected,
+                          tokens(reader, readerComp) + readerMsgs);
+
+            CharBuffer text = Yylex.decode(Yylex.map(file));
+            for (int target = 1; target <= text.remaining(); target *= 4) {
+                ByteArrayOutputStream parallelMsgs =
+                    new ByteArrayOutputStream();
+                Compilation parallelComp =
+                    new Compilation(new ErrMsg(new PrintStream(parallelMsgs)));
+                TokenBuffer parallel = ParallelLexer.tokenize(
+                    text.array(), text.position(), text.remaining(),
+                    parallelComp, pool, target);
+                same &= check(file, "parallel, " + target, expected,
+                              tokens(parallel.scanner(), parallelComp) +
+                              parallelMsgs);
+            }
+
+            same &= checkEdits(file, text.toString(), expectedTokens,
+                               tableMsgs.toString());
+        }
+        pool.shutdown();
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    // random edits made to each file for IncrementalLexer to undo
+    private static final int EDITS = 100;
+
+    /***
+     * Checks IncrementalLexer on random edits of text, whose tokens and
+     * messages are expectedTokens and expectedMsgs.  Each edit replaces
+     * lines a .. b of text with up to three other whole lines of it (or
+     * with none), lexes that, and then relexes it with lines a .. b put
+     * back, which must give text's tokens again.  Of the messages, relex
+     * only reports those for lines a .. b.
+     ***/
+    private static boolean checkEdits(File file, String text,
+                                      String expectedTokens,
+                                      String expectedMsgs)
+        throws IOException {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start) + 1;
+            if (end == 0) {
+                end = text.length();
+            }
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        // lines that end in a newline, and so can be moved anywhere
+        int whole = lines.size();
+        if (!text.endsWith("\n") && whole > 0) {
+            whole--;
+        }
+
+        Random random = new Random(1);
+        for (int edit = 0; edit < EDITS; edit++) {
+            int a = 1 + random.nextInt(whole + 1);  // 1-based
+            int b = Math.min(a - 1 + random.nextInt(4), lines.size());
+            int c = whole == 0 ? 0 : random.nextInt(whole);
+            int d = Math.min(c + random.nextInt(4), whole);  // exclusive
+
+            StringBuilder old = new StringBuilder();
+            StringBuilder put = new StringBuilder();
+            for (int k = 0; k < a - 1; k++) {
+                old.append(lines.get(k));
+            }
+            for (int k = c; k < d; k++) {
+                old.append(lines.get(k));
+            }
+            for (int k = a - 1; k < b; k++) {
+                put.append(lines.get(k));
+            }
+            for (int k = b; k < lines.size(); k++) {
+                old.append(lines.get(k));
+            }
+
+            ByteArrayOutputStream msgs = new ByteArrayOutputStream();
+            Compilation comp =
+                new Compilation(new ErrMsg(new PrintStream(msgs)));
+            char[] source = old.toString().toCharArray();
+            Yylex scanner = new Yylex(source, 0, source.length);
+            scanner.setCompilation(comp);
+            TokenBuffer before = scanner.tokenize();
+            msgs.reset();
+            TokenBuffer after = IncrementalLexer.relex(
+                before, a, a - 1 + d - c, put.toString(), comp);
+
+            StringBuilder expected = new StringBuilder(expectedTokens);
+            for (String msg : expectedMsgs.split("\n")) {
+                int colon = msg.indexOf(':');
+                if (colon > 0) {
+                    int line = Integer.parseInt(msg.substring(0, colon));
+                    if (line >= a && line <= b) {
+                        expected.append(msg).append('\n');
+                    }
+                }
+            }
+            if (!check(file, "relex lines " + a + ".." + b + " for " +
+                       (d - c) + " lines", expected.toString(),
+                       tokens(after.scanner(), comp) + msgs, false)) {
+                return false;
+            }
+        }
+        System.out.println(file + " (incremental): same after " + EDITS +
+                           " edits");
+        return true;
+    }
+
+    /***
+     * Scans to EOF and returns the tokens, one per line.
+     ***/
+    private static String tokens(Scanner scanner, Compilation comp)
+        throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try {
+            Symbol token;
+            do {
+                token = scanner.next_token();
+                sb.append(token.sym);
+                if (token.value instanceof TokenVal) {
+                    TokenVal val = (TokenVal)token.value;
+                    LineMap lines = comp.lineMap();
+                    sb.append(' ').append(lines.line(val.pos))
+                      .append(':').append(lines.column(val.pos));
+                }
+                if (token.value instanceof IdTokenVal) {
+                    sb.append(' ').append(((IdTokenVal)token.value).idVal);
+                } else if (token.value instanceof IntLitTokenVal) {
+                    sb.append(' ')
+                      .append(((IntLitTokenVal)token.value).intVal);
+                } else if (token.value instanceof StrLitTokenVal) {
+                    sb.append(' ')
+                      .append(((StrLitTokenVal)token.value).strVal);
+                }
+                sb.append('\n');
+            } while (token.sym != sym.EOF);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            sb.append("exception: ").append(ex).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /***
+     * Reports whether actual matches expected, line by line.
+     ***/
+    private static boolean check(File file, String mode, String expected,
+                                 String actual) {
+        return check(file, mode, expected, actual, true);
+    }
+
+    /***
+     * As above, but only says so when they match if verbose is set.
+     ***/
+    private static boolean check(File file, String mode, String expected,
+                                 String actual, boolean verbose) {
+        if (expected.equals(actual)) {
+            if (verbose) {
+                System.out.println(file + " (" + mode + "): same, " +
+                                   expected.split("\n").length + " lines");
+            }
+            return true;
+        }
+        String[] e = expected.split("\n", -1);
+        String[] a = actual.split("\n", -1);
+        int i = 0;
+        while (i < e.length && i < a.length && e[i].equals(a[i])) {
+            i++;
+        }
+        System.out.println(file + " (" + mode + "): differs at line " +
+                           (i + 1) + ":\n  table:  " +
+                           (i < e.length ? e[i] : "(end)") +
+                           "\n  other:  " + (i < a.length ? a[i] : "(end)"));
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+/***
+ * LineMap
+ *
+ * The line-start table of one source file.  Tokens and AST leaves only
+ * record a position, the offset of their first character in the file;
+ * a LineMap turns a position back into a line and column when an error
+ * message needs them.  The scanner adds each line's start as it passes
+ * the newline before it, so the map always covers the text scanned so
+ * far.  Lines end at '\n'; columns count characters from 1.
+ ***/
+class LineMap {
+    private int[] starts = new int[64];
+    private int lines = 1;  // starts[0] == 0: line 1 starts the file
+
+    /***
+     * Records that a line starts at position start, which must be after
+     * the start of every line recorded so far.
+     ***/
+    void add(int start) {
+        if (lines == starts.length) {
+            starts = java.util.Arrays.copyOf(starts, 2 * lines);
+        }
+        starts[lines++] = start;
+    }
+
+    /***
+     * Appends from's lines after line 1, moving them along by delta.
+     * from's line 1 must start where this map's last line does.
+     ***/
+    void append(LineMap from, int delta) {
+        for (int k = 1; k < from.lines; k++) {
+            add(from.starts[k] + delta);
+        }
+    }
+
+    /***
+     * Returns a new map holding just this map's first n lines.
+     ***/
+    LineMap prefix(int n) {
+        LineMap map = new LineMap();
+        map.starts = java.util.Arrays.copyOf(starts, Math.max(n, 64));
+        map.lines = n;
+        return map;
+    }
+
+    /***
+     * Returns the number of lines recorded (the number of newlines seen
+     * plus one).
+     ***/
+    int lines() {
+        return lines;
+    }
+
+    /***
+     * Returns the position at which line (1-based) starts.
+     ***/
+    int start(int line) {
+        return starts[line - 1];
+    }
+
+    /***
+     * Returns the line (1-based) that position pos is on.
+     ***/
+    int line(int pos) {
+        int lo = 0;
+        int hi = lines - 1;
+        while (lo < hi) {  // find the last start <= pos
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= pos) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo + 1;
+    }
+
+    /***
+     * Returns the column (1-based) of position pos on its line.
+     ***/
+    int column(int pos) {
+        return pos - starts[line(pos) - 1] + 1;
+    }
+
+    /***
+     * Builds the map of text[offset .. offset+length-1] directly.
+     ***/
+    static LineMap scan(char[] text, int offset, int length) {
+        LineMap map = new LineMap();
+        for (int k = offset; k < offset + length; k++) {
+            if (text[k] == '\n') {
+                map.add(k + 1 - offset);
+            }
+        }
+        return map;
+    }
+}
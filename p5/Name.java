@@ -0,0 +1,36 @@
+/***
+ * Name
+ *
+ * A canonical identifier handed out by a NameTable.  Equality is
+ * identity; the hash code is computed once, when the name is interned
+ * (it is the same value String.hashCode gives for the text).
+ ***/
+final class Name {
+    final String text;
+    final int hash;
+
+    Name(String text, int hash) {
+        this.text = text;
+        this.hash = hash;
+    }
+
+    boolean matches(char[] buf, int offset, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public String toString() {
+        return text;
+    }
+}
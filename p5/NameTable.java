@@ -0,0 +1,75 @@
+/***
+ * NameTable
+ *
+ * Interns identifiers: every occurrence of the same identifier in a
+ * compilation maps to one canonical Name object.  Names are looked up
+ * straight from a slice of the scanner's character buffer, so a String
+ * is only built the first time a name is seen.  Since names are
+ * canonical, SymTab can compare them by reference.
+ ***/
+class NameTable {
+    private Name[] table = new Name[256];  // open addressing, size 2^k
+    private int size;
+
+    /***
+     * Returns the canonical Name for buf[offset .. offset+length-1].
+     ***/
+    Name intern(char[] buf, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        return intern(buf, offset, length, hash);
+    }
+
+    /***
+     * As above, for a caller that already has the text's hash (the
+     * value String.hashCode would give).
+     ***/
+    Name intern(char[] buf, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        Name name;
+        while ((name = table[slot]) != null) {
+            if (name.hash == hash && name.matches(buf, offset, length)) {
+                return name;
+            }
+            slot = (slot + 1) & mask;
+        }
+        name = new Name(new String(buf, offset, length), hash);
+        table[slot] = name;
+        if (++size * 2 > table.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    /***
+     * Returns the canonical Name for the given string.
+     ***/
+    Name intern(String s) {
+        return intern(s.toCharArray(), 0, s.length());
+    }
+
+    /***
+     * Returns the number of distinct names interned so far.
+     ***/
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        Name[] old = table;
+        table = new Name[2 * old.length];
+        int mask = table.length - 1;
+        for (Name name : old) {
+            if (name != null) {
+                int slot = name.hash & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = name;
+            }
+        }
+    }
+}
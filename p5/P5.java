@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.MappedByteBuffer;
 import java_cup.runtime.*;
 
 /****
@@ -20,10 +21,11 @@ public class P5 {
             System.exit(-1);
         }
 
-        // open input file
-        FileReader inFile = null;
+        // open input file; the scanner runs straight out of a read-only
+        // mapping of it rather than through a Reader
+        MappedByteBuffer inFile = null;
         try {
-            inFile = new FileReader(args[0]);
+            inFile = Yylex.map(new File(args[0]));
         } catch (FileNotFoundException ex) {
             System.err.println("file " + args[0] + " not found");
             System.exit(-1);
@@ -39,7 +41,21 @@ public class P5 {
             System.exit(-1);
         }
 
-        parser P = new parser(new Yylex(inFile));
+        // the scanner, parser and name analysis all share one compilation,
+        // which holds this file's diagnostics and error flag, its interned
+        // names, and the LineMap that turns token positions (offsets) into
+        // lines and columns
+        Compilation comp = new Compilation();
+        Yylex scanner = new Yylex(inFile);
+        scanner.setCompilation(comp);
+
+        // scan the whole file into a TokenBuffer, whose scanner() builds
+        // each token's Symbol only when the parser takes it; the lexical
+        // messages are held until then, so that they come out in the
+        // order the parser reaches them (see scan() in brevis.cup)
+        comp.errMsg().hold();
+        TokenBuffer tokens = scanner.tokenize();
+        parser P = new parser(tokens.scanner(), comp);
 
         Symbol root = null; // the parser will return a Symbol whose value
                             // field is the translation of the root nonterminal
@@ -53,9 +69,10 @@ public class P5 {
             System.exit(-1);
         }
         
-        ((ProgramNode)root.value).nameAnalysis();  // perform name analysis
+        // perform name analysis
+        ((ProgramNode)root.value).nameAnalysis(comp);
         
-        if (!ErrMsg.getErr()) {  // if no errors, unparse
+        if (!comp.errMsg().getErr()) {  // if no errors, unparse
             ((ASTnode)root.value).unparse(outFile, 0);
         }
         outFile.close();
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/***
+ * ParallelLexer
+ *
+ * Lexes a large input on a fork/join pool.  No brevis token crosses a
+ * newline (comments and string literals both stop at one), so the text
+ * can be cut just after any newline and the pieces scanned
+ * independently: each chunk gets its own Yylex and its own Compilation,
+ * starting at position 0, line 1.  The chunks' tokens and line starts
+ * are then stitched into one TokenBuffer and the caller's LineMap in
+ * source order, moved along by the chunk's start, and their diagnostics
+ * are replayed into the caller's Compilation in the same order with
+ * their lines moved down by the number of lines before the chunk, so
+ * the result is what a single sequential Yylex.tokenize() would give.
+ ***/
+class ParallelLexer {
+    // chunks smaller than this are not worth a task of their own
+    static final int MIN_CHUNK = 1 << 16;
+
+    /***
+     * Lexes the (ASCII or UTF-8) bytes of a whole file, e.g. a mapped
+     * one, on the common pool.
+     ***/
+    static TokenBuffer tokenize(java.nio.ByteBuffer bytes, Compilation comp) {
+        java.nio.CharBuffer text = Yylex.decode(bytes);
+        return tokenize(text.array(), text.position(), text.remaining(), comp);
+    }
+
+    /***
+     * Lexes text[offset .. offset+length-1] on the common pool.
+     ***/
+    static TokenBuffer tokenize(char[] text, int offset, int length,
+                                Compilation comp) {
+        return tokenize(text, offset, length, comp, ForkJoinPool.commonPool());
+    }
+
+    /***
+     * Lexes text[offset .. offset+length-1] on the given pool, reporting
+     * diagnostics to comp and recording lines in its (empty) LineMap.
+     ***/
+    static TokenBuffer tokenize(char[] text, int offset, int length,
+                                Compilation comp, ForkJoinPool pool) {
+        int target = Math.max(MIN_CHUNK, length / (4 * pool.getParallelism()));
+        return tokenize(text, offset, length, comp, pool, target);
+    }
+
+    /***
+     * As above, but cuts the text at the first newline at or after every
+     * target characters, however small the chunks come out.  LexDiff
+     * uses this to cut small files in many places.
+     ***/
+    static TokenBuffer tokenize(char[] text, int offset, int length,
+                                Compilation comp, ForkJoinPool pool,
+                                int target) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        int end = offset + length;
+        int start = offset;
+        while (start < end) {
+            int cut = Math.min(start + target, end);
+            while (cut < end && text[cut - 1] != '\n') {
+                cut++;
+            }
+            chunks.add(new Chunk(text, start, cut - start));
+            start = cut;
+        }
+
+        for (Chunk chunk : chunks) {
+            pool.execute(chunk);
+        }
+
+        LineMap lines = comp.lineMap();
+        TokenBuffer all = new TokenBuffer(text, offset, length, comp.names(),
+                                          lines);
+        for (Chunk chunk : chunks) {
+            TokenBuffer tokens = chunk.join();
+            chunk.comp.errMsg().replay(comp.errMsg(), lines.lines() - 1);
+            lines.append(chunk.comp.lineMap(), chunk.start - offset);
+            all.append(tokens, chunk.start - offset);
+        }
+        return all;
+    }
+
+    /***
+     * One newline-aligned piece of the input, lexed as a task.
+     ***/
+    private static class Chunk extends RecursiveTask<TokenBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        final char[] text;
+        final int start;
+        final int length;
+        final Compilation comp = new Compilation(ErrMsg.held());
+
+        Chunk(char[] text, int start, int length) {
+            this.text = text;
+            this.start = start;
+            this.length = length;
+        }
+
+        protected TokenBuffer compute() {
+            Yylex scanner = new Yylex(text, start, length);
+            scanner.setCompilation(comp);
+            try {
+                return scanner.tokenize();
+            } catch (IOException ex) {  // cannot happen: there is no reader
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.*;
+import java_cup.runtime.*;
+
+/****
+ * Parser throughput benchmark.
+ *
+ * Lexes and parses a brevis source file several times in each of these
+ * modes and reports them as LexBench does:
+ *   streaming  the parser pulls one token at a time from a Yylex run
+ *              over a memory-mapped copy of the file
+ *   buffered   the file is scanned into a TokenBuffer, and the parser
+ *              takes its tokens a batch at a time from scanner(), as P5
+ *              does (see BatchScanner)
+ *
+ * The file must parse.  This is kept apart from LexBench because the
+ * parser needs ast.java.
+ *
+ * Command-line arguments:
+ * 1. the file to be parsed
+ * 2. (optional) the number of rounds to run, default 5
+ ****/
+
+public class ParseBench {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: java ParseBench <file> [rounds]");
+            System.exit(-1);
+        }
+        File file = new File(args[0]);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String[] names = { "streaming", "buffered" };
+        LexBench.Mode[] modes = {
+            f -> parseStreaming(new Yylex(Yylex.map(f))),
+            f -> parseBuffered(new Yylex(Yylex.map(f)))
+        };
+        LexBench.run(file, rounds, names, modes);
+    }
+
+    /***
+     * Parses to EOF, a token at a time, and returns the number of tokens.
+     ***/
+    private static int parseStreaming(Yylex scanner) throws Exception {
+        Compilation comp = new Compilation();
+        scanner.setCompilation(comp);
+        int[] n = { 0 };
+        Scanner counted = () -> {
+            n[0]++;
+            return scanner.next_token();
+        };
+        new parser(counted, comp).parse();
+        return n[0] - 1;  // not the EOF token
+    }
+
+    /***
+     * Scans the file into a TokenBuffer, parses from it as P5 does, and
+     * returns the number of tokens.
+     ***/
+    private static int parseBuffered(Yylex scanner) throws Exception {
+        Compilation comp = new Compilation();
+        scanner.setCompilation(comp);
+        comp.errMsg().hold();
+        TokenBuffer tokens = scanner.tokenize();
+        new parser(tokens.scanner(), comp).parse();
+        return tokens.size();
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/****
+ * Incremental relexing benchmark.
+ *
+ * Measures what one IncrementalLexer.relex() costs as the file grows.
+ * The file is repeated 1, 2, 4, ... times; each copy is lexed once,
+ * and then its middle line is replaced (by itself) and relexed.  For
+ * each size this reports the best time of a relex and of a full
+ * tokenize(), both per edit and per character of the file.  relex()
+ * rescans only the edited line but copies the text, the line starts
+ * and the tokens after the edit, so its time per character should stay
+ * about flat, and well below tokenize()'s, as the file grows: linear,
+ * with a small constant.
+ *
+ * Command-line arguments:
+ * 1. the file to be edited (its lines should lex without errors)
+ * 2. (optional) the largest number of copies, default 256
+ * 3. (optional) the number of rounds to run, default 20
+ ****/
+
+public class RelexBench {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("usage: java RelexBench <file> [copies] " +
+                               "[rounds]");
+            System.exit(-1);
+        }
+        File file = new File(args[0]);
+        int maxCopies = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String text = new String(Files.readAllBytes(file.toPath()),
+                                 StandardCharsets.ISO_8859_1);
+        if (!text.endsWith("\n")) {
+            text += "\n";
+        }
+
+        System.out.println(file + ": one line relexed in the middle");
+        System.out.printf("  %6s %10s %8s %11s %11s %11s %11s%n", "copies",
+                          "chars", "tokens", "relex ms", "ns/char",
+                          "lex ms", "ns/char");
+        for (int copies = 1; copies <= maxCopies; copies *= 2) {
+            StringBuilder all = new StringBuilder();
+            for (int c = 0; c < copies; c++) {
+                all.append(text);
+            }
+            run(all.toString(), copies, rounds);
+        }
+    }
+
+    /***
+     * Lexes text, then relexes its middle line rounds times, and reports
+     * the best time of each.
+     ***/
+    private static void run(String text, int copies, int rounds)
+        throws IOException {
+        char[] source = text.toCharArray();
+        long bestLex = Long.MAX_VALUE;
+        long bestRelex = Long.MAX_VALUE;
+        TokenBuffer tokens = null;
+        for (int r = 0; r < rounds; r++) {
+            Compilation comp = new Compilation();
+            long start = System.nanoTime();
+            Yylex scanner = new Yylex(source, 0, source.length);
+            scanner.setCompilation(comp);
+            tokens = scanner.tokenize();
+            bestLex = Math.min(bestLex, System.nanoTime() - start);
+
+            LineMap lines = tokens.lineMap();
+            int line = (lines.lines() + 1) / 2;
+            int end = line < lines.lines() ? lines.start(line + 1)
+                                           : source.length;
+            String edit = text.substring(lines.start(line), end);
+            start = System.nanoTime();
+            TokenBuffer after = IncrementalLexer.relex(tokens, line, line,
+                                                       edit, comp);
+            bestRelex = Math.min(bestRelex, System.nanoTime() - start);
+            if (after.size() != tokens.size()) {
+                throw new IllegalStateException("relex gave " +
+                                                after.size() + " tokens, " +
+                                                "not " + tokens.size());
+            }
+        }
+        System.out.printf("  %6d %10d %8d %11.3f %11.2f %11.3f %11.2f%n",
+                          copies, source.length, tokens.size(),
+                          bestRelex / 1e6, (double)bestRelex / source.length,
+                          bestLex / 1e6, (double)bestLex / source.length);
+    }
+}
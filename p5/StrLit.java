@@ -0,0 +1,91 @@
+import java.io.PrintWriter;
+
+/***
+ * StrLit
+ *
+ * A string literal, kept as the offset and length of its text (quotes
+ * included) in a source buffer instead of as a String.  Scanning one
+ * copies nothing when the scanner holds the whole input.  A reader-based
+ * scanner reuses its buffer, so it has to copy; it hands over the text
+ * as a String, which is the most compact copy.  Otherwise the String
+ * forms are only built, once each, when asked for: toString() gives the
+ * text as written, value() the characters the literal stands for.
+ * unparse() needs neither.
+ ***/
+final class StrLit {
+    private final char[] source;  // null if made from a String
+    private final int offset;
+    private final int length;
+    private String text;   // toString(), once built
+    private String value;  // value(), once built
+
+    StrLit(char[] source, int offset, int length) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    StrLit(String text) {
+        this.source = null;
+        this.offset = 0;
+        this.length = text.length();
+        this.text = text;
+    }
+
+    private char charAt(int i) {
+        return source != null ? source[offset + i] : text.charAt(i);
+    }
+
+    /***
+     * Returns the length of the literal as written, quotes included.
+     ***/
+    int length() {
+        return length;
+    }
+
+    /***
+     * Writes the literal as written, without building a String.
+     ***/
+    void writeTo(PrintWriter p) {
+        if (source != null) {
+            p.write(source, offset, length);
+        } else {
+            p.write(text);
+        }
+    }
+
+    /***
+     * Returns the characters between the quotes with the escapes
+     * (\n, \t, \', \", \? and \\) decoded.
+     ***/
+    String value() {
+        if (value == null) {
+            StringBuilder sb = new StringBuilder(length - 2);
+            int end = length - 1;  // the closing quote
+            for (int i = 1; i < end; i++) {
+                char c = charAt(i);
+                if (c == '\\' && i + 1 < end) {
+                    c = charAt(++i);
+                    if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 't') {
+                        c = '\t';
+                    }
+                }
+                sb.append(c);
+            }
+            value = sb.toString();
+        }
+        return value;
+    }
+
+    /***
+     * Returns the literal as written, quotes included.
+     ***/
+    public String toString() {
+        if (text == null) {
+            text = new String(source, offset, length);
+        }
+        return text;
+    }
+}
@@ -1,14 +1,26 @@
 import java.util.*;
 
 public class SymTab {
-	private List<HashMap<String, Sym>> list;
+	private List<HashMap<Name, Sym>> list;
+	private Compilation comp;
 	
-	public SymTab() {
-		list = new LinkedList<HashMap<String, Sym>>();
-		list.add(new HashMap<String, Sym>());
+	public SymTab(Compilation comp) {
+		this.comp = comp;
+		list = new LinkedList<HashMap<Name, Sym>>();
+		list.add(new HashMap<Name, Sym>());
 	}
 	
-	public void addDecl(String name, Sym sym) 
+	/* The compilation this table belongs to. */
+	public Compilation compilation() {
+		return comp;
+	}
+	
+	/* Where name analysis reports errors: the compilation's ErrMsg. */
+	public ErrMsg errMsg() {
+		return comp.errMsg();
+	}
+	
+	public void addDecl(Name name, Sym sym) 
 	throws SymDuplicationException, SymTabEmptyException {
 		if (name == null || sym == null)
 			throw new IllegalArgumentException();
@@ -16,7 +28,7 @@ public class SymTab {
 		if (list.isEmpty())
 			throw new SymTabEmptyException();
 		
-		HashMap<String, Sym> symTab = list.get(0);
+		HashMap<Name, Sym> symTab = list.get(0);
 		if (symTab.containsKey(name))
 			throw new SymDuplicationException();
 		
@@ -24,24 +36,24 @@ public class SymTab {
 	}
 	
 	public void addScope() {
-		list.add(0, new HashMap<String, Sym>());
+		list.add(0, new HashMap<Name, Sym>());
 	}
 	
-	public Sym lookupLocal(String name) 
+	public Sym lookupLocal(Name name) 
 	throws SymTabEmptyException {
 		if (list.isEmpty())
 			throw new SymTabEmptyException();
 		
-		HashMap<String, Sym> symTab = list.get(0); 
+		HashMap<Name, Sym> symTab = list.get(0); 
 		return symTab.get(name);
 	}
 	
-	public Sym lookupGlobal(String name) 
+	public Sym lookupGlobal(Name name) 
 	throws SymTabEmptyException {
 		if (list.isEmpty())
 			throw new SymTabEmptyException();
 		
-		for (HashMap<String, Sym> symTab : list) {
+		for (HashMap<Name, Sym> symTab : list) {
 			Sym sym = symTab.get(name);
 			if (sym != null)
 				return sym;
@@ -57,7 +69,7 @@ public class SymTab {
 	
 	public void print() {
 		System.out.print("\n--- Symbol Table ---\n");
-		for (HashMap<String, Sym> symTab : list) {
+		for (HashMap<Name, Sym> symTab : list) {
 			System.out.println(symTab.toString());
 		}
 		System.out.println();
@@ -0,0 +1,313 @@
+import java_cup.runtime.*;
+
+/***
+ * TokenBuffer
+ *
+ * Holds a whole file's worth of tokens as parallel primitive arrays
+ * (kind, start offset and length) instead of one Symbol and one
+ * TokenVal object per token.  The text of IDs and literals is not
+ * copied: start offsets index into the scanner's source buffer, which
+ * the TokenBuffer keeps a reference to.  A token's start offset is also
+ * its position; the file's LineMap gives its line and column.
+ *
+ * A TokenBuffer is filled by Yylex.tokenize().  Tokens are read back
+ * either through the flyweight Token view returned by at(), or through
+ * scanner(), which feeds the CUP parser (a batch at a time, see
+ * BatchScanner) and builds each Symbol only when the parser asks for it.
+ *
+ * IncrementalLexer builds a new TokenBuffer from an old one and an
+ * edit, rescanning only the edited lines.
+ ***/
+class TokenBuffer {
+    // Tokens are stored in fixed-size chunks so that growing the buffer
+    // never copies: chunk c holds tokens c*CHUNK .. c*CHUNK+CHUNK-1, with
+    // field f of token j at chunk[f*CHUNK + j].
+    private static final int SHIFT = 14;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private static final int KIND = 0;
+    private static final int START = 1 * CHUNK;
+    private static final int LENGTH = 2 * CHUNK;
+    private static final int FIELDS = 3;
+
+    private int[][] chunks = new int[16][];
+    private int[] last;  // the chunk being filled
+    private int size;
+
+    private final char[] source;  // the text the start offsets refer to
+    private final int base;       // index in source of offset 0
+    private final int length;     // length of the scanned text
+    private final NameTable names;  // where IDs are interned
+    private final LineMap lineMap;  // the text's line starts
+
+    private final Token view = new Token();
+
+    /***
+     * Creates an empty buffer for the text source[base .. base+length-1]
+     * whose IDs are interned in names and whose lines are (or will be)
+     * recorded in lineMap.  Token offsets are relative to source[base].
+     ***/
+    TokenBuffer(char[] source, int base, int length, NameTable names,
+                LineMap lineMap) {
+        this.source = source;
+        this.base = base;
+        this.length = length;
+        this.names = names;
+        this.lineMap = lineMap;
+    }
+
+    /***
+     * Appends a token.
+     ***/
+    void add(int kind, int start, int length) {
+        int j = size & MASK;
+        if (j == 0) {
+            newChunk();
+        }
+        int[] c = last;
+        c[KIND + j] = kind;
+        c[START + j] = start;
+        c[LENGTH + j] = length;
+        size++;
+    }
+
+    /***
+     * Appends all of from's tokens, moving them along startDelta
+     * characters.  from must refer to the same source text as this
+     * buffer.
+     ***/
+    void append(TokenBuffer from, int startDelta) {
+        append(from, 0, from.size, startDelta);
+    }
+
+    /***
+     * Appends from's tokens begin .. end-1, moved as above.
+     ***/
+    void append(TokenBuffer from, int begin, int end, int startDelta) {
+        // copy a run at a time: up to the end of the chunk being read
+        // from or of the one being written to, whichever comes first
+        while (begin < end) {
+            int j = size & MASK;
+            if (j == 0) {
+                newChunk();
+            }
+            int[] c = from.chunks[begin >>> SHIFT];
+            int k = begin & MASK;
+            int n = Math.min(end - begin, CHUNK - Math.max(j, k));
+            System.arraycopy(c, KIND + k, last, KIND + j, n);
+            System.arraycopy(c, LENGTH + k, last, LENGTH + j, n);
+            for (int m = 0; m < n; m++) {
+                last[START + j + m] = c[START + k + m] + startDelta;
+            }
+            size += n;
+            begin += n;
+        }
+    }
+
+    /***
+     * Appends from's tokens 0 .. end-1 unmoved, like append(from, 0, end,
+     * 0), but takes the full chunks among them from from instead of
+     * copying them.  Nothing is ever written to a full chunk again, so
+     * the two buffers can share it.  This buffer must be empty.
+     ***/
+    void appendShared(TokenBuffer from, int end) {
+        int n = end >>> SHIFT;
+        chunks = java.util.Arrays.copyOf(from.chunks, from.chunks.length);
+        java.util.Arrays.fill(chunks, n, chunks.length, null);
+        size = n << SHIFT;
+        append(from, size, end, 0);
+    }
+
+    private void newChunk() {
+        int n = size >>> SHIFT;
+        if (n == chunks.length) {
+            chunks = java.util.Arrays.copyOf(chunks, 2 * n);
+        }
+        last = new int[FIELDS * CHUNK];
+        chunks[n] = last;
+    }
+
+    private int field(int i, int field) {
+        return chunks[i >>> SHIFT][field + (i & MASK)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    char[] source() {
+        return source;
+    }
+
+    int base() {
+        return base;
+    }
+
+    /***
+     * Returns the length of the scanned text.
+     ***/
+    int textLength() {
+        return length;
+    }
+
+    /***
+     * Returns the line starts of the scanned text.
+     ***/
+    LineMap lineMap() {
+        return lineMap;
+    }
+
+    /***
+     * Returns the index of the first token starting at or after offset
+     * (size() if there is none).  Tokens are in source order.
+     ***/
+    int find(int offset) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    int kind(int i) {
+        return field(i, KIND);
+    }
+
+    int lineNum(int i) {
+        return lineMap.line(start(i));
+    }
+
+    int charNum(int i) {
+        return lineMap.column(start(i));
+    }
+
+    int start(int i) {
+        return field(i, START);
+    }
+
+    int length(int i) {
+        return field(i, LENGTH);
+    }
+
+    String text(int i) {
+        return new String(source, base + start(i), length(i));
+    }
+
+    /***
+     * Returns the interned name of ID i.
+     ***/
+    Name name(int i) {
+        return names.intern(source, base + start(i), length(i));
+    }
+
+    /***
+     * Returns string literal i, which refers to the source text rather
+     * than copying it.
+     ***/
+    StrLit strLit(int i) {
+        return new StrLit(source, base + start(i), length(i));
+    }
+
+    /***
+     * Returns the value of integer literal i.  The scanner has already
+     * warned about literals that are too large; they read back as
+     * Integer.MAX_VALUE, as in the streaming scanner.
+     ***/
+    int intVal(int i) {
+        long val = 0;
+        int end = base + start(i) + length(i);
+        for (int k = base + start(i); k < end; k++) {
+            val = val * 10 + (source[k] - '0');
+            if (val > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return (int)val;
+    }
+
+    /***
+     * Returns the flyweight view positioned at token i.  The same Token
+     * object is returned on every call, so it must not be held on to.
+     ***/
+    Token at(int i) {
+        view.index = i;
+        return view;
+    }
+
+    /***
+     * Flyweight view of one token in the buffer.
+     ***/
+    class Token {
+        private int index;
+
+        int kind()    { return TokenBuffer.this.kind(index); }
+        int lineNum() { return TokenBuffer.this.lineNum(index); }
+        int charNum() { return TokenBuffer.this.charNum(index); }
+        int start()   { return TokenBuffer.this.start(index); }
+        int length()  { return TokenBuffer.this.length(index); }
+        String text() { return TokenBuffer.this.text(index); }
+        Name name()   { return TokenBuffer.this.name(index); }
+        StrLit strLit() { return TokenBuffer.this.strLit(index); }
+        int intVal()  { return TokenBuffer.this.intVal(index); }
+    }
+
+    /***
+     * Returns a Scanner that feeds the buffered tokens to the parser.
+     * The Symbol and TokenVal for a token are only built when the parser
+     * pulls it, since the parser keeps them on its stack.
+     ***/
+    BatchScanner scanner() {
+        return new BatchScanner() {
+            private int next = 0;
+
+            public Symbol next_token() {
+                if (next == size) {
+                    return new Symbol(sym.EOF);
+                }
+                return symbol(next++);
+            }
+
+            public int next_tokens(Symbol[] buf, int offset, int count) {
+                int n = Math.min(count, size - next);
+                for (int k = 0; k < n; k++) {
+                    buf[offset + k] = symbol(next++);
+                }
+                if (n < count) {
+                    buf[offset + n++] = new Symbol(sym.EOF);
+                }
+                return n;
+            }
+        };
+    }
+
+    /***
+     * Builds the Symbol the streaming scanner would have returned for
+     * token i.
+     ***/
+    Symbol symbol(int i) {
+        int kind = kind(i);
+        int pos = start(i);
+        TokenVal val;
+        switch (kind) {
+        case sym.ID:
+            val = new IdTokenVal(pos, name(i));
+            break;
+        case sym.INTLITERAL:
+            val = new IntLitTokenVal(pos, intVal(i));
+            break;
+        case sym.STRINGLITERAL:
+            val = new StrLitTokenVal(pos, strLit(i));
+            break;
+        default:
+            val = new TokenVal(pos);
+        }
+        return new Symbol(kind, val);
+    }
+}
@@ -180,7 +180,7 @@ class RecordType extends Type {
     }
 
     public String toString() {
-        return myId.name();
+        return myId.name().toString();
     }
 }
 
@@ -9,10 +9,12 @@ import java.util.*;
 // either in a list (for nodes that may have a variable number of 
 // children) or as a fixed set of fields.
 //
-// The nodes for literals and identifiers contain line and character 
-// number information; for string literals and identifiers, they also 
-// contain a string; for integer literals, they also contain an integer 
-// value.
+// The nodes for literals and identifiers contain their position in the
+// file (an offset, turned into a line and character number by the
+// compilation's LineMap when reporting an error); for string literals,
+// they also contain the literal (a StrLit, still in the source text);
+// for identifiers, the interned Name (see NameTable); for integer
+// literals, they also contain an integer value.
 //
 // Here are all the different kinds of AST nodes and what kinds of 
 // children they have.  All of these kinds of AST nodes are subclasses
@@ -131,8 +133,8 @@ class ProgramNode extends ASTnode {
      * Creates an empty symbol table for the outermost scope, then processes
      * all of the globals, record defintions, and functions in the program.
      ***/
-    public void nameAnalysis() {
-        SymTab symTab = new SymTab();
+    public void nameAnalysis(Compilation comp) {
+        SymTab symTab = new SymTab(comp);
         myDeclList.nameAnalysis(symTab);
     }
 
@@ -373,13 +375,13 @@ class VarDeclNode extends DeclNode {
     
     public Sym nameAnalysis(SymTab symTab, SymTab globalTab) {
         boolean badDecl = false;
-        String name = myId.name();
+        Name name = myId.name();
         Sym sym = null;
         IdNode recordId = null;
 
         if (myType instanceof VoidNode) {  // check for void type
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Non-function declared void");
+            symTab.errMsg().fatal(myId.pos(),
+                                  "Non-function declared void");
             badDecl = true;        
         }
         
@@ -391,7 +393,7 @@ class VarDeclNode extends DeclNode {
 				// if the name for the record type is not found, 
 				// or is not a record type
 				if (sym == null || !(sym instanceof RecordDefSym)) {
-					ErrMsg.fatal(recordId.lineNum(), recordId.charNum(), 
+					symTab.errMsg().fatal(recordId.pos(),
 								"Name of record type invalid");
 					badDecl = true;
 				}
@@ -407,7 +409,7 @@ class VarDeclNode extends DeclNode {
         
 		try {
 			if (symTab.lookupLocal(name) != null) {
-				ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
+				symTab.errMsg().fatal(myId.pos(),
 							"Identifier multiply-declared");
 				badDecl = true;            
 			}
@@ -487,11 +489,11 @@ class FnDeclNode extends DeclNode {
      *     exit scope
      ***/
     public Sym nameAnalysis(SymTab symTab) {
-        String name = myId.name();
+        Name name = myId.name();
         FnSym sym = null;
         try {
 			if (symTab.lookupLocal(name) != null) {
-				ErrMsg.fatal(myId.lineNum(), myId.charNum(),
+				symTab.errMsg().fatal(myId.pos(),
 							"Identifier multiply-declared");
 			}
         
@@ -571,19 +573,19 @@ class FormalDeclNode extends DeclNode {
      * else add a new entry to the symbol table and return that Sym
      ***/
     public Sym nameAnalysis(SymTab symTab) {
-        String name = myId.name();
+        Name name = myId.name();
         boolean badDecl = false;
         Sym sym = null;
         
         if (myType instanceof VoidNode) {
-            ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
-                         "Non-function declared void");
+            symTab.errMsg().fatal(myId.pos(),
+                                  "Non-function declared void");
             badDecl = true;        
         }
         
         try { 
 			if (symTab.lookupLocal(name) != null) {
-				ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
+				symTab.errMsg().fatal(myId.pos(),
 							"Identifier multiply-declared");
 				badDecl = true;
 			}
@@ -640,11 +642,11 @@ class RecordDeclNode extends DeclNode {
      *     add a new entry to symbol table for this record
      ***/
     public Sym nameAnalysis(SymTab symTab) {
-        String name = myId.name();
+        Name name = myId.name();
         boolean badDecl = false;
         try {
 			if (symTab.lookupLocal(name) != null) {
-				ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
+				symTab.errMsg().fatal(myId.pos(),
 							"Identifier multiply-declared");
 				badDecl = true;            
 			}
@@ -654,7 +656,7 @@ class RecordDeclNode extends DeclNode {
             System.exit(-1);
         } 
 
-        SymTab recordSymTab = new SymTab();
+        SymTab recordSymTab = new SymTab(symTab.compilation());
         
         // process the fields of the record
         myDeclList.nameAnalysis(recordSymTab, symTab);
@@ -1221,17 +1223,15 @@ abstract class ExpNode extends ASTnode {
 }
 
 class TrueNode extends ExpNode {
-    public TrueNode(int lineNum, int charNum) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+    public TrueNode(int pos) {
+        myPos = pos;
     }
 
     public void unparse(PrintWriter p, int indent) {
         p.print("true");
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private int myPos;
 
     @Override
     public Type typeCheck() {
@@ -1242,17 +1242,15 @@ class TrueNode extends ExpNode {
 }
 
 class FalseNode extends ExpNode {
-    public FalseNode(int lineNum, int charNum) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+    public FalseNode(int pos) {
+        myPos = pos;
     }
 
     public void unparse(PrintWriter p, int indent) {
         p.print("false");
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private int myPos;
 
     @Override
     public Type typeCheck() {
@@ -1263,10 +1261,9 @@ class FalseNode extends ExpNode {
 }
 
 class IdNode extends ExpNode {
-    public IdNode(int lineNum, int charNum, String strVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
-        myStrVal = strVal;
+    public IdNode(int pos, Name name) {
+        myPos = pos;
+        myName = name;
     }
 
     /***
@@ -1279,8 +1276,8 @@ class IdNode extends ExpNode {
     /***
      * Return the name of this ID.
      ***/
-    public String name() {
-        return myStrVal;
+    public Name name() {
+        return myName;
     }
     
     /***
@@ -1291,17 +1288,10 @@ class IdNode extends ExpNode {
     }
     
     /***
-     * Return the line number for this ID.
-     ***/
-    public int lineNum() {
-        return myLineNum;
-    }
-    
-    /***
-     * Return the char number for this ID.
+     * Return the position of this ID in the file (see LineMap).
      ***/
-    public int charNum() {
-        return myCharNum;
+    public int pos() {
+        return myPos;
     }    
     
     /***
@@ -1312,9 +1302,10 @@ class IdNode extends ExpNode {
      ***/
     public void nameAnalysis(SymTab symTab) {
 		try {
-            Sym sym = symTab.lookupGlobal(myStrVal);
+            Sym sym = symTab.lookupGlobal(myName);
             if (sym == null) {
-                ErrMsg.fatal(myLineNum, myCharNum, "Identifier undeclared");
+                symTab.errMsg().fatal(myPos,
+                                      "Identifier undeclared");
             } else {
                 link(sym);
             }
@@ -1326,14 +1317,13 @@ class IdNode extends ExpNode {
     }
     
     public void unparse(PrintWriter p, int indent) {
-        p.print(myStrVal);
+        p.print(myName);
         if (mySym != null) {
             p.print("[" + mySym + "]");
         }
     } 
-    private int myLineNum;
-    private int myCharNum;
-    private String myStrVal;
+    private int myPos;
+    private Name myName;
     private Sym mySym;
 
     @Override
@@ -1345,9 +1335,8 @@ class IdNode extends ExpNode {
 }
 
 class IntLitNode extends ExpNode {
-    public IntLitNode(int lineNum, int charNum, int intVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+    public IntLitNode(int pos, int intVal) {
+        myPos = pos;
         myIntVal = intVal;
     }
 
@@ -1355,8 +1344,7 @@ class IntLitNode extends ExpNode {
         p.print(myIntVal);
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private int myPos;
     private int myIntVal;
 
     @Override
@@ -1368,19 +1356,17 @@ class IntLitNode extends ExpNode {
 }
 
 class StringLitNode extends ExpNode {
-    public StringLitNode(int lineNum, int charNum, String strVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+    public StringLitNode(int pos, StrLit strVal) {
+        myPos = pos;
         myStrVal = strVal;
     }
 
     public void unparse(PrintWriter p, int indent) {
-        p.print(myStrVal);
+        myStrVal.writeTo(p);
     }
 
-    private int myLineNum;
-    private int myCharNum;
-    private String myStrVal;
+    private int myPos;
+    private StrLit myStrVal;
 
     @Override
     public Type typeCheck() {
@@ -1404,19 +1390,11 @@ class DotAccessExpNode extends ExpNode {
     }    
     
     /***
-     * Return the line number for this dot-access node. 
-     * The line number is the one corresponding to the RHS of the dot-access.
-     ***/
-    public int lineNum() {
-        return myId.lineNum();
-    }
-    
-    /***
-     * Return the char number for this dot-access node.
-     * The char number is the one corresponding to the RHS of the dot-access.
+     * Return the position of this dot-access node.
+     * The position is the one corresponding to the RHS of the dot-access.
      ***/
-    public int charNum() {
-        return myId.charNum();
+    public int pos() {
+        return myId.pos();
     }
     
     /***
@@ -1451,8 +1429,8 @@ class DotAccessExpNode extends ExpNode {
                 recordSymTab = ((RecordDefSym)tempSym).getSymTab();
             } 
             else {  // LHS is not a record type
-                ErrMsg.fatal(id.lineNum(), id.charNum(), 
-                             "Dot-access of non-record type");
+                symTab.errMsg().fatal(id.pos(),
+                                      "Dot-access of non-record type");
                 badAccess = true;
             }
         }
@@ -1471,8 +1449,8 @@ class DotAccessExpNode extends ExpNode {
                 sym = loc.sym();
 
                 if (sym == null) {  // no record in which to look up RHS
-                    ErrMsg.fatal(loc.lineNum(), loc.charNum(), 
-                                 "Dot-access of non-record type");
+                    symTab.errMsg().fatal(loc.pos(),
+                                          "Dot-access of non-record type");
                     badAccess = true;
                 }
                 else {  // get the record's symbol table in which to lookup RHS
@@ -1498,7 +1476,7 @@ class DotAccessExpNode extends ExpNode {
 			try {
 				sym = recordSymTab.lookupGlobal(myId.name()); // lookup
 				if (sym == null) { // not found - RHS is not a valid field name
-					ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
+					symTab.errMsg().fatal(myId.pos(),
 								"Record field name invalid");
 					badAccess = true;
 				}
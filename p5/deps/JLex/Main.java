@@ -5,6 +5,75 @@
   See below for copyright notice, license, and disclaimer.
   New releases from http://www.cs.princeton.edu/~appel/modern/java/JLex/
 
+  Local changes for the brevis front ends (p2, p3, p5):
+   Added whole-input constructors, Yylex(char[],int,int) and
+     Yylex(java.nio.ByteBuffer), which scan straight out of one buffer
+     (e.g. a mapped file) with no reader, no refills and no copying of
+     partially matched tokens.
+   Added the %skip{ ... %skip} directive: code run at the start of every
+     match that can step over blanks and comments in bulk, ahead of the
+     DFA (see emit_skip).
+   Added yybuffer(), yystart(), yycharat(), yylong() and yyhash(), which
+     let actions read, parse and hash the match in place instead of
+     copying it with yytext().
+   Made the constants and the DFA tables (yy_acpt, yy_cmap, yy_rmap,
+     yy_nxt, yy_state_dtrans) static finals, decoded once when the class
+     is first used rather than by every new scanner, and added yyreset(),
+     which points an existing scanner at new input.  It leaves the
+     fields declared in the user's %{ %} code alone; the %reset{ ...
+     %reset} directive gives code for it to run last that can reset them.
+   Added the %compress directive: yy_nxt and yy_rmap are replaced by one
+     row-displaced (comb-vector) table, yy_comb, packed one or two chars
+     per entry into string constants (see emit_comb_table).
+   Added the %directcode directive: the DFA's transitions are emitted as
+     a switch per state inside the scanning loop instead of as yy_rmap
+     and yy_nxt (see emit_direct_code), unless the scanning function
+     would then be too large for the JVM.
+   Rebuilt subset construction (CNfa2Dfa) around sorted label arrays
+     (CNfaSet) with cached hash codes, a HashMap from set to DFA state,
+     and epsilon closures and character-class edges computed once per
+     NFA state.  The DFA, and so the output, is the same as before.
+   Replaced the pairwise DFA minimization with Hopcroft's partition
+     refinement (CMinimize.hopcroft).  The old algorithm is still there
+     behind the -pairwise option.  Minimized states are now numbered in
+     the order of their lowest original state, whichever algorithm is
+     used, so the two give the same output.
+   Moved the generator's core off object graphs: CNfa2Dfa copies the NFA
+     into arrays indexed by label and builds the DFA into flat arrays in
+     CSpec (m_dfa_next, m_dfa_accept, m_dfa_anchor), with its NFA sets in
+     an open-addressing table; CMinimize minimizes and compresses those
+     arrays, making CDTrans rows only for the final table.  CMakeNfa and
+     CSimplifyNfa still work on CNfa objects.  The output is the same.
+   Made each lexical state's DFA on its own (CStateDfa), those of
+     different lexical states at the same time on the common fork/join
+     pool, then merged them in order, numbering the states as the one
+     sequential subset construction did.  The output is the same.
+   Added the -cache <dir> option (see CCache): the output is saved under
+     the SHA-256 hash of the specification, the options and JLex's own
+     class files, and copied from there when they are all unchanged.
+   With %unicode, the character class map is emitted in two levels: the
+     ASCII classes in yy_cmap as before, the rest as 256-entry pages,
+     each distinct page once (see CEmit.emit_paged_cmap), rather than
+     as 65538 entries.
+   Added the -stats <file> option (see CStats): each run appends to the
+     file a JSON line with its NFA, character class and DFA counts, the
+     size of the emitted tables and the wall time of each phase.
+   JLex now finds the DFA states where the lexer can read any number of
+     characters past a match before backing up to it (see CBackup), and
+     warns of them, since they can make scanning quadratic.  Added the
+     %linear directive: in those states the lexer remembers the states
+     and positions it failed from, and fails at once when it meets them
+     again, so that scanning is linear (see CEmit.emit_linear).
+   Added the -profile <sample> option (see CProfile): the states of the
+     minimized DFA are numbered by how often scanning the sample enters
+     them, the hottest first.  Added the %flat directive: yy_rmap and
+     yy_nxt are replaced by one array, yy_flat, with the row of each
+     state in turn (see emit_flat_table).
+   With %line, yyline is counted by yy_count_lines() over everything
+     matched since it last ran, with one test per character, and only
+     before the actions that read it, unless other user code reads it
+     too, rather than character by character at the start of every
+     match.
   Version 1.2.6, 2/7/03, [C. Scott Ananian]
    Renamed 'assert' function 'ASSERT' to accomodate Java 1.4's new keyword.
    Fixed a bug which certain forms of comment in the JLex directives section
@@ -178,10 +247,14 @@ import java.lang.System;
 import java.lang.Integer;
 import java.lang.Character;
 
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Stack;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /******************************
   Questions:
@@ -247,12 +320,13 @@ class CSpec
 
   int m_state_dtrans[];
 
-  /* DFA Machine. */
-  Vector m_dfa_states; /* Vector of states, with index
-				 corresponding to label. */
-  Hashtable m_dfa_sets; /* Hashtable taking set of NFA states
-				  to corresponding DFA state, 
-				  if the latter exists. */
+  /* DFA Machine, before minimization: state s goes to state
+     m_dfa_next[s * m_dtrans_ncols + c] (or CDTrans.F) on
+     character class c.  Arrays may be longer than needed. */
+  int m_dfa_count;
+  int m_dfa_next[];
+  CAccept m_dfa_accept[];
+  int m_dfa_anchor[];
   
   /* Accept States and Corresponding Anchors. */
   Vector m_accept_vector;
@@ -264,6 +338,13 @@ class CSpec
   int m_row_map[];
   int m_col_map[];
 
+  /* Backing up (see CBackup): the states of the minimized DFA where
+     the lexer can back up after a match, and those of them where it
+     can first read any number of characters (m_unbounded[s]). */
+  int m_backup_count;
+  int m_unbounded_count;
+  boolean m_unbounded[];
+
   /* Special pseudo-characters for beginning-of-line and end-of-file. */
   static final int NUM_PSEUDO=2;
   int BOL; // beginning-of-line
@@ -281,6 +362,16 @@ class CSpec
   /* Verbose execution flag. */
   boolean m_verbose;
 
+  /* Minimize with CMinimize.pairwise() instead of hopcroft()
+     (the -pairwise option). */
+  boolean m_pairwise;
+
+  /* Counts and phase times for the -stats option, or null. */
+  CStats m_stats;
+
+  /* Sample input for the -profile option (see CProfile), or null. */
+  String m_profile;
+
   /* JLex directives flags. */
   boolean m_integer_type;
   boolean m_intwrap_type;
@@ -291,6 +382,10 @@ class CSpec
   boolean m_unix;
   boolean m_public;
   boolean m_ignorecase;
+  boolean m_compress;
+  boolean m_directcode;
+  boolean m_linear;
+  boolean m_flat;
 
   char m_init_code[];
   int m_init_read;
@@ -313,6 +408,12 @@ class CSpec
   char m_yylex_throw_code[];
   int m_yylex_throw_read;
 
+  char m_skip_code[];
+  int m_skip_read;
+
+  char m_reset_code[];
+  int m_reset_read;
+
   /* Class, function, type names. */
   char m_class_name[] = {          
     'Y', 'y', 'l', 
@@ -373,15 +474,24 @@ class CSpec
         m_public = false;
 	m_yyeof = false;
 	m_ignorecase = false;
+	m_compress = false;
+	m_directcode = false;
+	m_linear = false;
+	m_flat = false;
 
 	/* Initialize variables for JLex runtime options. */
 	m_verbose = true;
+	m_pairwise = false;
+	m_stats = null;
+	m_profile = null;
 
 	m_nfa_start = null;
 	m_nfa_states = new Vector();
 	
-	m_dfa_states = new Vector();
-	m_dfa_sets = new Hashtable();
+	m_dfa_count = 0;
+	m_dfa_next = null;
+	m_dfa_accept = null;
+	m_dfa_anchor = null;
 
 	m_dtrans_vector = new Vector();
 	m_dtrans_ncols = CUtility.MAX_SEVEN_BIT + 1;
@@ -400,6 +510,12 @@ class CSpec
 	m_yylex_throw_code = null;
 	m_yylex_throw_read = 0;
 
+	m_skip_code = null;
+	m_skip_read = 0;
+
+	m_reset_code = null;
+	m_reset_read = 0;
+
 	m_class_code = null;
 	m_class_read = 0;
 
@@ -442,6 +558,14 @@ class CEmit
   private final boolean EDBG = true;
   private final boolean NOT_EDBG = false;
 
+  /* Bytes of bytecode allowed in one method (see direct_method_size). */
+  private static final int METHOD_LIMIT = 65535;
+
+  /* The paged character class map (see emit_paged_cmap). */
+  private static final int CMAP_DIRECT = CUtility.MAX_SEVEN_BIT + 1;
+  private static final int CMAP_PAGE_BITS = 8;
+  private static final int CMAP_PAGE_SIZE = 1 << CMAP_PAGE_BITS;
+
   /***************************************************************
     Function: CEmit
     Description: Constructor.
@@ -617,6 +741,14 @@ class CEmit
 	    print_details();
 	  }
 
+	  if (m_spec.m_directcode && direct_method_size() > METHOD_LIMIT)
+	    {
+	      System.out.println("Too many states for %directcode (about "
+				 + direct_method_size() + " bytes of code); "
+				 + "emitting transition tables.");
+	      m_spec.m_directcode = false;
+	    }
+
 	  emit_header();
 	  emit_construct();
 	  emit_helpers();
@@ -643,22 +775,22 @@ class CEmit
 	  }
 	  
 	  /* Constants */
-	  m_outstream.println("\tprivate final int YY_BUFFER_SIZE = 512;");
+	  m_outstream.println("\tprivate static final int YY_BUFFER_SIZE = 512;");
 
-	  m_outstream.println("\tprivate final int YY_F = -1;");
-	  m_outstream.println("\tprivate final int YY_NO_STATE = -1;");
+	  m_outstream.println("\tprivate static final int YY_F = -1;");
+	  m_outstream.println("\tprivate static final int YY_NO_STATE = -1;");
 
-	  m_outstream.println("\tprivate final int YY_NOT_ACCEPT = 0;");
-	  m_outstream.println("\tprivate final int YY_START = 1;");
-	  m_outstream.println("\tprivate final int YY_END = 2;");
-	  m_outstream.println("\tprivate final int YY_NO_ANCHOR = 4;");
+	  m_outstream.println("\tprivate static final int YY_NOT_ACCEPT = 0;");
+	  m_outstream.println("\tprivate static final int YY_START = 1;");
+	  m_outstream.println("\tprivate static final int YY_END = 2;");
+	  m_outstream.println("\tprivate static final int YY_NO_ANCHOR = 4;");
 
 	  // internal
-	  m_outstream.println("\tprivate final int YY_BOL = "+m_spec.BOL+";");
-	  m_outstream.println("\tprivate final int YY_EOF = "+m_spec.EOF+";");
+	  m_outstream.println("\tprivate static final int YY_BOL = "+m_spec.BOL+";");
+	  m_outstream.println("\tprivate static final int YY_EOF = "+m_spec.EOF+";");
 	  // external
 	  if (m_spec.m_integer_type || true == m_spec.m_yyeof)
-	    m_outstream.println("\tpublic final int YYEOF = -1;");
+	    m_outstream.println("\tpublic static final int YYEOF = -1;");
 	  
           /* User specified class code. */
 	  if (null != m_spec.m_class_code)
@@ -681,9 +813,20 @@ class CEmit
 	  if (m_spec.m_count_lines)
 	    {
 	      m_outstream.println("\tprivate int yyline;");
+	      m_outstream.println("\tprivate int yy_line_mark;");
 	    }
 	  m_outstream.println("\tprivate boolean yy_at_bol;");
 	  m_outstream.println("\tprivate int yy_lexical_state;");
+	  if (linear())
+	    {
+	      /* see emit_linear */
+	      m_outstream.println("\tprivate int yy_buffer_origin;");
+	      m_outstream.println("\tprivate int yy_trail[] = new int[32];");
+	      m_outstream.println("\tprivate int yy_trail_count;");
+	      m_outstream.println("\tprivate long yy_failed[];");
+	      m_outstream.println("\tprivate int yy_failed_count;");
+	      m_outstream.println("\tprivate int yy_failed_max;");
+	    }
 	  /*if (m_spec.m_count_lines || true == m_spec.m_count_chars)
 	    {
 	      m_outstream.println("\tprivate int yy_buffer_prev_start;");
@@ -753,6 +896,12 @@ class CEmit
 	  m_outstream.println("\t}");
 	  m_outstream.println();
 
+	  /* Function: whole-input constructors (char[], ByteBuffer) */
+	  emit_whole_input_construct();
+
+	  /* Functions: yyreset (Reader), yyreset (char[]) */
+	  emit_reset();
+
 
 	  /* Function: third, private constructor - only for internal use */
 	  m_outstream.print("\tprivate ");
@@ -784,6 +933,7 @@ class CEmit
 	  if (m_spec.m_count_lines)
 	    {
 	      m_outstream.println("\t\tyyline = 0;");
+	      m_outstream.println("\t\tyy_line_mark = 0;");
 	    }
 	  m_outstream.println("\t\tyy_at_bol = true;");
 	  m_outstream.println("\t\tyy_lexical_state = YYINITIAL;");
@@ -804,6 +954,239 @@ class CEmit
 
 	}
 
+  /***************************************************************
+    Function: emit_init_throws
+    Description: Emits the throws clause (if any) and opening
+    brace of a generated constructor.
+    **************************************************************/
+  private void emit_init_throws
+    (
+     )
+      throws java.io.IOException
+	{
+	  if (null != m_spec.m_init_throw_code)
+	    {
+	      m_outstream.println();
+	      m_outstream.print("\t\tthrows ");
+	      m_outstream.println(new String(m_spec.m_init_throw_code,0,
+						m_spec.m_init_throw_read));
+	      m_outstream.println("\t\t{");
+	    }
+	  else
+	    {
+	      m_outstream.println(" {");
+	    }
+	}
+
+  /***************************************************************
+    Function: emit_whole_input_construct
+    Description: Emits the whole-input constructors.  The scanner
+    runs directly over a caller supplied character array (or over
+    bytes decoded once from a ByteBuffer, typically a file mapped
+    with FileChannel.map), with no reader behind it.  yy_advance()
+    then never refills, so partially matched tokens are never
+    copied back to the front of yy_buffer.
+    **************************************************************/
+  private void emit_whole_input_construct
+    (
+     )
+      throws java.io.IOException
+	{
+	  /* Function: char[] constructor */
+	  m_outstream.print("\t");
+	  if (true == m_spec.m_public) {
+	    m_outstream.print("public ");
+	  }
+          m_outstream.print(new String(m_spec.m_class_name));
+	  m_outstream.print(" (char buffer[], int offset, int length)");
+	  emit_init_throws();
+	  m_outstream.println("\t\tthis ();");
+	  m_outstream.println("\t\tyy_use_buffer(buffer, offset, length);");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: ByteBuffer constructor */
+	  m_outstream.print("\t");
+	  if (true == m_spec.m_public) {
+	    m_outstream.print("public ");
+	  }
+          m_outstream.print(new String(m_spec.m_class_name));
+	  m_outstream.print(" (java.nio.ByteBuffer bytes)");
+	  emit_init_throws();
+	  m_outstream.println("\t\tthis ();");
+	  m_outstream.println("\t\tjava.nio.CharBuffer chars = yy_decode(bytes);");
+	  m_outstream.println("\t\tyy_use_buffer(chars.array(), chars.position(), "
+			      + "chars.remaining());");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: yy_use_buffer */
+	  m_outstream.println("\tprivate void yy_use_buffer (char buffer[], int offset, int length) {");
+	  m_outstream.println("\t\tif (null == buffer || offset < 0 || length < 0");
+	  m_outstream.println("\t\t    || offset + length > buffer.length) {");
+	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
+				 + "buffer initializer.\"));");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_reader = null;");
+	  m_outstream.println("\t\tyy_buffer = buffer;");
+	  m_outstream.println("\t\tyy_buffer_index = offset;");
+	  m_outstream.println("\t\tyy_buffer_start = offset;");
+	  m_outstream.println("\t\tyy_buffer_end = offset;");
+	  m_outstream.println("\t\tyy_buffer_read = offset + length;");
+	  if (m_spec.m_count_lines)
+	    {
+	      m_outstream.println("\t\tyy_line_mark = offset;");
+	    }
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: yy_decode */
+	  m_outstream.println("\tprivate static java.nio.CharBuffer yy_decode (java.nio.ByteBuffer bytes) {");
+	  m_outstream.println("\t\tif (null == bytes) {");
+	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
+				 + "buffer initializer.\"));");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tint start = bytes.position();");
+	  m_outstream.println("\t\tint n = bytes.remaining();");
+	  m_outstream.println("\t\tchar buf[] = new char[n];");
+	  m_outstream.println("\t\tint i;");
+	  m_outstream.println("\t\tfor (i = 0; i < n; ++i) {");
+	  m_outstream.println("\t\t\tbyte b = bytes.get(start + i);");
+	  m_outstream.println("\t\t\tif (b < 0) {");
+	  m_outstream.println("\t\t\t\tbreak;");
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t\tbuf[i] = (char) b;");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tif (i == n) {");
+	  m_outstream.println("\t\t\treturn java.nio.CharBuffer.wrap(buf, 0, n);");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\t/* not plain ASCII: decode the rest as UTF-8, which never");
+	  m_outstream.println("\t\t   yields more chars than there are bytes */");
+	  m_outstream.println("\t\tjava.nio.ByteBuffer rest = bytes.duplicate();");
+	  m_outstream.println("\t\trest.position(start + i);");
+	  m_outstream.println("\t\tjava.nio.CharBuffer tail = "
+			      + "java.nio.charset.StandardCharsets.UTF_8.decode(rest);");
+	  m_outstream.println("\t\tn = i + tail.remaining();");
+	  m_outstream.println("\t\ttail.get(buf, i, tail.remaining());");
+	  m_outstream.println("\t\treturn java.nio.CharBuffer.wrap(buf, 0, n);");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+	}
+
+  /***************************************************************
+    Function: emit_reset
+    Description: Emits yyreset(), which restarts a scanner on new
+    input as if it had just been constructed for it, so that one
+    scanner can work through many files.  A reader-based scanner keeps
+    its yy_buffer (unless the buffer was a whole-input one, which
+    belongs to the caller).  The user's %init code is not run again,
+    and the fields declared in the user's class code keep their values:
+    only the %reset code, which runs last, can reset them.
+    **************************************************************/
+  private void emit_reset
+    (
+     )
+      throws java.io.IOException
+	{
+	  String access = (true == m_spec.m_public) ? "public " : "";
+
+	  /* Function: yyreset (Reader) */
+	  m_outstream.println("\t" + access
+			      + "void yyreset (java.io.Reader reader) {");
+	  m_outstream.println("\t\tif (null == reader) {");
+	  m_outstream.println("\t\t\tthrow (new Error(\"Error: Bad input "
+				 + "stream initializer.\"));");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tif (null == yy_reader) {");
+	  m_outstream.println("\t\t\tyy_buffer = new char[YY_BUFFER_SIZE];");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t\tyy_reader = new java.io.BufferedReader(reader);");
+	  m_outstream.println("\t\tyy_buffer_read = 0;");
+	  m_outstream.println("\t\tyy_buffer_index = 0;");
+	  m_outstream.println("\t\tyy_buffer_start = 0;");
+	  m_outstream.println("\t\tyy_buffer_end = 0;");
+	  m_outstream.println("\t\tyy_reset_state();");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: yyreset (char[]) */
+	  m_outstream.println("\t" + access
+			      + "void yyreset (char buffer[], int offset, int length) {");
+	  m_outstream.println("\t\tyy_use_buffer(buffer, offset, length);");
+	  m_outstream.println("\t\tyy_reset_state();");
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+
+	  /* Function: yy_reset_state */
+	  m_outstream.println("\tprivate void yy_reset_state () {");
+	  if (m_spec.m_count_chars)
+	    {
+	      m_outstream.println("\t\tyychar = 0;");
+	    }
+	  if (m_spec.m_count_lines)
+	    {
+	      m_outstream.println("\t\tyyline = 0;");
+	      m_outstream.println("\t\tyy_line_mark = yy_buffer_start;");
+	    }
+	  m_outstream.println("\t\tyy_at_bol = true;");
+	  m_outstream.println("\t\tyy_lexical_state = YYINITIAL;");
+	  m_outstream.println("\t\tyy_last_was_cr = false;");
+	  m_outstream.println("\t\tyy_eof_done = false;");
+	  if (linear())
+	    {
+	      m_outstream.println("\t\tyy_buffer_origin = 0;");
+	      m_outstream.println("\t\tyy_trail_count = 0;");
+	      m_outstream.println("\t\tyy_failed = null;");
+	      m_outstream.println("\t\tyy_failed_count = 0;");
+	    }
+	  if (null != m_spec.m_reset_code)
+	    {
+	      m_outstream.print(new String(m_spec.m_reset_code,0,
+					    m_spec.m_reset_read));
+	    }
+	  m_outstream.println("\t}");
+	  m_outstream.println();
+	}
+
+  /***************************************************************
+    Function: emit_skip
+    Description: Emits yy_skip(), which runs the %skip code at the
+    start of every match, before yy_mark_start().  The code may step
+    yy_buffer_index over characters that need no token (blanks,
+    comments) with yy_skip_to(), but only over characters already in
+    yy_buffer, i.e. below yy_buffer_read; yy_skip_final() tells it
+    whether those are the rest of the input.  Skipped characters are
+    then counted for yyline and yychar as if they had been matched.
+    The code runs in every lexical state; it can test yy_lexical_state.
+    **************************************************************/
+  private void emit_skip
+    (
+     )
+      throws java.io.IOException
+	{
+	  /* Function: yy_skip */
+	  m_outstream.println("\tprivate void yy_skip () {");
+	  m_outstream.print(new String(m_spec.m_skip_code,0,
+					    m_spec.m_skip_read));
+	  m_outstream.println("\t}");
+
+	  /* Function: yy_skip_to */
+	  m_outstream.println("\tprivate void yy_skip_to (int index) {");
+	  m_outstream.println("\t\tif (index > yy_buffer_index) {");
+	  m_outstream.println("\t\t\tchar last = yy_buffer[index - 1];");
+	  m_outstream.println("\t\t\tyy_at_bol = ('\\r' == last || '\\n' == last");
+	  m_outstream.println("\t\t\t\t|| 2028/*LS*/ == last || 2029/*PS*/ == last);");
+	  m_outstream.println("\t\t\tyy_buffer_index = index;");
+	  m_outstream.println("\t\t\tyy_buffer_end = index;");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t}");
+
+	  /* Function: yy_skip_final */
+	  m_outstream.println("\tprivate boolean yy_skip_final () {");
+	  m_outstream.println("\t\treturn null == yy_reader;");
+	  m_outstream.println("\t}");
+	}
+
   /***************************************************************
     Function: emit_states
     Description: Emits constants that serve as lexical states,
@@ -829,7 +1212,7 @@ class CEmit
 		  CUtility.ASSERT(null != state);
 		}
 	      
-	      m_outstream.println("\tprivate final int " 
+	      m_outstream.println("\tprivate static final int " 
 				     + state 
 				     + " = " 
 				     + (m_spec.m_states.get(state)).toString() 
@@ -837,7 +1220,8 @@ class CEmit
 	      /*++index;*/
 	    }
 
-	  m_outstream.println("\tprivate final int yy_state_dtrans[] = {");
+	  m_outstream.println("\tprivate static final int yy_state_dtrans[] = {");
+	  count_table(m_spec.m_state_dtrans.length);
 	  for (index = 0; index < m_spec.m_state_dtrans.length; ++index)
 	    {
 	      m_outstream.print("\t\t" + m_spec.m_state_dtrans[index]);
@@ -896,6 +1280,11 @@ class CEmit
 	    m_outstream.println("\t}");
 	  }
 
+	if (null != m_spec.m_skip_code)
+	  {
+	    emit_skip();
+	  }
+
 	emit_states();
 	
 	/* Function: yybegin */
@@ -923,7 +1312,18 @@ class CEmit
 	m_outstream.println("\t\t}");
 	m_outstream.println();
 
+	m_outstream.println("\t\tif (null == yy_reader) {");
+	m_outstream.println("\t\t\treturn YY_EOF;");
+	m_outstream.println("\t\t}");
+	m_outstream.println();
+
 	m_outstream.println("\t\tif (0 != yy_buffer_start) {");
+	if (m_spec.m_count_lines)
+	  {
+	    /* the lines before the match are about to go */
+	    m_outstream.println("\t\t\tyy_count_lines(yy_buffer_start);");
+	    m_outstream.println("\t\t\tyy_line_mark = 0;");
+	  }
 	m_outstream.println("\t\t\ti = yy_buffer_start;");
 	m_outstream.println("\t\t\tj = 0;");
 	m_outstream.println("\t\t\twhile (i < yy_buffer_read) {");
@@ -931,6 +1331,10 @@ class CEmit
 	m_outstream.println("\t\t\t\t++i;");
 	m_outstream.println("\t\t\t\t++j;");
 	m_outstream.println("\t\t\t}");
+	if (linear())
+	  {
+	    m_outstream.println("\t\t\tyy_buffer_origin = yy_buffer_origin + yy_buffer_start;");
+	  }
 	m_outstream.println("\t\t\tyy_buffer_end = yy_buffer_end - yy_buffer_start;");
 	m_outstream.println("\t\t\tyy_buffer_start = 0;");
 	m_outstream.println("\t\t\tyy_buffer_read = j;");
@@ -976,19 +1380,9 @@ class CEmit
 	m_outstream.println("\tprivate void yy_mark_start () {");
 	if (m_spec.m_count_lines || true == m_spec.m_count_chars)
 	  {
-	    if (m_spec.m_count_lines)
+	    if (m_spec.m_count_lines && false == lazy_lines())
 	      {
-		m_outstream.println("\t\tint i;");
-		m_outstream.println("\t\tfor (i = yy_buffer_start; " 
-				       + "i < yy_buffer_index; ++i) {");
-		m_outstream.println("\t\t\tif ('\\n' == yy_buffer[i] && !yy_last_was_cr) {");
-		m_outstream.println("\t\t\t\t++yyline;");
-		m_outstream.println("\t\t\t}");
-		m_outstream.println("\t\t\tif ('\\r' == yy_buffer[i]) {");
-		m_outstream.println("\t\t\t\t++yyline;");
-		m_outstream.println("\t\t\t\tyy_last_was_cr=true;");
-		m_outstream.println("\t\t\t} else yy_last_was_cr=false;");
-		m_outstream.println("\t\t}");
+		m_outstream.println("\t\tyy_count_lines(yy_buffer_index);");
 	      }
 	    if (m_spec.m_count_chars)
 	      {
@@ -999,6 +1393,11 @@ class CEmit
 	m_outstream.println("\t\tyy_buffer_start = yy_buffer_index;");
 	m_outstream.println("\t}");
 
+	if (m_spec.m_count_lines)
+	  {
+	    emit_count_lines();
+	  }
+
 	/* Function: yy_mark_end */
 	m_outstream.println("\tprivate void yy_mark_end () {");
 	m_outstream.println("\t\tyy_buffer_end = yy_buffer_index;");
@@ -1031,6 +1430,51 @@ class CEmit
 	m_outstream.println("\t\treturn yy_buffer_end - yy_buffer_start;");
 	m_outstream.println("\t}");
 
+	/* Functions: yybuffer, yystart, yycharat, yylong, yyhash.
+	   Read the match where it lies, in yy_buffer, rather than
+	   copying it into a String as yytext() does: the match is
+	   yybuffer()[yystart() .. yystart()+yylength()-1], until the
+	   next call to the scanning function. */
+	m_outstream.println("\tprivate char[] yybuffer () {");
+	m_outstream.println("\t\treturn yy_buffer;");
+	m_outstream.println("\t}");
+
+	m_outstream.println("\tprivate int yystart () {");
+	m_outstream.println("\t\treturn yy_buffer_start;");
+	m_outstream.println("\t}");
+
+	m_outstream.println("\tprivate char yycharat (int i) {");
+	m_outstream.println("\t\treturn yy_buffer[yy_buffer_start + i];");
+	m_outstream.println("\t}");
+
+	/* the value of a match of [-]?[0-9]+, clamped to the long range */
+	m_outstream.println("\tprivate long yylong () {");
+	m_outstream.println("\t\tint i = yy_buffer_start;");
+	m_outstream.println("\t\tboolean negative = (i < yy_buffer_end && '-' == yy_buffer[i]);");
+	m_outstream.println("\t\tlong value = 0;");
+	m_outstream.println("\t\tif (negative) {");
+	m_outstream.println("\t\t\t++i;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tfor (; i < yy_buffer_end; ++i) {");
+	m_outstream.println("\t\t\tint digit = yy_buffer[i] - '0';");
+	m_outstream.println("\t\t\tif (value > (java.lang.Long.MAX_VALUE - digit) / 10) {");
+	m_outstream.println("\t\t\t\treturn (negative ? java.lang.Long.MIN_VALUE");
+	m_outstream.println("\t\t\t\t\t: java.lang.Long.MAX_VALUE);");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tvalue = 10 * value + digit;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn (negative ? -value : value);");
+	m_outstream.println("\t}");
+
+	/* the hash java.lang.String.hashCode() gives for yytext() */
+	m_outstream.println("\tprivate int yyhash () {");
+	m_outstream.println("\t\tint h = 0;");
+	m_outstream.println("\t\tfor (int i = yy_buffer_start; i < yy_buffer_end; ++i) {");
+	m_outstream.println("\t\t\th = 31 * h + yy_buffer[i];");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn h;");
+	m_outstream.println("\t}");
+
 	/* Function: yy_double */
 	m_outstream.println("\tprivate char[] yy_double (char buf[]) {");
 	m_outstream.println("\t\tint i;");
@@ -1043,9 +1487,9 @@ class CEmit
 	m_outstream.println("\t}");
 
 	/* Function: yy_error */
-	m_outstream.println("\tprivate final int YY_E_INTERNAL = 0;");
-	m_outstream.println("\tprivate final int YY_E_MATCH = 1;");
-	m_outstream.println("\tprivate java.lang.String yy_error_string[] = {");
+	m_outstream.println("\tprivate static final int YY_E_INTERNAL = 0;");
+	m_outstream.println("\tprivate static final int YY_E_MATCH = 1;");
+	m_outstream.println("\tprivate static final java.lang.String yy_error_string[] = {");
 	m_outstream.println("\t\t\"Error: Internal error.\\n\",");
 	m_outstream.println("\t\t\"Error: Unmatched input.\\n\"");
 	m_outstream.println("\t};");
@@ -1072,7 +1516,7 @@ class CEmit
 	// Added 6/24/98 Raimondas Lencevicius
 	// May be made more efficient by replacing String operations
 	// Assumes correctly formed input String. Performs no error checking
-	m_outstream.println("\tprivate int[][] unpackFromString"+
+	m_outstream.println("\tprivate static int[][] unpackFromString"+
 			    "(int size1, int size2, String st) {");
 	m_outstream.println("\t\tint colonIndex = -1;");
 	m_outstream.println("\t\tString lengthString;");
@@ -1146,6 +1590,96 @@ class CEmit
 	m_outstream.println(" {");
       }
 
+  /***************************************************************
+    Function: emit_count_lines
+    Description: Emits yy_count_lines(), which brings yyline up to
+    yy_buffer[to], counting the line terminators (\n, \r or \r\n)
+    from yy_line_mark, where it last stopped, in one pass with one
+    test per character and the rest only at a \n or \r.
+    yy_last_was_cr keeps a \r\n split between two calls from
+    counting twice.
+    **************************************************************/
+  private void emit_count_lines
+    (
+     )
+      throws java.io.IOException
+      {
+	/* Function: yy_count_lines */
+	m_outstream.println("\tprivate void yy_count_lines (int to) {");
+	m_outstream.println("\t\tint from = yy_line_mark;");
+	m_outstream.println("\t\tint lines = 0;");
+	m_outstream.println("\t\tfor (int i = from; i < to; ++i) {");
+	m_outstream.println("\t\t\tchar c = yy_buffer[i];");
+	m_outstream.println("\t\t\tif (c <= '\\r' && ('\\r' == c || ('\\n' == c");
+	m_outstream.println("\t\t\t    && (i > from ? '\\r' != yy_buffer[i - 1] : !yy_last_was_cr)))) {");
+	m_outstream.println("\t\t\t\t++lines;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tif (to > from) {");
+	m_outstream.println("\t\t\tyy_last_was_cr = ('\\r' == yy_buffer[to - 1]);");
+	m_outstream.println("\t\t\tyyline = yyline + lines;");
+	m_outstream.println("\t\t\tyy_line_mark = to;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t}");
+      }
+
+  /***************************************************************
+    Function: lazy_lines
+    Description: Whether, with %line, yyline is brought up to date
+    only before the actions that read it (see emit_actions) instead
+    of at the start of every match: when no code but the actions'
+    can read it.
+    **************************************************************/
+  private boolean lazy_lines
+    (
+     )
+      {
+	return false == mentions_yyline(m_spec.m_class_code,m_spec.m_class_read)
+	  && false == mentions_yyline(m_spec.m_init_code,m_spec.m_init_read)
+	  && false == mentions_yyline(m_spec.m_eof_code,m_spec.m_eof_read)
+	  && false == mentions_yyline(m_spec.m_eof_value_code,
+				      m_spec.m_eof_value_read)
+	  && false == mentions_yyline(m_spec.m_skip_code,m_spec.m_skip_read)
+	  && false == mentions_yyline(m_spec.m_reset_code,m_spec.m_reset_read);
+      }
+
+  /***************************************************************
+    Function: mentions_yyline
+    Description: Whether code[0 .. length - 1] has yyline in it
+    as an identifier.
+    **************************************************************/
+  private static boolean mentions_yyline
+    (
+     char code[],
+     int length
+     )
+      {
+	final String name = "yyline";
+	int n = name.length();
+
+	if (null == code)
+	  {
+	    return false;
+	  }
+	for (int i = 0; i + n <= length; ++i)
+	  {
+	    int j = 0;
+
+	    while (j < n && name.charAt(j) == code[i + j])
+	      {
+		++j;
+	      }
+	    if (j == n
+		&& (0 == i || false == Character.isJavaIdentifierPart(code[i - 1]))
+		&& (i + n == length
+		    || false == Character.isJavaIdentifierPart(code[i + n])))
+	      {
+		return true;
+	      }
+	  }
+	return false;
+      }
+
   /***************************************************************
     Function: emit_table
     Description: Emits transition table.
@@ -1169,8 +1703,9 @@ class CEmit
 	    CUtility.ASSERT(null != m_outstream);
 	  }
 
-	m_outstream.println("\tprivate int yy_acpt[] = {");
+	m_outstream.println("\tprivate static final int yy_acpt[] = {");
 	size = m_spec.m_accept_vector.size();
+	count_table(size);
 	for (elem = 0; elem < size; ++elem)
 	  {
 	    accept = (CAccept) m_spec.m_accept_vector.elementAt(elem);
@@ -1216,13 +1751,48 @@ class CEmit
 	int[] yy_cmap = new int[m_spec.m_ccls_map.length];
 	for (i = 0; i < m_spec.m_ccls_map.length; ++i)
 	    yy_cmap[i] = m_spec.m_col_map[m_spec.m_ccls_map[i]];
-	m_outstream.print("\tprivate int yy_cmap[] = unpackFromString(");
-	emit_table_as_string(new int[][] { yy_cmap });
-	m_outstream.println(")[0];");
+	if (paged_cmap())
+	  {
+	    emit_paged_cmap(yy_cmap);
+	  }
+	else
+	  {
+	    m_outstream.print("\tprivate static final int yy_cmap[] = unpackFromString(");
+	    emit_table_as_string(new int[][] { yy_cmap });
+	    m_outstream.println(")[0];");
+	  }
 	m_outstream.println();
 
+	if (linear())
+	  {
+	    emit_linear();
+	  }
+
+	if (m_spec.m_directcode)
+	  {
+	    /* the transitions are in the code; see emit_direct_code */
+	    return;
+	  }
+
+	if (m_spec.m_flat)
+	  {
+	    emit_flat_table();
+	    return;
+	  }
+
+	if (m_spec.m_compress)
+	  {
+	    if (emit_comb_table())
+	      {
+		return;
+	      }
+	    System.out.println("Too many states for %compress; "
+			       + "emitting uncompressed tables.");
+	    m_spec.m_compress = false;
+	  }
+
 	// CSA: modified yy_rmap to use string packing 9-Aug-1999
-	m_outstream.print("\tprivate int yy_rmap[] = unpackFromString(");
+	m_outstream.print("\tprivate static final int yy_rmap[] = unpackFromString(");
 	emit_table_as_string(new int[][] { m_spec.m_row_map });
 	m_outstream.println(")[0];");
 	m_outstream.println();
@@ -1238,2621 +1808,5410 @@ class CEmit
 	    yy_nxt[elem] = dtrans.m_dtrans;
 	}
 	m_outstream.print
-	  ("\tprivate int yy_nxt[][] = unpackFromString(");
+	  ("\tprivate static final int yy_nxt[][] = unpackFromString(");
 	emit_table_as_string(yy_nxt);
 	m_outstream.println(");");
 	m_outstream.println();
       }
 
   /***************************************************************
-    Function: emit_driver
-    Description: Output an integer table as a string.  Written by
-    Raimondas Lencevicius 6/24/98; reorganized by CSA 9-Aug-1999.
-    From his original comments:
-	   yy_nxt[][] values are coded into a string
-	   by printing integers and representing
-	   integer sequences as "value:length" pairs.
+    Function: linear
+    Description: Whether the lexer remembers where it failed (see
+    emit_linear): with %linear, if there is anywhere to remember.
     **************************************************************/
-  private void emit_table_as_string(int[][] ia) {
-	int sequenceLength = 0; // RL - length of the number sequence
-	boolean sequenceStarted = false; // RL - has number sequence started?
-	int previousInt = -20; // RL - Bogus -20 state.
-	
-	// RL - Output matrix size
-	m_outstream.print(ia.length);
-	m_outstream.print(",");
-	m_outstream.print(ia.length>0?ia[0].length:0);
-	m_outstream.println(",");
+  private boolean linear
+    (
+     )
+      {
+	return m_spec.m_linear && 0 < m_spec.m_unbounded_count;
+      }
 
-	StringBuffer outstr = new StringBuffer();
+  /***************************************************************
+    Function: remembers
+    Description: Whether the lexer remembers where it failed in
+    state.
+    **************************************************************/
+  private boolean remembers
+    (
+     int state
+     )
+      {
+	return linear() && m_spec.m_unbounded[state];
+      }
 
-	//  RL - Output matrix 
-	for (int elem = 0; elem < ia.length; ++elem)
+  /***************************************************************
+    Function: emit_linear
+    Description: Emits, for %linear, the table and functions with
+    which the lexer remembers where it failed.  In the states that
+    CBackup finds it can read any number of characters in before
+    backing up (yy_memo[s] is 1 for those), the lexer keeps a trail
+    of the states and positions it entered since the last accepting
+    state.  When it then fails, none of those can lead to a match,
+    and yy_fail() records them in yy_failed; if the lexer gets to
+    one of them again, scanning on from a later start, it fails at
+    once instead of reading the same characters again.  Each state
+    and position so fails only once, which keeps scanning linear in
+    the length of the input (Reps, "Maximal-munch" tokenization in
+    linear time, TOPLAS 1998).  A position is an offset in the input
+    (yy_buffer_origin is that of yy_buffer[0]); failures behind the
+    start of the current match are dropped.
+    **************************************************************/
+  private void emit_linear
+    (
+     )
+      throws java.io.IOException
+      {
+	int memo[] = new int[m_spec.m_unbounded.length];
+	for (int s = 0; s < memo.length; ++s)
 	  {
-	    for (int i = 0; i < ia[elem].length; ++i)
-	      {
-		int writeInt = ia[elem][i];
-		if (writeInt == previousInt) // RL - sequence?
-		  {
-		    if (sequenceStarted)
-		      {
-			sequenceLength++;
-		      }
-		    else
-		      {
-			outstr.append(writeInt);
-			outstr.append(":");
-			sequenceLength = 2;
-			sequenceStarted = true;
-		      }
-		  }
-		else // RL - no sequence or end sequence
-		  {
-		    if (sequenceStarted)
-		      {
-			outstr.append(sequenceLength);
-			outstr.append(",");
-			sequenceLength = 0;
-			sequenceStarted = false;
-		      }
-		    else
-		      {
-			if (previousInt != -20)
-			  {
-			    outstr.append(previousInt);
-			    outstr.append(",");
-			  }
-		      }
-		  }
-		previousInt = writeInt;
-		// CSA: output in 75 character chunks.
-		if (outstr.length() > 75) {
-		  String s = outstr.toString();
-		  m_outstream.println("\""+s.substring(0,75)+"\" +");
-		  outstr = new StringBuffer(s.substring(75));
-		}
-	      }
+	    memo[s] = m_spec.m_unbounded[s] ? 1 : 0;
 	  }
-	if (sequenceStarted)
+	if (false == m_spec.m_directcode)
 	  {
-	    outstr.append(sequenceLength);
+	    /* the direct code knows its states */
+	    m_outstream.print("\tprivate static final int yy_memo[] = unpackFromString(");
+	    emit_table_as_string(new int[][] { memo });
+	    m_outstream.println(")[0];");
 	  }
-	else
+
+	/* Function: yy_trail_push */
+	m_outstream.println("\tprivate void yy_trail_push (int state) {");
+	m_outstream.println("\t\tif (yy_trail_count == yy_trail.length) {");
+	m_outstream.println("\t\t\tyy_trail = java.util.Arrays.copyOf(yy_trail, 2 * yy_trail.length);");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tyy_trail[yy_trail_count++] = state;");
+	m_outstream.println("\t\tyy_trail[yy_trail_count++] = yy_buffer_origin + yy_buffer_index;");
+	m_outstream.println("\t}");
+
+	/* Function: yy_failed_key */
+	m_outstream.println("\tprivate static long yy_failed_key (int state, int position) {");
+	m_outstream.println("\t\treturn ((long) position << 32) | (state + 1);");
+	m_outstream.println("\t}");
+
+	/* Function: yy_failed_slot */
+	m_outstream.println("\tprivate static int yy_failed_slot (long failed[], long key) {");
+	m_outstream.println("\t\tint mask = failed.length - 1;");
+	m_outstream.println("\t\tint i = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;");
+	m_outstream.println("\t\twhile (0 != failed[i] && key != failed[i]) {");
+	m_outstream.println("\t\t\ti = (i + 1) & mask;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn i;");
+	m_outstream.println("\t}");
+
+	/* Function: yy_has_failed */
+	m_outstream.println("\tprivate boolean yy_has_failed (int state) {");
+	m_outstream.println("\t\treturn 0 != yy_failed_count");
+	m_outstream.println("\t\t\t&& 0 != yy_failed[yy_failed_slot(yy_failed,");
+	m_outstream.println("\t\t\t\tyy_failed_key(state, yy_buffer_origin + yy_buffer_index))];");
+	m_outstream.println("\t}");
+
+	/* Function: yy_fail */
+	m_outstream.println("\tprivate void yy_fail () {");
+	m_outstream.println("\t\tif (0 != yy_failed_count");
+	m_outstream.println("\t\t    && yy_failed_max < yy_buffer_origin + yy_buffer_start) {");
+	m_outstream.println("\t\t\tyy_failed = null;");
+	m_outstream.println("\t\t\tyy_failed_count = 0;");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tfor (int i = 0; i < yy_trail_count; i += 2) {");
+	m_outstream.println("\t\t\tif (null == yy_failed || 2 * (yy_failed_count + 1) > yy_failed.length) {");
+	m_outstream.println("\t\t\t\tlong old[] = yy_failed;");
+	m_outstream.println("\t\t\t\tyy_failed = new long[null == old ? 64 : 2 * old.length];");
+	m_outstream.println("\t\t\t\tfor (int j = 0; null != old && j < old.length; ++j) {");
+	m_outstream.println("\t\t\t\t\tif (0 != old[j]) {");
+	m_outstream.println("\t\t\t\t\t\tyy_failed[yy_failed_slot(yy_failed, old[j])] = old[j];");
+	m_outstream.println("\t\t\t\t\t}");
+	m_outstream.println("\t\t\t\t}");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tlong key = yy_failed_key(yy_trail[i], yy_trail[i + 1]);");
+	m_outstream.println("\t\t\tint slot = yy_failed_slot(yy_failed, key);");
+	m_outstream.println("\t\t\tif (0 == yy_failed[slot]) {");
+	m_outstream.println("\t\t\t\tyy_failed[slot] = key;");
+	m_outstream.println("\t\t\t\tif (0 == yy_failed_count++ || yy_trail[i + 1] > yy_failed_max) {");
+	m_outstream.println("\t\t\t\t\tyy_failed_max = yy_trail[i + 1];");
+	m_outstream.println("\t\t\t\t}");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\tyy_trail_count = 0;");
+	m_outstream.println("\t}");
+	m_outstream.println();
+      }
+
+  /***************************************************************
+    Function: count_table
+    Description: Adds the ints of an emitted table to the -stats
+    count.
+    **************************************************************/
+  private void count_table
+    (
+     int ints
+     )
+      {
+	if (null != m_spec.m_stats)
 	  {
-	    outstr.append(previousInt);
-	  }    
-	// CSA: output in 75 character chunks.
-	if (outstr.length() > 75) {
-	  String s = outstr.toString();
-	  m_outstream.println("\""+s.substring(0,75)+"\" +");
-	  outstr = new StringBuffer(s.substring(75));
-	}
-	m_outstream.print("\""+outstr+"\"");
-  }
+	    m_spec.m_stats.m_table_ints += ints;
+	  }
+      }
 
   /***************************************************************
-    Function: emit_driver
-    Description: 
+    Function: paged_cmap
+    Description: Returns true if the character class map is emitted
+    in pages (see emit_paged_cmap), which is done for %unicode;
+    smaller character sets keep one flat yy_cmap.
     **************************************************************/
-  private void emit_driver
+  private boolean paged_cmap
+    (
+     )
+      {
+	return m_spec.m_ccls_map.length
+	  > CUtility.MAX_EIGHT_BIT + 1 + CSpec.NUM_PSEUDO;
+      }
+
+  /***************************************************************
+    Function: cmap_lookup
+    Description: Returns the expression for the character class of
+    c, the name of an int holding a character, YY_BOL or YY_EOF.
+    **************************************************************/
+  private String cmap_lookup
+    (
+     String c
+     )
+      {
+	if (paged_cmap())
+	  {
+	    return "(" + c + " < YY_CMAP_DIRECT ? yy_cmap[" + c + "] : "
+	      + "yy_cmap_paged(" + c + "))";
+	  }
+	return "yy_cmap[" + c + "]";
+      }
+
+  /***************************************************************
+    Function: emit_paged_cmap
+    Description: Emits the character class map for %unicode in two
+    levels, rather than as one array with an entry for each of the
+    65536 characters (and YY_BOL and YY_EOF after them).  yy_cmap
+    keeps the classes of the ASCII characters, which are looked up
+    with one array access as before.  The rest of the map is cut
+    into pages of CMAP_PAGE_SIZE entries, and identical pages are
+    stored once, in yy_cmap_page; yy_cmap_index has the offset there
+    of each page.  So
+
+	c < YY_CMAP_DIRECT ? yy_cmap[c]
+	  : yy_cmap_page[yy_cmap_index[c >> 8] + (c & 0xff)]
+
+    and a scanner whose rules name few characters outside ASCII has
+    only a few distinct pages.
+    **************************************************************/
+  private void emit_paged_cmap
     (
+     int yy_cmap[]
      )
       throws java.io.IOException
-	{
-	  if (CUtility.DEBUG)
-	    {
-	      CUtility.ASSERT(null != m_spec);
-	      CUtility.ASSERT(null != m_outstream);
-	    }
-	  
-	  emit_table();
+      {
+	int npages = (yy_cmap.length + CMAP_PAGE_SIZE - 1) / CMAP_PAGE_SIZE;
+	int index[] = new int[npages];
+	int pages[][] = new int[npages][];
+	int ndistinct = 0;
 
-	  if (m_spec.m_integer_type)
-	    {
-	      m_outstream.print("\tpublic int ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
-	  else if (m_spec.m_intwrap_type)
-	    {
-	      m_outstream.print("\tpublic java.lang.Integer ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
-	  else
-	    {
-	      m_outstream.print("\tpublic ");
-	      m_outstream.print(new String(m_spec.m_type_name));
-	      m_outstream.print(" ");
-	      m_outstream.print(new String(m_spec.m_function_name));
-	      m_outstream.println(" ()");
-	    }
+	for (int page = 0; page < npages; ++page)
+	  {
+	    /* the last page is padded with its last entry */
+	    int base = page * CMAP_PAGE_SIZE;
+	    int entries[] = new int[CMAP_PAGE_SIZE];
+	    for (int i = 0; i < CMAP_PAGE_SIZE; ++i)
+	      {
+		entries[i] = yy_cmap[Math.min(base + i, yy_cmap.length - 1)];
+	      }
 
-	  /*m_outstream.println("\t\tthrows java.io.IOException {");*/
-	  m_outstream.print("\t\tthrows java.io.IOException");
-	  if (null != m_spec.m_yylex_throw_code)
-	    {
-	      m_outstream.print(", "); 
-	      m_outstream.print(new String(m_spec.m_yylex_throw_code,0,
-						m_spec.m_yylex_throw_read));
-	      m_outstream.println();
-	      m_outstream.println("\t\t{");
-	    }
-	  else
-	    {
-	      m_outstream.println(" {");
-	    }
+	    int found = 0;
+	    while (found < ndistinct
+		   && !java.util.Arrays.equals(pages[found], entries))
+	      {
+		++found;
+	      }
+	    if (found == ndistinct)
+	      {
+		pages[ndistinct++] = entries;
+	      }
+	    index[page] = found * CMAP_PAGE_SIZE;
+	  }
 
-	  m_outstream.println("\t\tint yy_lookahead;");
-	  m_outstream.println("\t\tint yy_anchor = YY_NO_ANCHOR;");
-	  /*m_outstream.println("\t\tint yy_state "
-	    + "= yy_initial_dtrans(yy_lexical_state);");*/
-	  m_outstream.println("\t\tint yy_state " 
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\tint yy_next_state = YY_NO_STATE;");
-	  /*m_outstream.println("\t\tint yy_prev_stave = YY_NO_STATE;");*/
-	  m_outstream.println("\t\tint yy_last_accept_state = YY_NO_STATE;");
-    	  m_outstream.println("\t\tboolean yy_initial = true;");
-	  m_outstream.println("\t\tint yy_this_accept;");
-	  m_outstream.println();
+	int yy_cmap_page[] = new int[ndistinct * CMAP_PAGE_SIZE];
+	for (int page = 0; page < ndistinct; ++page)
+	  {
+	    System.arraycopy(pages[page], 0, yy_cmap_page,
+			     page * CMAP_PAGE_SIZE, CMAP_PAGE_SIZE);
+	  }
+	int direct[] = new int[CMAP_DIRECT];
+	System.arraycopy(yy_cmap, 0, direct, 0, CMAP_DIRECT);
 
-	  m_outstream.println("\t\tyy_mark_start();");
-	  /*m_outstream.println("\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t}");
+	if (m_spec.m_verbose)
+	  {
+	    System.out.println("Character class map: " + ndistinct
+			       + " distinct pages of " + npages + ".");
+	  }
 
-	  if (NOT_EDBG)
-	    {
-	      m_outstream.println("\t\tjava.lang.System.out.println(\"Begin\");");
-	    }
+	m_outstream.println("\tprivate static final int YY_CMAP_DIRECT = "
+			    + CMAP_DIRECT + ";");
+	m_outstream.print("\tprivate static final int yy_cmap[] = unpackFromString(");
+	emit_table_as_string(new int[][] { direct });
+	m_outstream.println(")[0];");
+	m_outstream.print("\tprivate static final int yy_cmap_index[] = unpackFromString(");
+	emit_table_as_string(new int[][] { index });
+	m_outstream.println(")[0];");
+	m_outstream.print("\tprivate static final int yy_cmap_page[] = unpackFromString(");
+	emit_table_as_string(new int[][] { yy_cmap_page });
+	m_outstream.println(")[0];");
 
-	  m_outstream.println("\t\twhile (true) {");
+	/* Function: yy_cmap_paged */
+	m_outstream.println("\tprivate static int yy_cmap_paged (int c) {");
+	m_outstream.println("\t\treturn yy_cmap_page[yy_cmap_index[c >> "
+			    + CMAP_PAGE_BITS + "] + (c & "
+			    + (CMAP_PAGE_SIZE - 1) + ")];");
+	m_outstream.println("\t}");
+      }
 
-	  m_outstream.println("\t\t\tif (yy_initial && yy_at_bol) "+
-			                 "yy_lookahead = YY_BOL;");
-	  m_outstream.println("\t\t\telse yy_lookahead = yy_advance();");
-	  m_outstream.println("\t\t\tyy_next_state = YY_F;");
-	  /*m_outstream.println("\t\t\t\tyy_next_state = "
-				 + "yy_next(yy_state,yy_lookahead);");*/
-	  m_outstream.println("\t\t\tyy_next_state = "
- 	   + "yy_nxt[yy_rmap[yy_state]][yy_cmap[yy_lookahead]];");
+  /***************************************************************
+    Function: emit_direct_code
+    Description: Emits the transition step of the scanning loop for
+    %directcode: a switch on yy_state with, for each distinct row
+    of the DFA, a switch on the character class of yy_lookahead
+    that sets yy_next_state.  States sharing a row share a case,
+    except that a state with transitions to itself (and which no
+    match starts in, so yy_initial is false there) gets a case of
+    its own that runs through such characters without leaving the
+    switch.  The code grows with the DFA, and the scanning function
+    must stay under the JVM's 64K limit, so this is meant for small
+    ones; emit() falls back to the tables when direct_method_size
+    says the function would be too large.
+    **************************************************************/
+  private void emit_direct_code
+    (
+     )
+      throws java.io.IOException
+      {
+	int nstates = m_spec.m_row_map.length;
+	int nrows = m_spec.m_dtrans_vector.size();
+	int ncols = m_spec.m_dtrans_ncols;
+	int state;
 
-	  if (NOT_EDBG)
-	    {
-	      m_outstream.println("java.lang.System.out.println(\"Current state: \"" 
-				     + " + yy_state");
-	      m_outstream.println("+ \"\tCurrent input: \""); 
-	      m_outstream.println(" + ((char) yy_lookahead));");
-	    }
-	  if (NOT_EDBG)
-	    {
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"State = \"" 
-				     + "+ yy_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Accepting status = \"" 
-				     + "+ yy_this_accept);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Last accepting state = \"" 
-				     + "+ yy_last_accept_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Next state = \"" 
-				     + "+ yy_next_state);");
-	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Lookahead input = \"" 
-				     + "+ ((char) yy_lookahead));");
-	    }
+	/* states a match starts in, where yy_initial may still be set */
+	boolean initial[] = new boolean[nstates];
+	for (int i = 0; i < m_spec.m_state_dtrans.length; ++i)
+	  {
+	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	      {
+		initial[m_spec.m_state_dtrans[i]] = true;
+	      }
+	  }
 
-	  // handle bare EOF.
-	  m_outstream.println("\t\t\tif (YY_EOF == yy_lookahead " 
-				 + "&& true == yy_initial) {");
-	  if (null != m_spec.m_eof_code)
-	    {
-	      m_outstream.println("\t\t\t\tyy_do_eof();");
-	    }
-	  if (true == m_spec.m_integer_type)
-	    {
-	      m_outstream.println("\t\t\t\treturn YYEOF;");
-	    }
-	  else if (null != m_spec.m_eof_value_code) 
-	    {
-	      m_outstream.print(new String(m_spec.m_eof_value_code,0,
-						m_spec.m_eof_value_read));
-	    }
-	  else
-	    {
-	      m_outstream.println("\t\t\t\treturn null;");
-	    }
-	  m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t\tswitch (yy_state) {");
+	for (int row = 0; row < nrows; ++row)
+	  {
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(row)).m_dtrans;
+	    boolean shared = false;
 
-	  m_outstream.println("\t\t\tif (YY_F != yy_next_state) {");
-	  m_outstream.println("\t\t\t\tyy_state = yy_next_state;");
-     	  m_outstream.println("\t\t\t\tyy_initial = false;");
-     	  /*m_outstream.println("\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t\t\t}");
-	  /*m_outstream.println("\t\t\t\tyy_prev_state = yy_state;");*/
-	  /*m_outstream.println("\t\t\t\tyy_state = yy_next_state;");*/
-	  m_outstream.println("\t\t\t}");
+	    for (state = 0; state < nstates; ++state)
+	      {
+		if (own_loop(state, row, initial, dtrans))
+		  {
+		    /* a state of its own that loops on itself */
+		    m_outstream.println("\t\t\tcase " + state + ":");
+		    m_outstream.println("\t\t\tyy_loop_" + state
+					+ ": while (true) {");
+		    emit_direct_row(dtrans, state, "\t\t\t\t");
+		    m_outstream.println("\t\t\t\tbreak;");
+		    m_outstream.println("\t\t\t}");
+		    m_outstream.println("\t\t\t\tbreak;");
+		  }
+	      }
+	    for (state = 0; state < nstates; ++state)
+	      {
+		if (m_spec.m_row_map[state] == row
+		    && false == own_loop(state, row, initial, dtrans)
+		    && has_target(dtrans, -2))
+		  {
+		    m_outstream.println("\t\t\tcase " + state + ":");
+		    shared = true;
+		  }
+	      }
+	    if (shared)
+	      {
+		emit_direct_row(dtrans, -1, "\t\t\t\t");
+		m_outstream.println("\t\t\t\tbreak;");
+	      }
+	  }
+	m_outstream.println("\t\t\t}");
+      }
 
-	  m_outstream.println("\t\t\telse {");
-	  
-	  m_outstream.println("\t\t\t\tif (YY_NO_STATE == yy_last_accept_state) {");
-	  
+  /***************************************************************
+    Function: direct_method_size
+    Description: Estimates the bytecode of the scanning function
+    with the code of emit_direct_code in it, which must stay under
+    the JVM's limit of METHOD_LIMIT bytes per method.  The sizes
+    used are generous guesses at what javac makes of each construct
+    (and of each action, half a byte per character), not exact
+    counts.
+    **************************************************************/
+  private int direct_method_size
+    (
+     )
+      {
+	int size = 1000; /* the rest of the scanning loop */
 
-	  /*m_outstream.println("\t\t\t\t\tyy_error(YY_E_MATCH,false);");
-    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
-	  m_outstream.println("\t\t\t\t\tyy_state "
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
-	  m_outstream.println("\t\t\t\t\tyy_mark_start();");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\t}");*/
+	for (int i = 0; i < m_spec.m_accept_vector.size(); ++i)
+	  {
+	    CAccept accept = (CAccept) m_spec.m_accept_vector.elementAt(i);
 
-	  m_outstream.println("\t\t\t\t\tthrow (new Error(\"Lexical Error: Unmatched Input.\"));");
-	  m_outstream.println("\t\t\t\t}");
+	    if (null != accept)
+	      {
+		size += 12 + accept.m_action_read / 2;
+	      }
+	  }
+	return size + direct_code_size();
+      }
 
-	  m_outstream.println("\t\t\t\telse {");
+  /***************************************************************
+    Function: direct_code_size
+    Description: Estimates the bytecode of emit_direct_code, going
+    through the rows and states the way it does.
+    **************************************************************/
+  private int direct_code_size
+    (
+     )
+      {
+	int nstates = m_spec.m_row_map.length;
+	int nrows = m_spec.m_dtrans_vector.size();
+	int size = 16 + 4 * nstates; /* switch (yy_state) */
 
-	  m_outstream.println("\t\t\t\t\tyy_anchor = yy_acpt[yy_last_accept_state];");
-	  /*m_outstream.println("\t\t\t\t\tyy_anchor " 
-	    + "= yy_accept(yy_last_accept_state);");*/
-	  m_outstream.println("\t\t\t\t\tif (0 != (YY_END & yy_anchor)) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_move_end();");
-	  m_outstream.println("\t\t\t\t\t}");
-	  m_outstream.println("\t\t\t\t\tyy_to_mark();");
+	boolean initial[] = new boolean[nstates];
+	for (int i = 0; i < m_spec.m_state_dtrans.length; ++i)
+	  {
+	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	      {
+		initial[m_spec.m_state_dtrans[i]] = true;
+	      }
+	  }
 
-	  m_outstream.println("\t\t\t\t\tswitch (yy_last_accept_state) {");
+	for (int row = 0; row < nrows; ++row)
+	  {
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(row)).m_dtrans;
+	    boolean shared = false;
 
-	  emit_actions("\t\t\t\t\t");
+	    for (int state = 0; state < nstates; ++state)
+	      {
+		if (own_loop(state, row, initial, dtrans))
+		  {
+		    size += 8 + direct_row_size(dtrans, state);
+		  }
+		else if (m_spec.m_row_map[state] == row
+			 && has_target(dtrans, -2))
+		  {
+		    shared = true;
+		  }
+	      }
+	    if (shared)
+	      {
+		size += 3 + direct_row_size(dtrans, -1);
+	      }
+	  }
+	return size;
+      }
 
-	  m_outstream.println("\t\t\t\t\tdefault:");
-	  m_outstream.println("\t\t\t\t\t\tyy_error(YY_E_INTERNAL,false);");
-	  /*m_outstream.println("\t\t\t\t\t\treturn null;");*/
-	  m_outstream.println("\t\t\t\t\tcase -1:");
-	  m_outstream.println("\t\t\t\t\t}");
-	  
-    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
-	  m_outstream.println("\t\t\t\t\tyy_state "
-				 + "= yy_state_dtrans[yy_lexical_state];");
-	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");
-	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
-	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+  /***************************************************************
+    Function: direct_row_size
+    Description: Estimates the bytecode of emit_direct_row.
+    **************************************************************/
+  private int direct_row_size
+    (
+     int dtrans[],
+     int self
+     )
+      {
+	int dflt = direct_default(dtrans);
+	boolean done[] = new boolean[dtrans.length];
+	/* the class lookup and the switch instruction */
+	int size = (paged_cmap() ? 30 : 6) + 16;
 
-	  m_outstream.println("\t\t\t\t\tyy_mark_start();");
+	for (int col = 0; col < dtrans.length; ++col)
+	  {
+	    if (done[col] || dtrans[col] == dflt)
+	      {
+		continue;
+	      }
+	    for (int other = col; other < dtrans.length; ++other)
+	      {
+		if (dtrans[other] == dtrans[col])
+		  {
+		    size += 8; /* a case of a lookupswitch */
+		    done[other] = true;
+		  }
+	      }
+	    size += direct_step_size(dtrans[col], self);
+	  }
+	if (CDTrans.F != dflt)
+	  {
+	    size += direct_step_size(dflt, self);
+	  }
+	return size;
+      }
 
-	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
-	  m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
-	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
-	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
-	  m_outstream.println("\t\t\t\t\t\tyy_mark_end();");
-	  m_outstream.println("\t\t\t\t\t}");
+  /***************************************************************
+    Function: direct_step_size
+    Description: Estimates the bytecode of emit_direct_step.
+    **************************************************************/
+  private int direct_step_size
+    (
+     int next,
+     int self
+     )
+      {
+	if (0 <= self && next == self)
+	  {
+	    return 17;
+	  }
+	if (CDTrans.F != next && remembers(next))
+	  {
+	    return 28;
+	  }
+	return (CDTrans.F != next) ? 9 : 3;
+      }
 
-	  m_outstream.println("\t\t\t\t}");	  
-	  m_outstream.println("\t\t\t}");
-	  m_outstream.println("\t\t}");
-	  m_outstream.println("\t}");
+  /***************************************************************
+    Function: own_loop
+    Description: Whether state, if its row is row (with the
+    transitions dtrans), gets a case of its own in emit_direct_code,
+    which loops on transitions to itself.
+    **************************************************************/
+  private boolean own_loop
+    (
+     int state,
+     int row,
+     boolean initial[],
+     int dtrans[]
+     )
+      {
+	return m_spec.m_row_map[state] == row
+	  && false == initial[state] && has_target(dtrans, state)
+	  && false == remembers(state);
+      }
 
-	  /*m_outstream.println("\t\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t\t");
-	  m_outstream.println("\t\t}");*/
-	}
-  
   /***************************************************************
-    Function: emit_actions
-    Description:     
+    Function: has_target
+    Description: Whether row dtrans has a transition to state, or
+    (for state -2) any transition at all.
     **************************************************************/
-  private void emit_actions 
+  private boolean has_target
     (
-     String tabs
+     int dtrans[],
+     int state
+     )
+      {
+	for (int col = 0; col < dtrans.length; ++col)
+	  {
+	    if (CDTrans.F != dtrans[col] && (-2 == state || dtrans[col] == state))
+	      {
+		return true;
+	      }
+	  }
+	return false;
+      }
+
+  /***************************************************************
+    Function: emit_direct_row
+    Description: Emits the switch on the character class of
+    yy_lookahead for one row of the DFA.  Where one next state
+    covers more classes than YY_F does, it becomes the default and
+    the YY_F classes are listed instead.  If self is a state, the
+    row is emitted inside the loop yy_loop_<self>, and transitions
+    back to self stay in it: they mark the end of the match if self
+    accepts, read the next character and go round again.
+    **************************************************************/
+  private void emit_direct_row
+    (
+     int dtrans[],
+     int self,
+     String indent
      )
       throws java.io.IOException
-	{
-	  int elem;
-	  int size;
-	  int bogus_index;
-	  CAccept accept;
-	  
-	  if (CUtility.DEBUG)
-	    {
-	      CUtility.ASSERT(m_spec.m_accept_vector.size() 
-			      == m_spec.m_anchor_array.length);
-	    }
+      {
+	int ncols = dtrans.length;
+	int dflt = direct_default(dtrans);
+
+	m_outstream.println(indent + "switch (" + cmap_lookup("yy_lookahead")
+			    + ") {");
+	boolean done[] = new boolean[ncols];
+	for (int col = 0; col < ncols; ++col)
+	  {
+	    if (done[col] || dtrans[col] == dflt)
+	      {
+		continue;
+	      }
+	    for (int other = col; other < ncols; ++other)
+	      {
+		if (dtrans[other] == dtrans[col])
+		  {
+		    m_outstream.println(indent + "case " + other + ":");
+		    done[other] = true;
+		  }
+	      }
+	    emit_direct_step(dtrans[col], self, indent + "\t");
+	  }
+	if (CDTrans.F != dflt)
+	  {
+	    m_outstream.println(indent + "default:");
+	    emit_direct_step(dflt, self, indent + "\t");
+	  }
+	m_outstream.println(indent + "}");
+      }
 
-	  bogus_index = -2;
-	  size = m_spec.m_accept_vector.size();
-	  for (elem = 0; elem < size; ++elem)
-	    {
-	      accept = (CAccept) m_spec.m_accept_vector.elementAt(elem);
-	      if (null != accept) 
-		{
-		  m_outstream.println(tabs + "case " + elem 
-					 + ":");
-		  m_outstream.print(tabs + "\t");
-		  m_outstream.print(new String(accept.m_action,0,
-						    accept.m_action_read));
-		  m_outstream.println();
-		  m_outstream.println(tabs + "case " + bogus_index + ":");
-		  m_outstream.println(tabs + "\tbreak;");
-		  --bogus_index;
-		}
-	    }
-	}
-  
   /***************************************************************
-    Function: emit_footer
-    Description:     
+    Function: direct_default
+    Description: The next state that emit_direct_row makes the
+    default of the switch for row dtrans: the most common one, if
+    it covers more classes than YY_F does, and otherwise YY_F.
     **************************************************************/
-  private void emit_footer
+  private int direct_default
+    (
+     int dtrans[]
+     )
+      {
+	int most = CDTrans.F;
+	int most_count = 0;
+	int f_count = 0;
+	java.util.HashMap<Integer,Integer> counts
+	  = new java.util.HashMap<Integer,Integer>();
+
+	for (int col = 0; col < dtrans.length; ++col)
+	  {
+	    if (CDTrans.F == dtrans[col])
+	      {
+		++f_count;
+		continue;
+	      }
+	    Integer key = Integer.valueOf(dtrans[col]);
+	    Integer count = counts.get(key);
+	    int n = (null == count) ? 1 : count.intValue() + 1;
+	    counts.put(key, Integer.valueOf(n));
+	    if (n > most_count)
+	      {
+		most = dtrans[col];
+		most_count = n;
+	      }
+	  }
+	return (most_count > f_count) ? most : CDTrans.F;
+      }
+
+  /***************************************************************
+    Function: emit_direct_step
+    Description: Emits the body of one case of emit_direct_row().
+    **************************************************************/
+  private void emit_direct_step
+    (
+     int next,
+     int self,
+     String indent
+     )
+      throws java.io.IOException
+      {
+	if (0 <= self && next == self)
+	  {
+	    if (null != m_spec.m_accept_vector.elementAt(self))
+	      {
+		m_outstream.println(indent + "yy_mark_end();");
+	      }
+	    m_outstream.println(indent + "yy_lookahead = yy_advance();");
+	    m_outstream.println(indent + "continue yy_loop_" + self + ";");
+	    return;
+	  }
+	if (CDTrans.F != next && remembers(next))
+	  {
+	    m_outstream.println(indent + "if (false == yy_has_failed(" + next + ")) {");
+	    m_outstream.println(indent + "\tyy_next_state = " + next + ";");
+	    m_outstream.println(indent + "\tyy_trail_push(" + next + ");");
+	    m_outstream.println(indent + "}");
+	  }
+	else if (CDTrans.F != next)
+	  {
+	    m_outstream.println(indent + "yy_next_state = " + next + ";");
+	  }
+	m_outstream.println(indent + "break;");
+      }
+
+  /***************************************************************
+    Function: emit_comb_table
+    Description: Emits the transition table for %compress as one
+    int array, yy_comb, in place of yy_rmap and yy_nxt.  Entry s
+    (for each DFA state s) is the base of the row of s, and the
+    entry for character class c is at base + c.  Rows are packed
+    into each other's unused entries (row displacement), each at a
+    distinct base.  An entry holds the next state above its column,
+    in the low YY_COLUMN_BITS bits, and only answers for that
+    column; as the bases are distinct, that also identifies its
+    row.  Missing transitions (YY_F) are not stored at all; an
+    unused entry is -1, whose column bits match no column.  So
+
+	c = yy_cmap[lookahead];
+	e = yy_comb[yy_comb[s] + c];
+	next = ((e & YY_COLUMN_MASK) == c) ? e >> YY_COLUMN_BITS : YY_F;
+
+    Returns false, having emitted nothing, if a state number would
+    not fit above the column bits.
+    **************************************************************/
+  private boolean emit_comb_table
+    (
+     )
+      throws java.io.IOException
+      {
+	int nstates = m_spec.m_row_map.length;
+	int nrows = m_spec.m_dtrans_vector.size();
+	int ncols = m_spec.m_dtrans_ncols;
+	int row;
+	int col;
+
+	/* enough bits that the all-ones column is no real column */
+	int bits = 1;
+	while ((1 << bits) - 1 < ncols)
+	  {
+	    ++bits;
+	  }
+	if (nrows > 0 && (nstates - 1) > (Integer.MAX_VALUE >> bits))
+	  {
+	    return false;
+	  }
+
+	/* Place the fullest rows first; they are the hardest to fit. */
+	Integer order[] = new Integer[nrows];
+	final int fill[] = new int[nrows];
+	for (row = 0; row < nrows; ++row)
+	  {
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(row)).m_dtrans;
+	    order[row] = Integer.valueOf(row);
+	    for (col = 0; col < ncols; ++col)
+	      {
+		if (CDTrans.F != dtrans[col])
+		  {
+		    ++fill[row];
+		  }
+	      }
+	  }
+	java.util.Arrays.sort(order, new java.util.Comparator<Integer>()
+	  {
+	    public int compare(Integer a, Integer b)
+	      {
+		return fill[b.intValue()] - fill[a.intValue()];
+	      }
+	  });
+
+	/* First fit: row r goes at the lowest offset where its stored
+	   entries are all free and no other row starts. */
+	int offset[] = new int[nrows];
+	java.util.BitSet used = new java.util.BitSet();
+	java.util.BitSet starts = new java.util.BitSet();
+	int nentries = 0;
+	for (int k = 0; k < nrows; ++k)
+	  {
+	    row = order[k].intValue();
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(row)).m_dtrans;
+	    int at = 0;
+	    for (;; ++at)
+	      {
+		if (starts.get(at))
+		  {
+		    continue;
+		  }
+		for (col = 0; col < ncols; ++col)
+		  {
+		    if (CDTrans.F != dtrans[col] && used.get(at + col))
+		      {
+			break;
+		      }
+		  }
+		if (col == ncols)
+		  {
+		    break;
+		  }
+	      }
+	    offset[row] = at;
+	    starts.set(at);
+	    for (col = 0; col < ncols; ++col)
+	      {
+		if (CDTrans.F != dtrans[col])
+		  {
+		    used.set(at + col);
+		  }
+	      }
+	    nentries = Math.max(nentries, at + ncols);
+	  }
+
+	int comb[] = new int[nstates + nentries];
+	java.util.Arrays.fill(comb, nstates, comb.length, -1);
+	for (int state = 0; state < nstates; ++state)
+	  {
+	    comb[state] = nstates + offset[m_spec.m_row_map[state]];
+	  }
+	for (row = 0; row < nrows; ++row)
+	  {
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(row)).m_dtrans;
+	    int base = nstates + offset[row];
+	    for (col = 0; col < ncols; ++col)
+	      {
+		if (CDTrans.F != dtrans[col])
+		  {
+		    comb[base + col] = (dtrans[col] << bits) | col;
+		  }
+	      }
+	  }
+
+	if (m_spec.m_verbose)
+	  {
+	    System.out.println("Compressed transition table: " + comb.length
+			       + " ints (" + (nrows * ncols + nstates)
+			       + " uncompressed).");
+	  }
+
+	m_outstream.println("\tprivate static final int YY_COLUMN_BITS = " + bits + ";");
+	m_outstream.println("\tprivate static final int YY_COLUMN_MASK = "
+			    + ((1 << bits) - 1) + ";");
+	m_outstream.println("\tprivate static final int yy_comb[] = yy_unpack(new String[] {");
+	emit_packed_ints(comb);
+	m_outstream.println("\t\t}, " + comb.length + ");");
+	m_outstream.println();
+	emit_unpack();
+	return true;
+      }
+
+  /***************************************************************
+    Function: emit_flat_table
+    Description: Emits the transition table for %flat as one int
+    array, yy_flat, in place of yy_rmap and yy_nxt: the row of each
+    DFA state in turn, whether or not another state has the same
+    row, so that the next state is one load away,
+
+	next = yy_flat[s * YY_CLASSES + yy_cmap[lookahead]];
+
+    and the rows of states numbered together (the hot states, after
+    -profile) are together in memory.
+    **************************************************************/
+  private void emit_flat_table
+    (
+     )
+      throws java.io.IOException
+      {
+	int nstates = m_spec.m_row_map.length;
+	int ncols = m_spec.m_dtrans_ncols;
+	int flat[] = new int[nstates * ncols];
+
+	for (int state = 0; state < nstates; ++state)
+	  {
+	    int dtrans[] = ((CDTrans) m_spec.m_dtrans_vector.elementAt(
+		m_spec.m_row_map[state])).m_dtrans;
+	    System.arraycopy(dtrans, 0, flat, state * ncols, ncols);
+	  }
+
+	m_outstream.println("\tprivate static final int YY_CLASSES = " + ncols + ";");
+	m_outstream.println("\tprivate static final int yy_flat[] = yy_unpack(new String[] {");
+	emit_packed_ints(flat);
+	m_outstream.println("\t\t}, " + flat.length + ");");
+	m_outstream.println();
+	emit_unpack();
+      }
+
+  /***************************************************************
+    Function: emit_unpack
+    Description: Emits yy_unpack(), which decodes the strings of
+    emit_packed_ints.
+    **************************************************************/
+  private void emit_unpack
+    (
+     )
+      throws java.io.IOException
+      {
+	/* Function: yy_unpack */
+	m_outstream.println("\tprivate static int[] yy_unpack (String parts[], int size) {");
+	m_outstream.println("\t\tint res[] = new int[size];");
+	m_outstream.println("\t\tint n = 0;");
+	m_outstream.println("\t\tfor (int p = 0; p < parts.length; ++p) {");
+	m_outstream.println("\t\t\tString st = parts[p];");
+	m_outstream.println("\t\t\tfor (int i = 0; i < st.length(); ++i) {");
+	m_outstream.println("\t\t\t\tint c = st.charAt(i);");
+	m_outstream.println("\t\t\t\tif (c >= 0x8000) {");
+	m_outstream.println("\t\t\t\t\tc = ((c & 0x7fff) << 16) | st.charAt(++i);");
+	m_outstream.println("\t\t\t\t}");
+	m_outstream.println("\t\t\t\tres[n++] = c - 1;");
+	m_outstream.println("\t\t\t}");
+	m_outstream.println("\t\t}");
+	m_outstream.println("\t\treturn res;");
+	m_outstream.println("\t}");
+      }
+
+  /***************************************************************
+    Function: emit_packed_ints
+    Description: Emits the elements of a String[] that yy_unpack()
+    decodes back to values.  Each value v (>= -1) is stored as v+1,
+    in one char if that is below 0x8000 and otherwise in two, high
+    half (with bit 15 set) first.  The elements are kept well under
+    the class file limit of 65535 bytes per string constant, and a
+    value is never split between two of them.
+    **************************************************************/
+  private void emit_packed_ints
+    (
+     int values[]
+     )
+      throws java.io.IOException
+      {
+	final int PART_CHARS = 16000; // at most 3 bytes each in a class file
+	StringBuffer line = new StringBuffer();
+	int part = 0;
+
+	count_table(values.length);
+
+	m_outstream.print("\t\t\"");
+	for (int i = 0; i < values.length; ++i)
+	  {
+	    int v = values[i] + 1;
+	    if (part >= PART_CHARS - 1)
+	      {
+		m_outstream.println(line + "\",");
+		m_outstream.print("\t\t\"");
+		line.setLength(0);
+		part = 0;
+	      }
+	    if (v < 0x8000)
+	      {
+		append_packed_char(line, (char) v);
+		++part;
+	      }
+	    else
+	      {
+		append_packed_char(line, (char) (0x8000 | (v >>> 16)));
+		append_packed_char(line, (char) (v & 0xffff));
+		part += 2;
+	      }
+	    if (line.length() > 70)
+	      {
+		m_outstream.println(line + "\" +");
+		m_outstream.print("\t\t\"");
+		line.setLength(0);
+	      }
+	  }
+	m_outstream.println(line + "\"");
+      }
+
+  /***************************************************************
+    Function: append_packed_char
+    Description: Appends c to a Java string literal.  Octal escapes
+    are used below 0x100, since a \\u escape of a line terminator,
+    quote or backslash would end or break the literal.
+    **************************************************************/
+  private void append_packed_char
+    (
+     StringBuffer line,
+     char c
+     )
+      {
+	if (c >= 0x20 && c < 0x7f && '"' != c && '\\' != c)
+	  {
+	    line.append(c);
+	  }
+	else if (c < 0x100)
+	  {
+	    line.append('\\');
+	    line.append((char) ('0' + ((c >> 6) & 7)));
+	    line.append((char) ('0' + ((c >> 3) & 7)));
+	    line.append((char) ('0' + (c & 7)));
+	  }
+	else
+	  {
+	    String hex = Integer.toHexString(c);
+	    line.append("\\u");
+	    for (int k = hex.length(); k < 4; ++k)
+	      {
+		line.append('0');
+	      }
+	    line.append(hex);
+	  }
+      }
+
+  /***************************************************************
+    Function: emit_driver
+    Description: Output an integer table as a string.  Written by
+    Raimondas Lencevicius 6/24/98; reorganized by CSA 9-Aug-1999.
+    From his original comments:
+	   yy_nxt[][] values are coded into a string
+	   by printing integers and representing
+	   integer sequences as "value:length" pairs.
+    **************************************************************/
+  private void emit_table_as_string(int[][] ia) {
+	int sequenceLength = 0; // RL - length of the number sequence
+	boolean sequenceStarted = false; // RL - has number sequence started?
+	int previousInt = -20; // RL - Bogus -20 state.
+	
+	count_table(ia.length * (ia.length > 0 ? ia[0].length : 0));
+
+	// RL - Output matrix size
+	m_outstream.print(ia.length);
+	m_outstream.print(",");
+	m_outstream.print(ia.length>0?ia[0].length:0);
+	m_outstream.println(",");
+
+	StringBuffer outstr = new StringBuffer();
+
+	//  RL - Output matrix 
+	for (int elem = 0; elem < ia.length; ++elem)
+	  {
+	    for (int i = 0; i < ia[elem].length; ++i)
+	      {
+		int writeInt = ia[elem][i];
+		if (writeInt == previousInt) // RL - sequence?
+		  {
+		    if (sequenceStarted)
+		      {
+			sequenceLength++;
+		      }
+		    else
+		      {
+			outstr.append(writeInt);
+			outstr.append(":");
+			sequenceLength = 2;
+			sequenceStarted = true;
+		      }
+		  }
+		else // RL - no sequence or end sequence
+		  {
+		    if (sequenceStarted)
+		      {
+			outstr.append(sequenceLength);
+			outstr.append(",");
+			sequenceLength = 0;
+			sequenceStarted = false;
+		      }
+		    else
+		      {
+			if (previousInt != -20)
+			  {
+			    outstr.append(previousInt);
+			    outstr.append(",");
+			  }
+		      }
+		  }
+		previousInt = writeInt;
+		// CSA: output in 75 character chunks.
+		if (outstr.length() > 75) {
+		  String s = outstr.toString();
+		  m_outstream.println("\""+s.substring(0,75)+"\" +");
+		  outstr = new StringBuffer(s.substring(75));
+		}
+	      }
+	  }
+	if (sequenceStarted)
+	  {
+	    outstr.append(sequenceLength);
+	  }
+	else
+	  {
+	    outstr.append(previousInt);
+	  }    
+	// CSA: output in 75 character chunks.
+	if (outstr.length() > 75) {
+	  String s = outstr.toString();
+	  m_outstream.println("\""+s.substring(0,75)+"\" +");
+	  outstr = new StringBuffer(s.substring(75));
+	}
+	m_outstream.print("\""+outstr+"\"");
+  }
+
+  /***************************************************************
+    Function: emit_driver
+    Description: 
+    **************************************************************/
+  private void emit_driver
+    (
+     )
+      throws java.io.IOException
+	{
+	  if (CUtility.DEBUG)
+	    {
+	      CUtility.ASSERT(null != m_spec);
+	      CUtility.ASSERT(null != m_outstream);
+	    }
+	  
+	  emit_table();
+
+	  if (m_spec.m_integer_type)
+	    {
+	      m_outstream.print("\tpublic int ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+	  else if (m_spec.m_intwrap_type)
+	    {
+	      m_outstream.print("\tpublic java.lang.Integer ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+	  else
+	    {
+	      m_outstream.print("\tpublic ");
+	      m_outstream.print(new String(m_spec.m_type_name));
+	      m_outstream.print(" ");
+	      m_outstream.print(new String(m_spec.m_function_name));
+	      m_outstream.println(" ()");
+	    }
+
+	  /*m_outstream.println("\t\tthrows java.io.IOException {");*/
+	  m_outstream.print("\t\tthrows java.io.IOException");
+	  if (null != m_spec.m_yylex_throw_code)
+	    {
+	      m_outstream.print(", "); 
+	      m_outstream.print(new String(m_spec.m_yylex_throw_code,0,
+						m_spec.m_yylex_throw_read));
+	      m_outstream.println();
+	      m_outstream.println("\t\t{");
+	    }
+	  else
+	    {
+	      m_outstream.println(" {");
+	    }
+
+	  m_outstream.println("\t\tint yy_lookahead;");
+	  m_outstream.println("\t\tint yy_anchor = YY_NO_ANCHOR;");
+	  /*m_outstream.println("\t\tint yy_state "
+	    + "= yy_initial_dtrans(yy_lexical_state);");*/
+	  m_outstream.println("\t\tint yy_state " 
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\tint yy_next_state = YY_NO_STATE;");
+	  if (m_spec.m_compress && false == m_spec.m_directcode
+	      && false == m_spec.m_flat)
+	    {
+	      m_outstream.println("\t\tint yy_column;");
+	      m_outstream.println("\t\tint yy_cell;");
+	    }
+	  /*m_outstream.println("\t\tint yy_prev_stave = YY_NO_STATE;");*/
+	  m_outstream.println("\t\tint yy_last_accept_state = YY_NO_STATE;");
+    	  m_outstream.println("\t\tboolean yy_initial = true;");
+	  m_outstream.println("\t\tint yy_this_accept;");
+	  m_outstream.println();
+
+	  if (null != m_spec.m_skip_code)
+	    {
+	      m_outstream.println("\t\tyy_skip();");
+	    }
+	  m_outstream.println("\t\tyy_mark_start();");
+	  /*m_outstream.println("\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\tyy_mark_end();");
+	  m_outstream.println("\t\t}");
+
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("\t\tjava.lang.System.out.println(\"Begin\");");
+	    }
+
+	  m_outstream.println("\t\twhile (true) {");
+
+	  m_outstream.println("\t\t\tif (yy_initial && yy_at_bol) "+
+			                 "yy_lookahead = YY_BOL;");
+	  m_outstream.println("\t\t\telse yy_lookahead = yy_advance();");
+	  m_outstream.println("\t\t\tyy_next_state = YY_F;");
+	  /*m_outstream.println("\t\t\t\tyy_next_state = "
+				 + "yy_next(yy_state,yy_lookahead);");*/
+	  if (m_spec.m_directcode)
+	    {
+	      emit_direct_code();
+	    }
+	  else if (m_spec.m_flat)
+	    {
+	      m_outstream.println("\t\t\tyy_next_state = "
+			      + "yy_flat[yy_state * YY_CLASSES + "
+			      + cmap_lookup("yy_lookahead") + "];");
+	    }
+	  else if (m_spec.m_compress)
+	    {
+	      m_outstream.println("\t\t\tyy_column = "
+			      + cmap_lookup("yy_lookahead") + ";");
+	      m_outstream.println("\t\t\tyy_cell = yy_comb[yy_comb[yy_state] + yy_column];");
+	      m_outstream.println("\t\t\tif ((yy_cell & YY_COLUMN_MASK) == yy_column) {");
+	      m_outstream.println("\t\t\t\tyy_next_state = yy_cell >> YY_COLUMN_BITS;");
+	      m_outstream.println("\t\t\t}");
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\t\tyy_next_state = "
+ 	       + "yy_nxt[yy_rmap[yy_state]]["
+			      + cmap_lookup("yy_lookahead") + "];");
+	    }
+	  if (linear() && false == m_spec.m_directcode)
+	    {
+	      m_outstream.println("\t\t\tif (YY_F != yy_next_state && 0 != yy_memo[yy_next_state]) {");
+	      m_outstream.println("\t\t\t\tif (yy_has_failed(yy_next_state)) {");
+	      m_outstream.println("\t\t\t\t\tyy_next_state = YY_F;");
+	      m_outstream.println("\t\t\t\t}");
+	      m_outstream.println("\t\t\t\telse {");
+	      m_outstream.println("\t\t\t\t\tyy_trail_push(yy_next_state);");
+	      m_outstream.println("\t\t\t\t}");
+	      m_outstream.println("\t\t\t}");
+	    }
+
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("java.lang.System.out.println(\"Current state: \"" 
+				     + " + yy_state");
+	      m_outstream.println("+ \"\tCurrent input: \""); 
+	      m_outstream.println(" + ((char) yy_lookahead));");
+	    }
+	  if (NOT_EDBG)
+	    {
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"State = \"" 
+				     + "+ yy_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Accepting status = \"" 
+				     + "+ yy_this_accept);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Last accepting state = \"" 
+				     + "+ yy_last_accept_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Next state = \"" 
+				     + "+ yy_next_state);");
+	      m_outstream.println("\t\t\tjava.lang.System.out.println(\"Lookahead input = \"" 
+				     + "+ ((char) yy_lookahead));");
+	    }
+
+	  // handle bare EOF.
+	  m_outstream.println("\t\t\tif (YY_EOF == yy_lookahead " 
+				 + "&& true == yy_initial) {");
+	  if (null != m_spec.m_eof_code)
+	    {
+	      m_outstream.println("\t\t\t\tyy_do_eof();");
+	    }
+	  if (true == m_spec.m_integer_type)
+	    {
+	      m_outstream.println("\t\t\t\treturn YYEOF;");
+	    }
+	  else if (null != m_spec.m_eof_value_code) 
+	    {
+	      m_outstream.print(new String(m_spec.m_eof_value_code,0,
+						m_spec.m_eof_value_read));
+	    }
+	  else
+	    {
+	      m_outstream.println("\t\t\t\treturn null;");
+	    }
+	  m_outstream.println("\t\t\t}");
+
+	  m_outstream.println("\t\t\tif (YY_F != yy_next_state) {");
+	  m_outstream.println("\t\t\t\tyy_state = yy_next_state;");
+     	  m_outstream.println("\t\t\t\tyy_initial = false;");
+     	  /*m_outstream.println("\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\tyy_mark_end();");
+	  if (linear())
+	    {
+	      m_outstream.println("\t\t\t\t\tyy_trail_count = 0;");
+	    }
+	  m_outstream.println("\t\t\t\t}");
+	  /*m_outstream.println("\t\t\t\tyy_prev_state = yy_state;");*/
+	  /*m_outstream.println("\t\t\t\tyy_state = yy_next_state;");*/
+	  m_outstream.println("\t\t\t}");
+
+	  m_outstream.println("\t\t\telse {");
+	  if (linear())
+	    {
+	      m_outstream.println("\t\t\t\tyy_fail();");
+	    }
+	  
+	  m_outstream.println("\t\t\t\tif (YY_NO_STATE == yy_last_accept_state) {");
+	  
+
+	  /*m_outstream.println("\t\t\t\t\tyy_error(YY_E_MATCH,false);");
+    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
+	  m_outstream.println("\t\t\t\t\tyy_state "
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+	  m_outstream.println("\t\t\t\t\tyy_mark_start();");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\t}");*/
+
+	  m_outstream.println("\t\t\t\t\tthrow (new Error(\"Lexical Error: Unmatched Input.\"));");
+	  m_outstream.println("\t\t\t\t}");
+
+	  m_outstream.println("\t\t\t\telse {");
+
+	  m_outstream.println("\t\t\t\t\tyy_anchor = yy_acpt[yy_last_accept_state];");
+	  /*m_outstream.println("\t\t\t\t\tyy_anchor " 
+	    + "= yy_accept(yy_last_accept_state);");*/
+	  m_outstream.println("\t\t\t\t\tif (0 != (YY_END & yy_anchor)) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_move_end();");
+	  m_outstream.println("\t\t\t\t\t}");
+	  m_outstream.println("\t\t\t\t\tyy_to_mark();");
+
+	  m_outstream.println("\t\t\t\t\tswitch (yy_last_accept_state) {");
+
+	  emit_actions("\t\t\t\t\t");
+
+	  m_outstream.println("\t\t\t\t\tdefault:");
+	  m_outstream.println("\t\t\t\t\t\tyy_error(YY_E_INTERNAL,false);");
+	  /*m_outstream.println("\t\t\t\t\t\treturn null;");*/
+	  m_outstream.println("\t\t\t\t\tcase -1:");
+	  m_outstream.println("\t\t\t\t\t}");
+	  
+    	  m_outstream.println("\t\t\t\t\tyy_initial = true;");
+	  m_outstream.println("\t\t\t\t\tyy_state "
+				 + "= yy_state_dtrans[yy_lexical_state];");
+	  m_outstream.println("\t\t\t\t\tyy_next_state = YY_NO_STATE;");
+	  /*m_outstream.println("\t\t\t\t\tyy_prev_state = YY_NO_STATE;");*/
+	  m_outstream.println("\t\t\t\t\tyy_last_accept_state = YY_NO_STATE;");
+
+	  if (null != m_spec.m_skip_code)
+	    {
+	      m_outstream.println("\t\t\t\t\tyy_skip();");
+	    }
+	  m_outstream.println("\t\t\t\t\tyy_mark_start();");
+
+	  /*m_outstream.println("\t\t\t\t\tyy_this_accept = yy_accept(yy_state);");*/
+	  m_outstream.println("\t\t\t\t\tyy_this_accept = yy_acpt[yy_state];");
+	  m_outstream.println("\t\t\t\t\tif (YY_NOT_ACCEPT != yy_this_accept) {");
+	  m_outstream.println("\t\t\t\t\t\tyy_last_accept_state = yy_state;");
+	  m_outstream.println("\t\t\t\t\t\tyy_mark_end();");
+	  m_outstream.println("\t\t\t\t\t}");
+
+	  m_outstream.println("\t\t\t\t}");	  
+	  m_outstream.println("\t\t\t}");
+	  m_outstream.println("\t\t}");
+	  m_outstream.println("\t}");
+
+	  /*m_outstream.println("\t\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t\t");
+	  m_outstream.println("\t\t}");*/
+	}
+  
+  /***************************************************************
+    Function: emit_actions
+    Description:     
+    **************************************************************/
+  private void emit_actions 
+    (
+     String tabs
+     )
+      throws java.io.IOException
+	{
+	  int elem;
+	  int size;
+	  int bogus_index;
+	  CAccept accept;
+	  
+	  if (CUtility.DEBUG)
+	    {
+	      CUtility.ASSERT(m_spec.m_accept_vector.size() 
+			      == m_spec.m_anchor_array.length);
+	    }
+
+	  bogus_index = -2;
+	  size = m_spec.m_accept_vector.size();
+	  for (elem = 0; elem < size; ++elem)
+	    {
+	      accept = (CAccept) m_spec.m_accept_vector.elementAt(elem);
+	      if (null != accept) 
+		{
+		  m_outstream.println(tabs + "case " + elem 
+					 + ":");
+		  if (m_spec.m_count_lines && lazy_lines()
+		      && mentions_yyline(accept.m_action,accept.m_action_read))
+		    {
+		      m_outstream.println(tabs + "\tyy_count_lines(yy_buffer_start);");
+		    }
+		  m_outstream.print(tabs + "\t");
+		  m_outstream.print(new String(accept.m_action,0,
+						    accept.m_action_read));
+		  m_outstream.println();
+		  m_outstream.println(tabs + "case " + bogus_index + ":");
+		  m_outstream.println(tabs + "\tbreak;");
+		  --bogus_index;
+		}
+	    }
+	}
+  
+  /***************************************************************
+    Function: emit_footer
+    Description:     
+    **************************************************************/
+  private void emit_footer
+    (
+     )
+      throws java.io.IOException
+      {
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != m_spec);
+	    CUtility.ASSERT(null != m_outstream);
+	  }
+
+	m_outstream.println("}");
+      }
+}
+
+/***************************************************************
+  Class: CMakeNfa
+  **************************************************************/
+class CMakeNfa
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  private CSpec m_spec;
+  private CLexGen m_lexGen;
+  private CInput m_input;
+
+  /***************************************************************
+    Function: CMakeNfa
+    Description: Constructor.
+    **************************************************************/
+  CMakeNfa
+    (
+     )
+      {
+	reset();
+      }
+
+  /***************************************************************
+    Function: reset
+    Description: Resets CMakeNfa member variables.
+    **************************************************************/
+  private void reset
+    (
+     )
+      {
+	m_input = null;
+	m_lexGen = null;
+	m_spec = null;
+      }
+
+  /***************************************************************
+    Function: set
+    Description: Sets CMakeNfa member variables.
+    **************************************************************/
+  private void set
+    (
+     CLexGen lexGen,
+     CSpec spec,
+     CInput input
+     )
+      {
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != input);
+	    CUtility.ASSERT(null != lexGen);
+	    CUtility.ASSERT(null != spec);
+	  }
+
+	m_input = input;
+	m_lexGen = lexGen;
+	m_spec = spec;
+      }
+
+  /***************************************************************
+    Function: allocate_BOL_EOF
+    Description: Expands character class to include special BOL and
+    EOF characters.  Puts numeric index of these characters in
+    input CSpec.
+    **************************************************************/
+  void allocate_BOL_EOF
+    (
+     CSpec spec
+     )
+	{
+	  CUtility.ASSERT(CSpec.NUM_PSEUDO==2);
+	  spec.BOL = spec.m_dtrans_ncols++;
+	  spec.EOF = spec.m_dtrans_ncols++;
+	}
+
+  /***************************************************************
+    Function: thompson
+    Description: High level access function to module.
+    Deposits result in input CSpec.
+    **************************************************************/
+  void thompson
+    (
+     CLexGen lexGen,
+     CSpec spec,
+     CInput input
+     )
+      throws java.io.IOException      
+	{
+	  int i;
+	  CNfa elem;
+	  int size;
+
+	  /* Set member variables. */
+	  reset();
+	  set(lexGen,spec,input);
+
+	  size = m_spec.m_states.size();
+	  m_spec.m_state_rules = new Vector[size];
+	  for (i = 0; i < size; ++i)
+	    {
+	      m_spec.m_state_rules[i] = new Vector();
+	    }
+
+	  /* Initialize current token variable 
+	     and create nfa. */
+	  /*m_spec.m_current_token = m_lexGen.EOS;
+	  m_lexGen.advance();*/
+
+	  m_spec.m_nfa_start = machine();
+	  
+	  /* Set labels in created nfa machine. */
+	  size = m_spec.m_nfa_states.size();
+	  for (i = 0; i < size; ++i)
+	    {
+	      elem = (CNfa) m_spec.m_nfa_states.elementAt(i);
+	      elem.m_label = i;
+	    }
+
+	  /* Debugging output. */
+	  if (CUtility.DO_DEBUG)
+	    {
+	      m_lexGen.print_nfa();
+	    }
+
+	  if (m_spec.m_verbose)
+	    {
+	      System.out.println("NFA comprised of " 
+				 + (m_spec.m_nfa_states.size() + 1) 
+				 + " states.");
+	    }
+
+	  reset();
+	}
+     
+  /***************************************************************
+    Function: discardCNfa
+    Description: 
+    **************************************************************/
+  private void discardCNfa
+    (
+     CNfa nfa
+     )
+      {
+	m_spec.m_nfa_states.removeElement(nfa);
+      }
+
+  /***************************************************************
+    Function: processStates
+    Description:
+    **************************************************************/
+  private void processStates
+    (
+     SparseBitSet states,
+     CNfa current
+     )
+      {
+	int size;
+	int i;
+	
+	size = m_spec.m_states.size();
+	for (i = 0; i <  size; ++i)
+	  {
+	    if (states.get(i))
+	      {
+		m_spec.m_state_rules[i].addElement(current);
+	      }
+	  }
+      }
+
+  /***************************************************************
+    Function: machine
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private CNfa machine
+    (
+     )
+      throws java.io.IOException 
+      {
+	CNfa start;
+	CNfa p;
+	SparseBitSet states;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	start = CAlloc.newCNfa(m_spec);
+	p = start;
+	    
+	states = m_lexGen.getStates();
+
+	/* Begin: Added for states. */
+	m_spec.m_current_token = m_lexGen.EOS;
+	m_lexGen.advance();
+	/* End: Added for states. */
+	
+	if (m_lexGen.END_OF_INPUT != m_spec.m_current_token) // CSA fix.
+	  {
+	    p.m_next = rule();
+	    
+	    processStates(states,p.m_next);
+	  }
+
+	while (m_lexGen.END_OF_INPUT != m_spec.m_current_token)
+	  {
+	    /* Make state changes HERE. */
+	    states = m_lexGen.getStates();
+	
+	    /* Begin: Added for states. */
+	    m_lexGen.advance();
+	    if (m_lexGen.END_OF_INPUT == m_spec.m_current_token)
+	      { 
+		break;
+	      }
+	    /* End: Added for states. */
+	    
+	    p.m_next2 = CAlloc.newCNfa(m_spec);
+	    p = p.m_next2;
+	    p.m_next = rule();
+	    
+	    processStates(states,p.m_next);
+	  }
+
+	// CSA: add pseudo-rules for BOL and EOF
+	SparseBitSet all_states = new SparseBitSet();
+	for (int i = 0; i < m_spec.m_states.size(); ++i)
+		all_states.set(i);
+	p.m_next2 = CAlloc.newCNfa(m_spec);
+	p = p.m_next2;
+	p.m_next = CAlloc.newCNfa(m_spec);
+	p.m_next.m_edge = CNfa.CCL;
+	p.m_next.m_next = CAlloc.newCNfa(m_spec);
+	p.m_next.m_set = new CSet();
+	p.m_next.m_set.add(m_spec.BOL);
+	p.m_next.m_set.add(m_spec.EOF);
+	p.m_next.m_next.m_accept = // do-nothing accept rule
+	    new CAccept(new char[0], 0, m_input.m_line_number+1);
+	processStates(all_states,p.m_next);
+	// CSA: done. 
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	return start;
+      }
+  
+  /***************************************************************
+    Function: rule
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private CNfa rule
+    (
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair pair; 
+	CNfa p;
+	CNfa start = null;
+	CNfa end = null;
+	int anchor = CSpec.NONE;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	pair = CAlloc.newCNfaPair();
+
+	if (m_lexGen.AT_BOL == m_spec.m_current_token)
+	  {
+	    anchor = anchor | CSpec.START;
+	    m_lexGen.advance();
+	    expr(pair);
+
+	    // CSA: fixed beginning-of-line operator. 8-aug-1999
+	    start = CAlloc.newCNfa(m_spec);
+	    start.m_edge = m_spec.BOL;
+	    start.m_next = pair.m_start;
+	    end = pair.m_end;
+	  }
+	else
+	  {
+	    expr(pair);
+	    start = pair.m_start;
+	    end = pair.m_end;
+	  }
+
+	if (m_lexGen.AT_EOL == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    // CSA: fixed end-of-line operator. 8-aug-1999
+	    CNfaPair nlpair = CAlloc.newNLPair(m_spec);
+	    end.m_next = CAlloc.newCNfa(m_spec);
+	    end.m_next.m_next = nlpair.m_start;
+	    end.m_next.m_next2 = CAlloc.newCNfa(m_spec);
+	    end.m_next.m_next2.m_edge = m_spec.EOF;
+	    end.m_next.m_next2.m_next = nlpair.m_end;
+	    end = nlpair.m_end;
+	    anchor = anchor | CSpec.END;
+	  }
+
+	/* Check for null rules. Charles Fischer found this bug. [CSA] */
+	if (end==null)
+	    CError.parse_error(CError.E_ZERO, m_input.m_line_number);
+
+	/* Handle end of regular expression.  See page 103. */
+	end.m_accept = m_lexGen.packAccept();
+	end.m_anchor = anchor;
+
+	/* Begin: Removed for states. */
+	/*m_lexGen.advance();*/
+	/* End: Removed for states. */
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	return start;
+      }
+	    
+  /***************************************************************
+    Function: expr
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void expr
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair e2_pair;
+	CNfa p;
+	
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != pair);
+	  }
+
+	e2_pair = CAlloc.newCNfaPair();
+
+	cat_expr(pair);
+	
+	while (m_lexGen.OR == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    cat_expr(e2_pair);
+
+	    p = CAlloc.newCNfa(m_spec);
+	    p.m_next2 = e2_pair.m_start;
+	    p.m_next = pair.m_start;
+	    pair.m_start = p;
+	    
+	    p = CAlloc.newCNfa(m_spec);
+	    pair.m_end.m_next = p;
+	    e2_pair.m_end.m_next = p;
+	    pair.m_end = p;
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+	    
+  /***************************************************************
+    Function: cat_expr
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void cat_expr
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfaPair e2_pair;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != pair);
+	  }
+	
+	e2_pair = CAlloc.newCNfaPair();
+	
+	if (first_in_cat(m_spec.m_current_token))
+	  {
+	    factor(pair);
+	  }
+
+	while (first_in_cat(m_spec.m_current_token))
+	  {
+	    factor(e2_pair);
+
+	    /* Destroy */
+	    pair.m_end.mimic(e2_pair.m_start);
+	    discardCNfa(e2_pair.m_start);
+	    
+	    pair.m_end = e2_pair.m_end;
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+  
+  /***************************************************************
+    Function: first_in_cat
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private boolean first_in_cat
+    (
+     int token
+     )
+      {
+	switch (token)
+	  {
+	  case CLexGen.CLOSE_PAREN:
+	  case CLexGen.AT_EOL:
+	  case CLexGen.OR:
+	  case CLexGen.EOS:
+	    return false;
+	    
+	  case CLexGen.CLOSURE:
+	  case CLexGen.PLUS_CLOSE:
+	  case CLexGen.OPTIONAL:
+	    CError.parse_error(CError.E_CLOSE,m_input.m_line_number);
+	    return false;
+
+	  case CLexGen.CCL_END:
+	    CError.parse_error(CError.E_BRACKET,m_input.m_line_number);
+	    return false;
+
+	  case CLexGen.AT_BOL:
+	    CError.parse_error(CError.E_BOL,m_input.m_line_number);
+	    return false;
+
+	  default:
+	    break;
+	  }
+
+	return true;
+      }
+
+  /***************************************************************
+    Function: factor
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void factor
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfa start = null;
+	CNfa end = null;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("factor",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	term(pair);
+
+	if (m_lexGen.CLOSURE == m_spec.m_current_token
+	    || m_lexGen.PLUS_CLOSE == m_spec.m_current_token
+	    || m_lexGen.OPTIONAL == m_spec.m_current_token)
+	  {
+	    start = CAlloc.newCNfa(m_spec);
+	    end = CAlloc.newCNfa(m_spec);
+	    
+	    start.m_next = pair.m_start;
+	    pair.m_end.m_next = end;
+
+	    if (m_lexGen.CLOSURE == m_spec.m_current_token
+		|| m_lexGen.OPTIONAL == m_spec.m_current_token)
+	      {
+		start.m_next2 = end;
+	      }
+	    
+	    if (m_lexGen.CLOSURE == m_spec.m_current_token
+		|| m_lexGen.PLUS_CLOSE == m_spec.m_current_token)
+	      {
+		pair.m_end.m_next2 = pair.m_start;
+	      }
+	    
+	    pair.m_start = start;
+	    pair.m_end = end;
+	    m_lexGen.advance();
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("factor",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+      
+  /***************************************************************
+    Function: term
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void term
+    (
+     CNfaPair pair
+     )
+      throws java.io.IOException 
+      {
+	CNfa start;
+	boolean isAlphaL;
+	int c;
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.enter("term",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+
+	if (m_lexGen.OPEN_PAREN == m_spec.m_current_token)
+	  {
+	    m_lexGen.advance();
+	    expr(pair);
+
+	    if (m_lexGen.CLOSE_PAREN == m_spec.m_current_token)
+	      {
+		m_lexGen.advance();
+	      }
+	    else
+	      {
+		CError.parse_error(CError.E_SYNTAX,m_input.m_line_number);
+	      }
+	  }
+	else
+	  {
+	    start = CAlloc.newCNfa(m_spec);
+	    pair.m_start = start;
+
+	    start.m_next = CAlloc.newCNfa(m_spec);
+	    pair.m_end = start.m_next;
+
+	    if (m_lexGen.L == m_spec.m_current_token &&
+		Character.isLetter(m_spec.m_lexeme)) 
+	      {
+		isAlphaL = true;
+	      } 
+	    else 
+	      {
+		isAlphaL = false;
+	      }
+	    if (false == (m_lexGen.ANY == m_spec.m_current_token
+			  || m_lexGen.CCL_START == m_spec.m_current_token
+			  || (m_spec.m_ignorecase && isAlphaL)))
+	      {
+		start.m_edge = m_spec.m_lexeme;
+		m_lexGen.advance();
+	      }
+	    else
+	      {
+		start.m_edge = CNfa.CCL;
+		
+		start.m_set = new CSet();
+
+		/* Match case-insensitive letters using character class. */
+		if (m_spec.m_ignorecase && isAlphaL) 
+		  {
+		    start.m_set.addncase(m_spec.m_lexeme);
+		  }
+		/* Match dot (.) using character class. */
+		else if (m_lexGen.ANY == m_spec.m_current_token)
+		  {
+		    start.m_set.add('\n');
+		    start.m_set.add('\r');
+		    // CSA: exclude BOL and EOF from character classes
+		    start.m_set.add(m_spec.BOL);
+		    start.m_set.add(m_spec.EOF);
+		    start.m_set.complement();
+		  }
+		else
+		  {
+		    m_lexGen.advance();
+		    if (m_lexGen.AT_BOL == m_spec.m_current_token)
+		      {
+			m_lexGen.advance();
+
+			// CSA: exclude BOL and EOF from character classes
+			start.m_set.add(m_spec.BOL);
+			start.m_set.add(m_spec.EOF);
+			start.m_set.complement();
+		      }
+		    if (false == (m_lexGen.CCL_END == m_spec.m_current_token))
+		      {
+			dodash(start.m_set);
+		      }
+		    /*else
+		      {
+			for (c = 0; c <= ' '; ++c)
+			  {
+			    start.m_set.add((byte) c);
+			  }
+		      }*/
+		  }
+		m_lexGen.advance();
+	      }
+	  }
+
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("term",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+
+  /***************************************************************
+    Function: dodash
+    Description: Recursive descent regular expression parser.
+    **************************************************************/
+  private void dodash
+    (
+     CSet set
+     )
+      throws java.io.IOException 
+	{
+	  int first = -1;
+	  
+	  if (CUtility.DESCENT_DEBUG)
+	    {
+	      CUtility.enter("dodash",m_spec.m_lexeme,m_spec.m_current_token);
+	    }
+	  
+	  while (m_lexGen.EOS != m_spec.m_current_token 
+		 && m_lexGen.CCL_END != m_spec.m_current_token)
+	    {
+	      // DASH loses its special meaning if it is first in class.
+	      if (m_lexGen.DASH == m_spec.m_current_token && -1 != first)
+		{
+		  m_lexGen.advance();
+		  // DASH loses its special meaning if it is last in class.
+		  if (m_spec.m_current_token == m_lexGen.CCL_END)
+		    {
+		      // 'first' already in set.
+		      set.add('-');
+		      break;
+		    }
+		  for ( ; first <= m_spec.m_lexeme; ++first)
+		    {
+		      if (m_spec.m_ignorecase) 
+			set.addncase((char)first);
+		      else
+			set.add(first);
+		    }  
+		}
+	      else
+		{
+		  first = m_spec.m_lexeme;
+		  if (m_spec.m_ignorecase)
+		    set.addncase(m_spec.m_lexeme);
+		  else
+		    set.add(m_spec.m_lexeme);
+		}
+
+	      m_lexGen.advance();
+	    }
+	  
+	if (CUtility.DESCENT_DEBUG)
+	  {
+	    CUtility.leave("dodash",m_spec.m_lexeme,m_spec.m_current_token);
+	  }
+      }
+}
+
+/**
+ * Extract character classes from NFA and simplify.
+ * @author C. Scott Ananian 25-Jul-1999
+ */
+class CSimplifyNfa
+{
+  private int[] ccls; // character class mapping.
+  private int original_charset_size; // original charset size
+  private int mapped_charset_size; // reduced charset size
+
+  void simplify(CSpec m_spec) {
+    computeClasses(m_spec); // initialize fields.
+    
+    // now rewrite the NFA using our character class mapping.
+    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
+      CNfa nfa = (CNfa) e.nextElement();
+      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
+	continue; // no change.
+      if (nfa.m_edge==CNfa.CCL) {
+	CSet ncset = new CSet();
+	ncset.map(nfa.m_set, ccls); // map it.
+	nfa.m_set = ncset;
+      } else { // single character
+	nfa.m_edge = ccls[nfa.m_edge]; // map it.
+      }
+    }
+
+    // now update m_spec with the mapping.
+    m_spec.m_ccls_map = ccls;
+    m_spec.m_dtrans_ncols = mapped_charset_size;
+  }
+  /** Compute minimum set of character classes needed to disambiguate
+   *  edges.  We optimistically assume that every character belongs to
+   *  a single character class, and then incrementally split classes
+   *  as we see edges that require discrimination between characters in
+   *  the class. [CSA, 25-Jul-1999] */
+  private void computeClasses(CSpec m_spec) {
+    this.original_charset_size = m_spec.m_dtrans_ncols;
+    this.ccls = new int[original_charset_size]; // initially all zero.
+
+    int nextcls = 1;
+    SparseBitSet clsA = new SparseBitSet(), clsB = new SparseBitSet();
+    int[] split = new int[original_charset_size]; // old to new class, or 0
+    
+    System.out.print("Working on character classes.");
+    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
+      CNfa nfa = (CNfa) e.nextElement();
+      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
+	continue; // no discriminatory information.
+      clsA.clearAll(); clsB.clearAll();
+      for (int i=0; i<ccls.length; i++)
+	if (nfa.m_edge==i || // edge labeled with a character
+	    nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) // set of characters
+	  clsA.set(ccls[i]);
+	else
+	  clsB.set(ccls[i]);
+      // now figure out which character classes we need to split.
+      clsA.and(clsB); // split the classes which show up on both sides of edge
+      System.out.print(clsA.size()==0?".":":");
+      if (clsA.size()==0) continue; // nothing to do.
+      // and split them.
+      int firstnew = nextcls; // split maps old to new class name
+      for (int i=0; i<ccls.length; i++)
+	if (clsA.get(ccls[i])) // a split class
+	  if (nfa.m_edge==i ||
+	      nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) { // on A side
+	    if (split[ccls[i]] < firstnew)
+	      split[ccls[i]] = nextcls++; // make new class
+	    ccls[i] = split[ccls[i]];
+	  }
+    }
+    System.out.println();
+    System.out.println("NFA has "+nextcls+" distinct character classes.");
+    
+    this.mapped_charset_size = nextcls;
+  }
+}
+
+/***************************************************************
+  Class: CMinimize
+ **************************************************************/
+class CMinimize
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  CSpec m_spec;
+  int m_ingroup[];
+
+  /* Groups for pairwise(): group g is m_group[g][0 .. m_group_size[g]-1]. */
+  int m_group[][];
+  int m_group_size[];
+  int m_group_count;
+
+  /***************************************************************
+    Function: CMinimize
+    Description: Constructor.
+    **************************************************************/
+  CMinimize 
+    (
+     )
+      {
+	reset();
+      }
+  
+  /***************************************************************
+    Function: reset
+    Description: Resets member variables.
+    **************************************************************/
+  private void reset
+    (
+     )
+      {
+	m_spec = null;
+	m_ingroup = null;
+	m_group = null;
+	m_group_size = null;
+	m_group_count = 0;
+      }
+
+  /***************************************************************
+    Function: set
+    Description: Sets member variables.
+    **************************************************************/
+  private void set
+    (
+     CSpec spec
+     )
+      {
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(null != spec);
+	  }
+
+	m_spec = spec;
+	m_ingroup = null;
+	m_group = null;
+	m_group_size = null;
+	m_group_count = 0;
+      }
+
+  /***************************************************************
+    Function: min_dfa
+    Description: High-level access function to module.
+    Minimizes the DFA left in CSpec by CNfa2Dfa, then builds
+    the compressed CDTrans table from it.
+    **************************************************************/
+  void min_dfa
     (
+     CSpec spec
      )
-      throws java.io.IOException
       {
-	if (CUtility.DEBUG)
-	  {
-	    CUtility.ASSERT(null != m_spec);
-	    CUtility.ASSERT(null != m_outstream);
-	  }
+	set(spec);
 
-	m_outstream.println("}");
-      }
-}
+	/* Remove redundant states. */
+	minimize();
 
-/***************************************************************
-  Class: CBunch
-  **************************************************************/
-class CBunch
-{
-  /***************************************************************
-    Member Variables
-    **************************************************************/
-  Vector m_nfa_set; /* Vector of CNfa states in dfa state. */
-  SparseBitSet m_nfa_bit; /* BitSet representation of CNfa labels. */
-  CAccept m_accept; /* Accepting actions, or null if nonaccepting state. */
-  int m_anchor; /* Anchors on regular expression. */
-  int m_accept_index; /* CNfa index corresponding to accepting actions. */
+	/* Column and row compression. 
+	   Save accept states in auxilary vector. */
+	reduce();
+
+	reset();
+      }
 
   /***************************************************************
-    Function: CBunch
-    Description: Constructor.
+    Function: number_rows
+    Description: Numbers the rows data[r * width .. 
+    r * width + width - 1], for r < count, so that equal rows 
+    get the same number, in the order in which the different rows
+    first appear, and sets map[r] to the number of row r.
+    Returns how many different rows there are.
     **************************************************************/
-  CBunch
+  private static int number_rows
     (
+     int data[],
+     int count,
+     int width,
+     int map[]
      )
       {
-	m_nfa_set = null;
-	m_nfa_bit = null;
-	m_accept = null;
-	m_anchor = CSpec.NONE;
-	m_accept_index = -1;
-      }
-}
+	int table[];
+	int mask;
+	int numbers = 0;
+	int r;
+
+	/* Open addressing, at most half full; an entry is a row 
+	   number plus one, or zero for an empty slot. */
+	for (mask = 1; mask < 2 * count; mask <<= 1)
+	  ;
+	table = new int[mask];
+	mask -= 1;
+	
+	for (r = 0; r < count; ++r)
+	  {
+	    int base = r * width;
+	    int hash = 1;
+	    int slot;
 
-/***************************************************************
-  Class: CMakeNfa
-  **************************************************************/
-class CMakeNfa
-{
-  /***************************************************************
-    Member Variables
-    **************************************************************/
-  private CSpec m_spec;
-  private CLexGen m_lexGen;
-  private CInput m_input;
+	    for (int i = 0; i < width; ++i)
+	      {
+		hash = 31 * hash + data[base + i];
+	      }
+	    hash ^= hash >>> 16;
+
+	    for (slot = hash & mask; ; slot = (slot + 1) & mask)
+	      {
+		if (0 == table[slot])
+		  {
+		    table[slot] = r + 1;
+		    map[r] = numbers++;
+		    break;
+		  }
+		if (same_row(data, base, (table[slot] - 1) * width, width))
+		  {
+		    map[r] = map[table[slot] - 1];
+		    break;
+		  }
+	      }
+	  }
+
+	return numbers;
+      }
 
   /***************************************************************
-    Function: CMakeNfa
-    Description: Constructor.
+    Function: same_row
     **************************************************************/
-  CMakeNfa
+  private static boolean same_row
     (
+     int data[],
+     int base1,
+     int base2,
+     int width
      )
       {
-	reset();
+	for (int i = 0; i < width; ++i)
+	  {
+	    if (data[base1 + i] != data[base2 + i])
+	      {
+		return false;
+	      }
+	  }
+	return true;
       }
 
   /***************************************************************
-    Function: reset
-    Description: Resets CMakeNfa member variables.
+    Function: reduce
+    Description: Merges equal columns, then equal rows, of the
+    minimized DFA's transitions into the CDTrans table, with 
+    m_col_map and m_row_map taking characters classes and states
+    to them.  Accepting actions and anchors stay per state.
     **************************************************************/
-  private void reset
+  private void reduce
     (
      )
       {
-	m_input = null;
-	m_lexGen = null;
-	m_spec = null;
+	int i;
+	int s;
+	int c;
+	int k;
+	int nstates;
+	int ncols;
+	int next[];
+	int columns[];
+	int first_col[];
+	int rows[];
+	int reduced_ncols;
+	int reduced_nrows;
+	CDTrans dtrans;
+
+	nstates = m_spec.m_dfa_count;
+	ncols = m_spec.m_dtrans_ncols;
+	next = m_spec.m_dfa_next;
+
+	/* Save accept nodes and anchor entries. */
+	m_spec.m_anchor_array = new int[nstates];
+	m_spec.m_accept_vector = new Vector();
+	for (i = 0; i < nstates; ++i)
+	  {
+	    m_spec.m_accept_vector.addElement(m_spec.m_dfa_accept[i]);
+	    m_spec.m_anchor_array[i] = m_spec.m_dfa_anchor[i];
+	  }
+
+	/* Number the columns, as the rows of the transposed table. */
+	columns = new int[ncols * nstates];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    for (c = 0; c < ncols; ++c)
+	      {
+		columns[c * nstates + s] = next[s * ncols + c];
+	      }
+	  }
+	m_spec.m_col_map = new int[ncols];
+	reduced_ncols = number_rows(columns,ncols,nstates,m_spec.m_col_map);
+	columns = null;
+
+	/* Each reduced column is a copy of the first column mapped
+	   to it. */
+	first_col = new int[reduced_ncols];
+	for (c = ncols - 1; c >= 0; --c)
+	  {
+	    first_col[m_spec.m_col_map[c]] = c;
+	  }
+
+	/* Reduce columns. */
+	rows = new int[nstates * reduced_ncols];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    for (k = 0; k < reduced_ncols; ++k)
+	      {
+		rows[s * reduced_ncols + k] = next[s * ncols + first_col[k]];
+	      }
+	  }
+	m_spec.m_dtrans_ncols = reduced_ncols;
+
+	/* Reduce rows. */
+	m_spec.m_row_map = new int[nstates];
+	reduced_nrows = number_rows(rows,nstates,reduced_ncols,
+				    m_spec.m_row_map);
+	m_spec.m_dtrans_vector = new Vector();
+	for (s = 0; s < nstates; ++s)
+	  {
+	    if (m_spec.m_row_map[s] == m_spec.m_dtrans_vector.size())
+	      {
+		dtrans = new CDTrans(m_spec.m_dtrans_vector.size(),m_spec);
+		System.arraycopy(rows, s * reduced_ncols, 
+				 dtrans.m_dtrans, 0, reduced_ncols);
+		dtrans.m_anchor = m_spec.m_dfa_anchor[s];
+		m_spec.m_dtrans_vector.addElement(dtrans);
+	      }
+	  }
+
+	if (CUtility.DEBUG)
+	  {
+	    CUtility.ASSERT(m_spec.m_dtrans_vector.size() == reduced_nrows);
+	  }
+
+	m_spec.m_dfa_next = null;
+	m_spec.m_dfa_accept = null;
+	m_spec.m_dfa_anchor = null;
       }
 
   /***************************************************************
-    Function: set
-    Description: Sets CMakeNfa member variables.
+    Function: fix_dtrans
+    Description: Replaces the DFA in CSpec with the minimized one,
+    using groups, removing redundant transition table states.
+    Groups are numbered in the order of their lowest-labelled
+    states, which also stand for them in the new table, so the
+    table does not depend on how the groups were found.  Returns
+    the number of states left.
     **************************************************************/
-  private void set
+  private int fix_dtrans
     (
-     CLexGen lexGen,
-     CSpec spec,
-     CInput input
+     int ngroups
      )
       {
-	if (CUtility.DEBUG)
+	int i;
+	int size;
+	int ncols;
+	int renumber[];
+	int first[];
+	int count;
+	int next[];
+	CAccept accept[];
+	int anchor[];
+	int c;
+
+	ncols = m_spec.m_dtrans_ncols;
+
+	renumber = new int[ngroups];
+	for (i = 0; i < ngroups; ++i)
 	  {
-	    CUtility.ASSERT(null != input);
-	    CUtility.ASSERT(null != lexGen);
-	    CUtility.ASSERT(null != spec);
+	    renumber[i] = -1;
 	  }
 
-	m_input = input;
-	m_lexGen = lexGen;
-	m_spec = spec;
+	size = m_spec.m_dfa_count;
+	first = new int[size];
+	count = 0;
+	for (i = 0; i < size; ++i)
+	  {
+	    if (-1 == renumber[m_ingroup[i]])
+	      {
+		renumber[m_ingroup[i]] = count;
+		first[count++] = i;
+	      }
+	    m_ingroup[i] = renumber[m_ingroup[i]];
+	  }
+
+	size = m_spec.m_state_dtrans.length;
+	for (i = 0; i < size; ++i)
+	  {
+	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	      {
+		m_spec.m_state_dtrans[i] = m_ingroup[m_spec.m_state_dtrans[i]];
+	      }
+	  }
+
+	next = new int[count * ncols];
+	accept = new CAccept[count];
+	anchor = new int[count];
+	for (i = 0; i < count; ++i)
+	  {
+	    int base = first[i] * ncols;
+
+	    for (c = 0; c < ncols; ++c)
+	      {
+		int goto_first = m_spec.m_dfa_next[base + c];
+
+		next[i * ncols + c] = (CDTrans.F == goto_first)
+		  ? CDTrans.F : m_ingroup[goto_first];
+	      }
+	    accept[i] = m_spec.m_dfa_accept[first[i]];
+	    anchor[i] = m_spec.m_dfa_anchor[first[i]];
+	  }
+
+	m_spec.m_dfa_count = count;
+	m_spec.m_dfa_next = next;
+	m_spec.m_dfa_accept = accept;
+	m_spec.m_dfa_anchor = anchor;
+	return count;
       }
 
   /***************************************************************
-    Function: allocate_BOL_EOF
-    Description: Expands character class to include special BOL and
-    EOF characters.  Puts numeric index of these characters in
-    input CSpec.
+    Function: minimize
+    Description: Removes redundant transition table states.
     **************************************************************/
-  void allocate_BOL_EOF
+  private void minimize
     (
-     CSpec spec
      )
-	{
-	  CUtility.ASSERT(CSpec.NUM_PSEUDO==2);
-	  spec.BOL = spec.m_dtrans_ncols++;
-	  spec.EOF = spec.m_dtrans_ncols++;
-	}
+      {
+	int ngroups;
+
+	if (m_spec.m_pairwise)
+	  {
+	    ngroups = pairwise();
+	  }
+	else
+	  {
+	    ngroups = hopcroft();
+	  }
+
+	System.out.println(fix_dtrans(ngroups)
+			   + " states after removal of redundant states.");
+      }
 
   /***************************************************************
-    Function: thompson
-    Description: High level access function to module.
-    Deposits result in input CSpec.
+    Function: hopcroft
+    Description: Groups equivalent transition table states by
+    Hopcroft's partition refinement, in time O(n k log n) for n
+    states and k character classes.  Sets m_ingroup and returns
+    the number of group numbers used.
+
+    States start out grouped by accepting action, as in pairwise().
+    A missing transition (CDTrans.F) goes to an extra state, the
+    sink, which is in a group of its own.  The groups are kept as
+    contiguous runs of one array, elems.  Each group taken off the work list
+    is a splitter: for each character class, the states with a
+    transition into it are moved to the front of their groups, and
+    any group only partly moved is split in two.  If the group split
+    is still to be used as a splitter, both halves must be; if not,
+    the smaller half is enough.
     **************************************************************/
-  void thompson
+  private int hopcroft
     (
-     CLexGen lexGen,
-     CSpec spec,
-     CInput input
      )
-      throws java.io.IOException      
-	{
-	  int i;
-	  CNfa elem;
-	  int size;
+      {
+	int n = m_spec.m_dfa_count;
+	int ncols = m_spec.m_dtrans_ncols;
+	int sink = n;
+	int nstates = n + 1;
+	int pred_start[];
+	int pred[];
+	int elems[];
+	int loc[];
+	int block[];
+	int first[];
+	int end[];
+	int marked[];
+	int work[];
+	boolean in_work[];
+	int touched[];
+	int splitter[];
+	int nblocks;
+	int nwork;
+	int s;
+	int c;
+	int i;
+	
+	/* The states with a transition to state t on class c are
+	   pred[pred_start[c * nstates + t] .. 
+	   pred_start[c * nstates + t + 1] - 1].  The ranges are
+	   counted, their ends found, and then filled back to front, 
+	   which leaves each start where it belongs. */
+	pred_start = new int[ncols * nstates + 1];
+	pred = new int[ncols * nstates];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    for (c = 0; c < ncols; ++c)
+	      {
+		++pred_start[c * nstates + next_state(s,c,sink)];
+	      }
+	  }
+	for (i = 1; i < pred_start.length; ++i)
+	  {
+	    pred_start[i] += pred_start[i - 1];
+	  }
+	for (s = nstates - 1; s >= 0; --s)
+	  {
+	    for (c = 0; c < ncols; ++c)
+	      {
+		pred[--pred_start[c * nstates + next_state(s,c,sink)]] = s;
+	      }
+	  }
 
-	  /* Set member variables. */
-	  reset();
-	  set(lexGen,spec,input);
+	/* Initial groups: one per accepting action, and the sink. */
+	block = new int[nstates];
+	nblocks = initial_blocks(block, sink);
 
-	  size = m_spec.m_states.size();
-	  m_spec.m_state_rules = new Vector[size];
-	  for (i = 0; i < size; ++i)
-	    {
-	      m_spec.m_state_rules[i] = new Vector();
-	    }
+	first = new int[nstates];
+	end = new int[nstates];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    ++end[block[s]];
+	  }
+	for (i = 1; i < nblocks; ++i)
+	  {
+	    first[i] = end[i - 1];
+	    end[i] += end[i - 1];
+	  }
+	elems = new int[nstates];
+	loc = new int[nstates];
+	marked = new int[nstates];
+	for (s = 0; s < nstates; ++s)
+	  {
+	    loc[s] = first[block[s]] + marked[block[s]]++;
+	    elems[loc[s]] = s;
+	  }
 
-	  /* Initialize current token variable 
-	     and create nfa. */
-	  /*m_spec.m_current_token = m_lexGen.EOS;
-	  m_lexGen.advance();*/
+	work = new int[nstates];
+	in_work = new boolean[nstates];
+	for (i = 0; i < nblocks; ++i)
+	  {
+	    marked[i] = 0;
+	    work[i] = i;
+	    in_work[i] = true;
+	  }
+	nwork = nblocks;
+
+	touched = new int[nstates];
+	splitter = new int[nstates];
+	while (0 < nwork)
+	  {
+	    int b = work[--nwork];
+	    int len = end[b] - first[b];
+
+	    in_work[b] = false;
+	    /* Copied, as b may be split as it is used. */
+	    System.arraycopy(elems, first[b], splitter, 0, len);
+
+	    for (c = 0; c < ncols; ++c)
+	      {
+		int ntouched = 0;
+
+		for (i = 0; i < len; ++i)
+		  {
+		    int t = c * nstates + splitter[i];
+
+		    for (int j = pred_start[t]; j < pred_start[t + 1]; ++j)
+		      {
+			int p = pred[j];
+			int pb = block[p];
+			int to = first[pb] + marked[pb];
+			int q = elems[to];
+
+			if (0 == marked[pb])
+			  {
+			    touched[ntouched++] = pb;
+			  }
+			++marked[pb];
+			elems[loc[p]] = q;
+			loc[q] = loc[p];
+			elems[to] = p;
+			loc[p] = to;
+		      }
+		  }
+
+		while (0 < ntouched)
+		  {
+		    int pb = touched[--ntouched];
+		    int m = marked[pb];
+		    int nb;
+
+		    marked[pb] = 0;
+		    if (m == end[pb] - first[pb])
+		      {
+			continue;
+		      }
+
+		    /* The moved states become group nb. */
+		    nb = nblocks++;
+		    first[nb] = first[pb];
+		    end[nb] = first[pb] + m;
+		    first[pb] = end[nb];
+		    for (int j = first[nb]; j < end[nb]; ++j)
+		      {
+			block[elems[j]] = nb;
+		      }
+
+		    if (in_work[pb] || m <= end[pb] - first[pb])
+		      {
+			work[nwork++] = nb;
+			in_work[nb] = true;
+		      }
+		    else
+		      {
+			work[nwork++] = pb;
+			in_work[pb] = true;
+		      }
+		  }
+	      }
+	  }
 
-	  m_spec.m_nfa_start = machine();
-	  
-	  /* Set labels in created nfa machine. */
-	  size = m_spec.m_nfa_states.size();
-	  for (i = 0; i < size; ++i)
-	    {
-	      elem = (CNfa) m_spec.m_nfa_states.elementAt(i);
-	      elem.m_label = i;
-	    }
+	if (CUtility.DEBUG)
+	  {
+	    /* Each state goes where the first state of its group does. */
+	    for (s = 0; s < nstates; ++s)
+	      {
+		int head = elems[first[block[s]]];
 
-	  /* Debugging output. */
-	  if (CUtility.DO_DEBUG)
-	    {
-	      m_lexGen.print_nfa();
-	    }
+		for (c = 0; c < ncols; ++c)
+		  {
+		    CUtility.ASSERT(block[next_state(s,c,sink)]
+				    == block[next_state(head,c,sink)]);
+		  }
+	      }
+	  }
 
-	  if (m_spec.m_verbose)
-	    {
-	      System.out.println("NFA comprised of " 
-				 + (m_spec.m_nfa_states.size() + 1) 
-				 + " states.");
-	    }
+	m_ingroup = new int[n];
+	System.arraycopy(block, 0, m_ingroup, 0, n);
+	return nblocks;
+      }
 
-	  reset();
-	}
-     
   /***************************************************************
-    Function: discardCNfa
-    Description: 
+    Function: next_state
+    Description: Returns the state that state s goes to on 
+    character class c, with sink standing for CDTrans.F.
     **************************************************************/
-  private void discardCNfa
+  private int next_state
     (
-     CNfa nfa
+     int s,
+     int c,
+     int sink
      )
       {
-	m_spec.m_nfa_states.removeElement(nfa);
+	int next;
+
+	if (sink == s)
+	  {
+	    return sink;
+	  }
+	next = m_spec.m_dfa_next[s * m_spec.m_dtrans_ncols + c];
+	return (CDTrans.F == next) ? sink : next;
       }
 
   /***************************************************************
-    Function: processStates
-    Description:
+    Function: initial_blocks
+    Description: Numbers the states' groups for hopcroft(), one
+    per accepting action and one for the sink alone, and returns
+    the number of groups.
     **************************************************************/
-  private void processStates
+  private int initial_blocks
     (
-     SparseBitSet states,
-     CNfa current
+     int block[],
+     int sink
      )
       {
-	int size;
+	HashMap<CAccept,Integer> groups = new HashMap<CAccept,Integer>();
+	Integer group;
 	int i;
-	
-	size = m_spec.m_states.size();
-	for (i = 0; i <  size; ++i)
+
+	for (i = 0; i < sink; ++i)
 	  {
-	    if (states.get(i))
+	    group = groups.get(m_spec.m_dfa_accept[i]);
+	    if (null == group)
 	      {
-		m_spec.m_state_rules[i].addElement(current);
+		group = Integer.valueOf(groups.size());
+		groups.put(m_spec.m_dfa_accept[i],group);
 	      }
+	    block[i] = group.intValue();
 	  }
+	block[sink] = groups.size();
+	return groups.size() + 1;
       }
 
   /***************************************************************
-    Function: machine
-    Description: Recursive descent regular expression parser.
+    Function: pairwise
+    Description: Groups equivalent transition table states by
+    repeatedly comparing each group's states with its first one
+    until no group splits.  Returns the number of groups.  Only
+    used with -pairwise, to check hopcroft().
     **************************************************************/
-  private CNfa machine
+  private int pairwise
     (
      )
-      throws java.io.IOException 
       {
-	CNfa start;
-	CNfa p;
-	SparseBitSet states;
+	int group[];
+	int new_group;
+	int i;
+	int j;
+	int old_group_count;
+	int group_count;
+	int next;
+	int first;
+	int goto_first;
+	int goto_next;
+	int c;
+	int ncols;
+	int group_size;
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("machine",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	init_groups();
+	ncols = m_spec.m_dtrans_ncols;
 
-	start = CAlloc.newCNfa(m_spec);
-	p = start;
-	    
-	states = m_lexGen.getStates();
+	group_count = m_group_count;
+	old_group_count = group_count - 1;
 
-	/* Begin: Added for states. */
-	m_spec.m_current_token = m_lexGen.EOS;
-	m_lexGen.advance();
-	/* End: Added for states. */
-	
-	if (m_lexGen.END_OF_INPUT != m_spec.m_current_token) // CSA fix.
+	while (old_group_count != group_count)
 	  {
-	    p.m_next = rule();
-	    
-	    processStates(states,p.m_next);
-	  }
+	    old_group_count = group_count;
 
-	while (m_lexGen.END_OF_INPUT != m_spec.m_current_token)
-	  {
-	    /* Make state changes HERE. */
-	    states = m_lexGen.getStates();
-	
-	    /* Begin: Added for states. */
-	    m_lexGen.advance();
-	    if (m_lexGen.END_OF_INPUT == m_spec.m_current_token)
-	      { 
-		break;
+	    for (i = 0; i < group_count; ++i)
+	      {
+		group = m_group[i];
+
+		group_size = m_group_size[i];
+		if (group_size <= 1)
+		  {
+		    continue;
+		  }
+
+		new_group = -1;
+		
+		first = group[0];
+		for (j = 1; j < group_size; ++j)
+		  {
+		    next = group[j];
+
+		    for (c = 0; c < ncols; ++c)
+		      {
+			goto_first = m_spec.m_dfa_next[first * ncols + c];
+			goto_next = m_spec.m_dfa_next[next * ncols + c];
+
+			if (goto_first != goto_next
+			    && (goto_first == CDTrans.F
+				|| goto_next == CDTrans.F
+				|| m_ingroup[goto_next] != m_ingroup[goto_first]))
+			  {
+			    System.arraycopy(group, j + 1, group, j,
+					     group_size - j - 1);
+			    --j;
+			    --group_size;
+			    m_group_size[i] = group_size;
+			    if (-1 == new_group)
+			      {
+				new_group = add_group();
+				++group_count;
+			      }
+			    add_to_group(new_group,next);
+			    m_ingroup[next] = new_group;
+
+			    if (CUtility.DEBUG)
+			      {
+				CUtility.ASSERT(i == m_ingroup[first]);
+				CUtility.ASSERT((m_group_count - 1)
+						== m_ingroup[next]);
+			      }
+
+			    break;
+			  }
+		      }
+		  }
 	      }
-	    /* End: Added for states. */
-	    
-	    p.m_next2 = CAlloc.newCNfa(m_spec);
-	    p = p.m_next2;
-	    p.m_next = rule();
-	    
-	    processStates(states,p.m_next);
 	  }
 
-	// CSA: add pseudo-rules for BOL and EOF
-	SparseBitSet all_states = new SparseBitSet();
-	for (int i = 0; i < m_spec.m_states.size(); ++i)
-		all_states.set(i);
-	p.m_next2 = CAlloc.newCNfa(m_spec);
-	p = p.m_next2;
-	p.m_next = CAlloc.newCNfa(m_spec);
-	p.m_next.m_edge = CNfa.CCL;
-	p.m_next.m_next = CAlloc.newCNfa(m_spec);
-	p.m_next.m_set = new CSet();
-	p.m_next.m_set.add(m_spec.BOL);
-	p.m_next.m_set.add(m_spec.EOF);
-	p.m_next.m_next.m_accept = // do-nothing accept rule
-	    new CAccept(new char[0], 0, m_input.m_line_number+1);
-	processStates(all_states,p.m_next);
-	// CSA: done. 
-
-	if (CUtility.DESCENT_DEBUG)
+	if (m_spec.m_verbose
+	    && true == CUtility.OLD_DUMP_DEBUG)
 	  {
-	    CUtility.leave("machine",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.println();
+	    System.out.println("States grouped as follows after minimization");
+	    pgroups();
 	  }
 
-	return start;
+	group_count = m_group_count;
+	m_group = null;
+	m_group_size = null;
+	return group_count;
       }
-  
+
   /***************************************************************
-    Function: rule
-    Description: Recursive descent regular expression parser.
+    Function: add_group
+    Description: Adds an empty group for pairwise() and returns
+    its number.
     **************************************************************/
-  private CNfa rule
+  private int add_group
     (
      )
-      throws java.io.IOException 
       {
-	CNfaPair pair; 
-	CNfa p;
-	CNfa start = null;
-	CNfa end = null;
-	int anchor = CSpec.NONE;
-
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.enter("rule",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
-
-	pair = CAlloc.newCNfaPair();
-
-	if (m_lexGen.AT_BOL == m_spec.m_current_token)
-	  {
-	    anchor = anchor | CSpec.START;
-	    m_lexGen.advance();
-	    expr(pair);
-
-	    // CSA: fixed beginning-of-line operator. 8-aug-1999
-	    start = CAlloc.newCNfa(m_spec);
-	    start.m_edge = m_spec.BOL;
-	    start.m_next = pair.m_start;
-	    end = pair.m_end;
-	  }
-	else
+	if (m_group_count == m_group.length)
 	  {
-	    expr(pair);
-	    start = pair.m_start;
-	    end = pair.m_end;
+	    m_group = Arrays.copyOf(m_group, 2 * m_group_count);
+	    m_group_size = Arrays.copyOf(m_group_size, 2 * m_group_count);
 	  }
+	m_group[m_group_count] = new int[4];
+	m_group_size[m_group_count] = 0;
+	return m_group_count++;
+      }
 
-	if (m_lexGen.AT_EOL == m_spec.m_current_token)
+  /***************************************************************
+    Function: add_to_group
+    **************************************************************/
+  private void add_to_group
+    (
+     int group,
+     int state
+     )
+      {
+	if (m_group_size[group] == m_group[group].length)
 	  {
-	    m_lexGen.advance();
-	    // CSA: fixed end-of-line operator. 8-aug-1999
-	    CNfaPair nlpair = CAlloc.newNLPair(m_spec);
-	    end.m_next = CAlloc.newCNfa(m_spec);
-	    end.m_next.m_next = nlpair.m_start;
-	    end.m_next.m_next2 = CAlloc.newCNfa(m_spec);
-	    end.m_next.m_next2.m_edge = m_spec.EOF;
-	    end.m_next.m_next2.m_next = nlpair.m_end;
-	    end = nlpair.m_end;
-	    anchor = anchor | CSpec.END;
+	    m_group[group] = Arrays.copyOf(m_group[group], 
+					   2 * m_group_size[group]);
 	  }
+	m_group[group][m_group_size[group]++] = state;
+      }
 
-	/* Check for null rules. Charles Fischer found this bug. [CSA] */
-	if (end==null)
-	    CError.parse_error(CError.E_ZERO, m_input.m_line_number);
+  /***************************************************************
+    Function: init_groups
+    Description: Groups the states by accepting action for
+    pairwise(), the groups numbered in order of their first
+    states.
+    **************************************************************/
+  private void init_groups
+    (
+     )
+      {
+	int i;
+	int j;
+	int size;
+	boolean group_found;
 
-	/* Handle end of regular expression.  See page 103. */
-	end.m_accept = m_lexGen.packAccept();
-	end.m_anchor = anchor;
+	size = m_spec.m_dfa_count;
+	m_group = new int[8][];
+	m_group_size = new int[8];
+	m_group_count = 0;
+	m_ingroup = new int[size];
+	
+	for (i = 0; i < size; ++i)
+	  {
+	    group_found = false;
 
-	/* Begin: Removed for states. */
-	/*m_lexGen.advance();*/
-	/* End: Removed for states. */
+	    for (j = 0; j < m_group_count; ++j)
+	      {
+		if (CUtility.DEBUG)
+		  {
+		    CUtility.ASSERT(0 < m_group_size[j]);
+		  }
 
-	if (CUtility.DESCENT_DEBUG)
+		if (m_spec.m_dfa_accept[m_group[j][0]] 
+		    == m_spec.m_dfa_accept[i])
+		  {
+		    add_to_group(j,i);
+		    m_ingroup[i] = j;
+		    group_found = true;
+		    break;
+		  }
+	      }
+	    
+	    if (false == group_found)
+	      {
+		m_ingroup[i] = add_group();
+		add_to_group(m_ingroup[i],i);
+	      }
+	  }
+	
+	if (m_spec.m_verbose
+	    && true == CUtility.OLD_DUMP_DEBUG)
 	  {
-	    CUtility.leave("rule",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.println("Initial grouping:");
+	    pgroups();
+	    System.out.println();
 	  }
-
-	return start;
       }
-	    
+
   /***************************************************************
-    Function: expr
-    Description: Recursive descent regular expression parser.
+    Function: pgroups
     **************************************************************/
-  private void expr
+  private void pgroups
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfaPair e2_pair;
-	CNfa p;
+	int i;
+	int j;
 	
-	if (CUtility.DESCENT_DEBUG)
+	for (i = 0; i < m_group_count; ++i)
 	  {
-	    CUtility.enter("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.print("\tGroup " + i + " {");
+	    for (j = 0; j < m_group_size[i]; ++j)
+	      {
+		System.out.print(m_group[i][j] + " ");
+	      }
+	    System.out.println("}");
+	    System.out.println();
+	  }
+	
+	System.out.println();
+	for (i = 0; i < m_spec.m_dfa_count; ++i)
+	  {
+	    System.out.println("\tstate " + i 
+			       + " is in group " 
+			       + m_ingroup[i]);
 	  }
+      }
+}
 
-	if (CUtility.DEBUG)
+/***************************************************************
+  Class: CBackup
+  Description: Finds where the lexer backs up.  After an accepting
+  state the lexer reads on in the hope of a longer match, and if it
+  then finds no transition for the next character (or EOF), it goes
+  back to the end of the last match and scans the characters after
+  it again for the next one.  Through states that are left within a
+  few characters that costs a bounded amount per match.  But from a
+  non-accepting state reached after a match that lies on a cycle of
+  such states, the lexer can read any number of characters before it
+  backs up, and an input that makes it do that again and again takes
+  time quadratic in its length.  Those states are m_unbounded in
+  CSpec; they are reported with their rules, and with %linear the
+  lexer remembers where it failed in them (see CEmit.emit_linear).
+ **************************************************************/
+class CBackup
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  private CSpec m_spec;
+  private int m_nstates;
+  private int m_cols[]; /* The columns that input (or EOF) can take. */
+  private boolean m_accepting[];
+  private boolean m_after[]; /* Non-accepting, reachable after a match
+				through non-accepting states. */
+
+  /* Transitions among the m_after states (succ) and into every
+     state (pred), through m_cols: those of s are
+     m_succ[m_succ_start[s] .. m_succ_start[s + 1] - 1]. */
+  private int m_succ_start[];
+  private int m_succ[];
+  private int m_pred_start[];
+  private int m_pred[];
+
+  /***************************************************************
+    Function: analyze
+    Description: Sets m_backup_count, m_unbounded_count and
+    m_unbounded in spec, from its minimized DFA, and reports the
+    unbounded states.
+    **************************************************************/
+  void analyze
+    (
+     CSpec spec
+     )
+      {
+	m_spec = spec;
+	m_nstates = spec.m_row_map.length;
+	find_columns();
+
+	m_accepting = new boolean[m_nstates];
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    CUtility.ASSERT(null != pair);
+	    m_accepting[s] = (null != spec.m_accept_vector.elementAt(s));
 	  }
+	find_after();
+	make_edges();
 
-	e2_pair = CAlloc.newCNfaPair();
+	/* where backing up can happen */
+	boolean fails[] = new boolean[m_nstates];
+	int backup = 0;
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    fails[s] = m_after[s] && can_fail(s);
+	    if (fails[s])
+	      {
+		++backup;
+	      }
+	  }
 
-	cat_expr(pair);
-	
-	while (m_lexGen.OR == m_spec.m_current_token)
+	/* states on cycles of m_after states ... */
+	int component[] = new int[m_nstates];
+	boolean looping[] = new boolean[component_count(component)];
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    m_lexGen.advance();
-	    cat_expr(e2_pair);
+	    for (int e = m_succ_start[s]; e < m_succ_start[s + 1]; ++e)
+	      {
+		if (component[m_succ[e]] == component[s])
+		  {
+		    looping[component[s]] = true;
+		  }
+	      }
+	  }
 
-	    p = CAlloc.newCNfa(m_spec);
-	    p.m_next2 = e2_pair.m_start;
-	    p.m_next = pair.m_start;
-	    pair.m_start = p;
-	    
-	    p = CAlloc.newCNfa(m_spec);
-	    pair.m_end.m_next = p;
-	    e2_pair.m_end.m_next = p;
-	    pair.m_end = p;
+	/* ... from which one that backs up can be reached */
+	boolean reaches[] = reverse_closure(fails);
+	int unbounded = 0;
+	spec.m_unbounded = new boolean[m_nstates];
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    if (m_after[s] && looping[component[s]] && reaches[s])
+	      {
+		spec.m_unbounded[s] = true;
+		++unbounded;
+	      }
 	  }
+	spec.m_backup_count = backup;
+	spec.m_unbounded_count = unbounded;
 
-	if (CUtility.DESCENT_DEBUG)
+	if (spec.m_verbose)
 	  {
-	    CUtility.leave("expr",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.println(states(backup) + " can back up after a match.");
+	  }
+	if (0 < unbounded)
+	  {
+	    report(component, looping.length);
 	  }
       }
-	    
+
   /***************************************************************
-    Function: cat_expr
-    Description: Recursive descent regular expression parser.
+    Function: find_columns
+    Description: Sets m_cols to the columns of the transition table
+    that some character or EOF maps to (not BOL, which only starts
+    a match).
     **************************************************************/
-  private void cat_expr
+  private void find_columns
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfaPair e2_pair;
+	boolean used[] = new boolean[m_spec.m_dtrans_ncols];
+	int count = 0;
 
-	if (CUtility.DESCENT_DEBUG)
+	for (int c = 0; c < m_spec.m_ccls_map.length; ++c)
 	  {
-	    CUtility.enter("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (c != m_spec.BOL)
+	      {
+		used[m_spec.m_col_map[m_spec.m_ccls_map[c]]] = true;
+	      }
 	  }
-
-	if (CUtility.DEBUG)
+	for (int col = 0; col < used.length; ++col)
 	  {
-	    CUtility.ASSERT(null != pair);
+	    if (used[col])
+	      {
+		++count;
+	      }
 	  }
-	
-	e2_pair = CAlloc.newCNfaPair();
-	
-	if (first_in_cat(m_spec.m_current_token))
+	m_cols = new int[count];
+	count = 0;
+	for (int col = 0; col < used.length; ++col)
 	  {
-	    factor(pair);
+	    if (used[col])
+	      {
+		m_cols[count++] = col;
+	      }
 	  }
+      }
 
-	while (first_in_cat(m_spec.m_current_token))
-	  {
-	    factor(e2_pair);
+  /***************************************************************
+    Function: row
+    **************************************************************/
+  private int[] row
+    (
+     int state
+     )
+      {
+	return ((CDTrans) m_spec.m_dtrans_vector.elementAt(
+	    m_spec.m_row_map[state])).m_dtrans;
+      }
 
-	    /* Destroy */
-	    pair.m_end.mimic(e2_pair.m_start);
-	    discardCNfa(e2_pair.m_start);
-	    
-	    pair.m_end = e2_pair.m_end;
-	  }
+  /***************************************************************
+    Function: can_fail
+    Description: Whether state has no transition for some input.
+    **************************************************************/
+  private boolean can_fail
+    (
+     int state
+     )
+      {
+	int dtrans[] = row(state);
 
-	if (CUtility.DESCENT_DEBUG)
+	for (int i = 0; i < m_cols.length; ++i)
 	  {
-	    CUtility.leave("cat_expr",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (CDTrans.F == dtrans[m_cols[i]])
+	      {
+		return true;
+	      }
 	  }
+	return false;
       }
-  
+
   /***************************************************************
-    Function: first_in_cat
-    Description: Recursive descent regular expression parser.
+    Function: find_after
+    Description: Sets m_after: the non-accepting states that can
+    be reached from an accepting one through non-accepting ones.
     **************************************************************/
-  private boolean first_in_cat
+  private void find_after
     (
-     int token
      )
       {
-	switch (token)
-	  {
-	  case CLexGen.CLOSE_PAREN:
-	  case CLexGen.AT_EOL:
-	  case CLexGen.OR:
-	  case CLexGen.EOS:
-	    return false;
-	    
-	  case CLexGen.CLOSURE:
-	  case CLexGen.PLUS_CLOSE:
-	  case CLexGen.OPTIONAL:
-	    CError.parse_error(CError.E_CLOSE,m_input.m_line_number);
-	    return false;
+	int work[] = new int[m_nstates];
+	int count = 0;
 
-	  case CLexGen.CCL_END:
-	    CError.parse_error(CError.E_BRACKET,m_input.m_line_number);
-	    return false;
+	m_after = new boolean[m_nstates];
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    if (m_accepting[s])
+	      {
+		work[count++] = s;
+	      }
+	  }
+	while (0 < count)
+	  {
+	    int dtrans[] = row(work[--count]);
 
-	  case CLexGen.AT_BOL:
-	    CError.parse_error(CError.E_BOL,m_input.m_line_number);
-	    return false;
+	    for (int i = 0; i < m_cols.length; ++i)
+	      {
+		int next = dtrans[m_cols[i]];
 
-	  default:
-	    break;
+		if (CDTrans.F != next && false == m_accepting[next]
+		    && false == m_after[next])
+		  {
+		    m_after[next] = true;
+		    work[count++] = next;
+		  }
+	      }
 	  }
-
-	return true;
       }
 
   /***************************************************************
-    Function: factor
-    Description: Recursive descent regular expression parser.
+    Function: make_edges
+    Description: Fills in m_succ and m_pred (see above).
     **************************************************************/
-  private void factor
+  private void make_edges
     (
-     CNfaPair pair
      )
-      throws java.io.IOException 
       {
-	CNfa start = null;
-	CNfa end = null;
+	int nsucc = 0;
+	int npred = 0;
 
-	if (CUtility.DESCENT_DEBUG)
+	m_succ_start = new int[m_nstates + 1];
+	m_pred_start = new int[m_nstates + 1];
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    CUtility.enter("factor",m_spec.m_lexeme,m_spec.m_current_token);
-	  }
+	    int dtrans[] = row(s);
 
-	term(pair);
+	    for (int i = 0; i < m_cols.length; ++i)
+	      {
+		int next = dtrans[m_cols[i]];
 
-	if (m_lexGen.CLOSURE == m_spec.m_current_token
-	    || m_lexGen.PLUS_CLOSE == m_spec.m_current_token
-	    || m_lexGen.OPTIONAL == m_spec.m_current_token)
+		if (CDTrans.F != next)
+		  {
+		    ++m_pred_start[next + 1];
+		    ++npred;
+		    if (m_after[s] && m_after[next])
+		      {
+			++m_succ_start[s + 1];
+			++nsucc;
+		      }
+		  }
+	      }
+	  }
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    start = CAlloc.newCNfa(m_spec);
-	    end = CAlloc.newCNfa(m_spec);
-	    
-	    start.m_next = pair.m_start;
-	    pair.m_end.m_next = end;
+	    m_succ_start[s + 1] += m_succ_start[s];
+	    m_pred_start[s + 1] += m_pred_start[s];
+	  }
 
-	    if (m_lexGen.CLOSURE == m_spec.m_current_token
-		|| m_lexGen.OPTIONAL == m_spec.m_current_token)
-	      {
-		start.m_next2 = end;
-	      }
-	    
-	    if (m_lexGen.CLOSURE == m_spec.m_current_token
-		|| m_lexGen.PLUS_CLOSE == m_spec.m_current_token)
+	int succ_fill[] = new int[m_nstates];
+	int pred_fill[] = new int[m_nstates];
+	m_succ = new int[nsucc];
+	m_pred = new int[npred];
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    int dtrans[] = row(s);
+
+	    for (int i = 0; i < m_cols.length; ++i)
 	      {
-		pair.m_end.m_next2 = pair.m_start;
+		int next = dtrans[m_cols[i]];
+
+		if (CDTrans.F != next)
+		  {
+		    m_pred[m_pred_start[next] + pred_fill[next]++] = s;
+		    if (m_after[s] && m_after[next])
+		      {
+			m_succ[m_succ_start[s] + succ_fill[s]++] = next;
+		      }
+		  }
 	      }
-	    
-	    pair.m_start = start;
-	    pair.m_end = end;
-	    m_lexGen.advance();
 	  }
+      }
 
-	if (CUtility.DESCENT_DEBUG)
+  /***************************************************************
+    Function: component_count
+    Description: Numbers the strongly connected components of the
+    m_after states and their m_succ edges (Tarjan's algorithm, with
+    an explicit stack), setting component[s] for each of them, and
+    returns how many there are.
+    **************************************************************/
+  private int component_count
+    (
+     int component[]
+     )
+      {
+	int order[] = new int[m_nstates];
+	int low[] = new int[m_nstates];
+	int stack[] = new int[m_nstates];
+	boolean on_stack[] = new boolean[m_nstates];
+	int call_state[] = new int[m_nstates];
+	int call_edge[] = new int[m_nstates];
+	int next_order = 0;
+	int stack_size = 0;
+	int count = 0;
+
+	Arrays.fill(order, -1);
+	for (int root = 0; root < m_nstates; ++root)
 	  {
-	    CUtility.leave("factor",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (false == m_after[root] || -1 != order[root])
+	      {
+		continue;
+	      }
+
+	    int depth = 0;
+	    call_state[depth] = root;
+	    call_edge[depth++] = m_succ_start[root];
+	    order[root] = low[root] = next_order++;
+	    stack[stack_size++] = root;
+	    on_stack[root] = true;
+
+	    while (0 < depth)
+	      {
+		int v = call_state[depth - 1];
+
+		if (call_edge[depth - 1] < m_succ_start[v + 1])
+		  {
+		    int w = m_succ[call_edge[depth - 1]++];
+
+		    if (-1 == order[w])
+		      {
+			call_state[depth] = w;
+			call_edge[depth++] = m_succ_start[w];
+			order[w] = low[w] = next_order++;
+			stack[stack_size++] = w;
+			on_stack[w] = true;
+		      }
+		    else if (on_stack[w])
+		      {
+			low[v] = Math.min(low[v], order[w]);
+		      }
+		    continue;
+		  }
+
+		--depth;
+		if (low[v] == order[v])
+		  {
+		    int w;
+		    do
+		      {
+			w = stack[--stack_size];
+			on_stack[w] = false;
+			component[w] = count;
+		      }
+		    while (w != v);
+		    ++count;
+		  }
+		if (0 < depth)
+		  {
+		    int u = call_state[depth - 1];
+		    low[u] = Math.min(low[u], low[v]);
+		  }
+	      }
 	  }
+	return count;
       }
-      
+
   /***************************************************************
-    Function: term
-    Description: Recursive descent regular expression parser.
+    Function: reverse_closure
+    Description: Returns the m_after states from which one of the
+    given ones can be reached through m_after states.
     **************************************************************/
-  private void term
+  private boolean[] reverse_closure
     (
-     CNfaPair pair
+     boolean from[]
      )
-      throws java.io.IOException 
       {
-	CNfa start;
-	boolean isAlphaL;
-	int c;
+	boolean reached[] = new boolean[m_nstates];
+	int work[] = new int[m_nstates];
+	int count = 0;
 
-	if (CUtility.DESCENT_DEBUG)
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    CUtility.enter("term",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (from[s])
+	      {
+		reached[s] = true;
+		work[count++] = s;
+	      }
 	  }
-
-	if (m_lexGen.OPEN_PAREN == m_spec.m_current_token)
+	while (0 < count)
 	  {
-	    m_lexGen.advance();
-	    expr(pair);
+	    int s = work[--count];
 
-	    if (m_lexGen.CLOSE_PAREN == m_spec.m_current_token)
-	      {
-		m_lexGen.advance();
-	      }
-	    else
+	    for (int e = m_pred_start[s]; e < m_pred_start[s + 1]; ++e)
 	      {
-		CError.parse_error(CError.E_SYNTAX,m_input.m_line_number);
+		int prev = m_pred[e];
+
+		if (m_after[prev] && false == reached[prev])
+		  {
+		    reached[prev] = true;
+		    work[count++] = prev;
+		  }
 	      }
 	  }
+	return reached;
+      }
+
+  /***************************************************************
+    Function: report
+    Description: Prints, for each component of unbounded states,
+    the rules matched before entering it, which the lexer backs up
+    to, and the rules it can still lead to.
+    **************************************************************/
+  private void report
+    (
+     int component[],
+     int ncomponents
+     )
+      {
+	if (m_spec.m_linear)
+	  {
+	    System.out.println("In " + states(m_spec.m_unbounded_count)
+			       + ", the lexer can read any number of "
+			       + "characters before backing up;");
+	    System.out.println("%linear has it remember where it failed:");
+	  }
 	else
 	  {
-	    start = CAlloc.newCNfa(m_spec);
-	    pair.m_start = start;
+	    System.out.println("Warning: in " + states(m_spec.m_unbounded_count)
+			       + ", the lexer can read any number of "
+			       + "characters before backing up,");
+	    System.out.println("which can take time quadratic in the length "
+			       + "of the input (%linear avoids this):");
+	  }
 
-	    start.m_next = CAlloc.newCNfa(m_spec);
-	    pair.m_end = start.m_next;
+	for (int c = 0; c < ncomponents; ++c)
+	  {
+	    boolean in[] = new boolean[m_nstates];
+	    StringBuffer states = new StringBuffer();
 
-	    if (m_lexGen.L == m_spec.m_current_token &&
-		Character.isLetter(m_spec.m_lexeme)) 
-	      {
-		isAlphaL = true;
-	      } 
-	    else 
+	    for (int s = 0; s < m_nstates; ++s)
 	      {
-		isAlphaL = false;
+		if (m_spec.m_unbounded[s] && component[s] == c)
+		  {
+		    in[s] = true;
+		    states.append(0 == states.length() ? "" : ", ").append(s);
+		  }
 	      }
-	    if (false == (m_lexGen.ANY == m_spec.m_current_token
-			  || m_lexGen.CCL_START == m_spec.m_current_token
-			  || (m_spec.m_ignorecase && isAlphaL)))
+	    if (0 == states.length())
 	      {
-		start.m_edge = m_spec.m_lexeme;
-		m_lexGen.advance();
+		continue;
 	      }
-	    else
-	      {
-		start.m_edge = CNfa.CCL;
-		
-		start.m_set = new CSet();
 
-		/* Match case-insensitive letters using character class. */
-		if (m_spec.m_ignorecase && isAlphaL) 
+	    /* matches that lead into the component, and out of it */
+	    boolean into[] = reverse_closure(in);
+	    SparseBitSet before = new SparseBitSet();
+	    SparseBitSet after = new SparseBitSet();
+	    for (int s = 0; s < m_nstates; ++s)
+	      {
+		if (false == into[s])
 		  {
-		    start.m_set.addncase(m_spec.m_lexeme);
+		    continue;
 		  }
-		/* Match dot (.) using character class. */
-		else if (m_lexGen.ANY == m_spec.m_current_token)
+		for (int e = m_pred_start[s]; e < m_pred_start[s + 1]; ++e)
 		  {
-		    start.m_set.add('\n');
-		    start.m_set.add('\r');
-		    // CSA: exclude BOL and EOF from character classes
-		    start.m_set.add(m_spec.BOL);
-		    start.m_set.add(m_spec.EOF);
-		    start.m_set.complement();
+		    if (m_accepting[m_pred[e]])
+		      {
+			before.set(rule_line(m_pred[e]));
+		      }
 		  }
-		else
+	      }
+	    boolean from[] = forward_closure(in);
+	    for (int s = 0; s < m_nstates; ++s)
+	      {
+		if (from[s])
 		  {
-		    m_lexGen.advance();
-		    if (m_lexGen.AT_BOL == m_spec.m_current_token)
-		      {
-			m_lexGen.advance();
+		    int dtrans[] = row(s);
 
-			// CSA: exclude BOL and EOF from character classes
-			start.m_set.add(m_spec.BOL);
-			start.m_set.add(m_spec.EOF);
-			start.m_set.complement();
-		      }
-		    if (false == (m_lexGen.CCL_END == m_spec.m_current_token))
-		      {
-			dodash(start.m_set);
-		      }
-		    /*else
+		    for (int i = 0; i < m_cols.length; ++i)
 		      {
-			for (c = 0; c <= ' '; ++c)
+			int next = dtrans[m_cols[i]];
+
+			if (CDTrans.F != next && m_accepting[next])
 			  {
-			    start.m_set.add((byte) c);
+			    after.set(rule_line(next));
 			  }
-		      }*/
+		      }
 		  }
-		m_lexGen.advance();
 	      }
-	  }
 
-	if (CUtility.DESCENT_DEBUG)
-	  {
-	    CUtility.leave("term",m_spec.m_lexeme,m_spec.m_current_token);
+	    System.out.println("  DFA state" + (-1 == states.indexOf(",") ? " " : "s ")
+			       + states + ": after the " + lines(before)
+			       + ", on the way to the " + lines(after));
 	  }
       }
 
   /***************************************************************
-    Function: dodash
-    Description: Recursive descent regular expression parser.
+    Function: forward_closure
+    Description: Returns the m_after states that can be reached
+    from the given ones through m_after states.
     **************************************************************/
-  private void dodash
+  private boolean[] forward_closure
     (
-     CSet set
+     boolean from[]
      )
-      throws java.io.IOException 
-	{
-	  int first = -1;
-	  
-	  if (CUtility.DESCENT_DEBUG)
-	    {
-	      CUtility.enter("dodash",m_spec.m_lexeme,m_spec.m_current_token);
-	    }
-	  
-	  while (m_lexGen.EOS != m_spec.m_current_token 
-		 && m_lexGen.CCL_END != m_spec.m_current_token)
-	    {
-	      // DASH loses its special meaning if it is first in class.
-	      if (m_lexGen.DASH == m_spec.m_current_token && -1 != first)
-		{
-		  m_lexGen.advance();
-		  // DASH loses its special meaning if it is last in class.
-		  if (m_spec.m_current_token == m_lexGen.CCL_END)
-		    {
-		      // 'first' already in set.
-		      set.add('-');
-		      break;
-		    }
-		  for ( ; first <= m_spec.m_lexeme; ++first)
-		    {
-		      if (m_spec.m_ignorecase) 
-			set.addncase((char)first);
-		      else
-			set.add(first);
-		    }  
-		}
-	      else
-		{
-		  first = m_spec.m_lexeme;
-		  if (m_spec.m_ignorecase)
-		    set.addncase(m_spec.m_lexeme);
-		  else
-		    set.add(m_spec.m_lexeme);
-		}
+      {
+	boolean reached[] = new boolean[m_nstates];
+	int work[] = new int[m_nstates];
+	int count = 0;
 
-	      m_lexGen.advance();
-	    }
-	  
-	if (CUtility.DESCENT_DEBUG)
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    CUtility.leave("dodash",m_spec.m_lexeme,m_spec.m_current_token);
+	    if (from[s])
+	      {
+		reached[s] = true;
+		work[count++] = s;
+	      }
+	  }
+	while (0 < count)
+	  {
+	    int s = work[--count];
+
+	    for (int e = m_succ_start[s]; e < m_succ_start[s + 1]; ++e)
+	      {
+		if (false == reached[m_succ[e]])
+		  {
+		    reached[m_succ[e]] = true;
+		    work[count++] = m_succ[e];
+		  }
+	      }
 	  }
+	return reached;
       }
-}
 
-/**
- * Extract character classes from NFA and simplify.
- * @author C. Scott Ananian 25-Jul-1999
- */
-class CSimplifyNfa
-{
-  private int[] ccls; // character class mapping.
-  private int original_charset_size; // original charset size
-  private int mapped_charset_size; // reduced charset size
+  /***************************************************************
+    Function: rule_line
+    Description: The line of the specification of the rule that
+    an accepting state matches.
+    **************************************************************/
+  private int rule_line
+    (
+     int state
+     )
+      {
+	return ((CAccept) m_spec.m_accept_vector.elementAt(state)).m_line_number;
+      }
 
-  void simplify(CSpec m_spec) {
-    computeClasses(m_spec); // initialize fields.
-    
-    // now rewrite the NFA using our character class mapping.
-    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
-      CNfa nfa = (CNfa) e.nextElement();
-      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
-	continue; // no change.
-      if (nfa.m_edge==CNfa.CCL) {
-	CSet ncset = new CSet();
-	ncset.map(nfa.m_set, ccls); // map it.
-	nfa.m_set = ncset;
-      } else { // single character
-	nfa.m_edge = ccls[nfa.m_edge]; // map it.
+  /***************************************************************
+    Function: states
+    Description: "1 DFA state" or "n DFA states".
+    **************************************************************/
+  private static String states
+    (
+     int count
+     )
+      {
+	return count + (1 == count ? " DFA state" : " DFA states");
       }
-    }
 
-    // now update m_spec with the mapping.
-    m_spec.m_ccls_map = ccls;
-    m_spec.m_dtrans_ncols = mapped_charset_size;
-  }
-  /** Compute minimum set of character classes needed to disambiguate
-   *  edges.  We optimistically assume that every character belongs to
-   *  a single character class, and then incrementally split classes
-   *  as we see edges that require discrimination between characters in
-   *  the class. [CSA, 25-Jul-1999] */
-  private void computeClasses(CSpec m_spec) {
-    this.original_charset_size = m_spec.m_dtrans_ncols;
-    this.ccls = new int[original_charset_size]; // initially all zero.
+  /***************************************************************
+    Function: lines
+    Description: "rule at line n" or "rules at lines n, m, ...".
+    **************************************************************/
+  private static String lines
+    (
+     SparseBitSet set
+     )
+      {
+	StringBuffer buf = new StringBuffer();
+	int count = 0;
 
-    int nextcls = 1;
-    SparseBitSet clsA = new SparseBitSet(), clsB = new SparseBitSet();
-    Hashtable h = new Hashtable();
-    
-    System.out.print("Working on character classes.");
-    for (Enumeration e=m_spec.m_nfa_states.elements(); e.hasMoreElements(); ) {
-      CNfa nfa = (CNfa) e.nextElement();
-      if (nfa.m_edge==CNfa.EMPTY || nfa.m_edge==CNfa.EPSILON)
-	continue; // no discriminatory information.
-      clsA.clearAll(); clsB.clearAll();
-      for (int i=0; i<ccls.length; i++)
-	if (nfa.m_edge==i || // edge labeled with a character
-	    nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) // set of characters
-	  clsA.set(ccls[i]);
-	else
-	  clsB.set(ccls[i]);
-      // now figure out which character classes we need to split.
-      clsA.and(clsB); // split the classes which show up on both sides of edge
-      System.out.print(clsA.size()==0?".":":");
-      if (clsA.size()==0) continue; // nothing to do.
-      // and split them.
-      h.clear(); // h will map old to new class name
-      for (int i=0; i<ccls.length; i++)
-	if (clsA.get(ccls[i])) // a split class
-	  if (nfa.m_edge==i ||
-	      nfa.m_edge==CNfa.CCL && nfa.m_set.contains(i)) { // on A side
-	    Integer split = new Integer(ccls[i]);
-	    if (!h.containsKey(split))
-	      h.put(split, new Integer(nextcls++)); // make new class
-	    ccls[i] = ((Integer)h.get(split)).intValue();
-	  }
-    }
-    System.out.println();
-    System.out.println("NFA has "+nextcls+" distinct character classes.");
-    
-    this.mapped_charset_size = nextcls;
-  }
+	for (Enumeration<Integer> e = set.elements(); e.hasMoreElements();
+	     ++count)
+	  {
+	    buf.append(0 == count ? "" : ", ").append(e.nextElement());
+	  }
+	return (1 == count ? "rule at line " : "rules at lines ") + buf;
+      }
 }
 
 /***************************************************************
-  Class: CMinimize
+  Class: CProfile
+  Description: Renumbers the states of the minimized DFA by how
+  often a sample input (the -profile option) enters them, the
+  hottest first, so that the rows of the states a typical input
+  keeps going through are next to each other in the tables (see
+  CEmit.emit_flat_table).  The sample is scanned the way the lexer
+  would scan it in YYINITIAL, longest match first, backing up to
+  the last accepting state, but without running any actions (or
+  %skip code) and so without changing lexical state; a character
+  that matches nothing is stepped over.  The distinct rows are then
+  renumbered in the order the states first use them.  Only the
+  numbering changes; the lexer does the same as before.
  **************************************************************/
-class CMinimize
+class CProfile
 {
   /***************************************************************
     Member Variables
     **************************************************************/
-  CSpec m_spec;
-  Vector m_group;
-  int m_ingroup[];
+  private CSpec m_spec;
+  private int m_nstates;
+  private long m_visits[]; /* Times each state was entered. */
+  private long m_steps; /* Transitions taken. */
+  private long m_matches;
 
   /***************************************************************
-    Function: CMinimize
-    Description: Constructor.
+    Function: reorder
+    Description: Scans the file sample, read as UTF-8 (as the
+    whole-input constructors decode their bytes), and renumbers the
+    states of spec.  If sample cannot be read, that is reported and
+    the states are left as they are.
     **************************************************************/
-  CMinimize 
+  void reorder
     (
+     CSpec spec,
+     String sample
      )
       {
-	reset();
+	char text[];
+
+	try
+	  {
+	    java.io.Reader in = new java.io.InputStreamReader(
+		new java.io.FileInputStream(sample),
+		java.nio.charset.StandardCharsets.UTF_8);
+	    java.io.CharArrayWriter buf = new java.io.CharArrayWriter();
+	    char chunk[] = new char[8192];
+	    int n;
+
+	    while (-1 != (n = in.read(chunk)))
+	      {
+		buf.write(chunk, 0, n);
+	      }
+	    in.close();
+	    text = buf.toCharArray();
+	  }
+	catch (java.io.IOException e)
+	  {
+	    System.out.println("Warning: not using the profile: " + e);
+	    return;
+	  }
+
+	m_spec = spec;
+	m_nstates = spec.m_row_map.length;
+	m_visits = new long[m_nstates];
+	m_steps = 0;
+	m_matches = 0;
+	scan(text);
+
+	int order[] = order();
+	renumber(order);
+
+	if (spec.m_verbose)
+	  {
+	    report(text.length, order);
+	  }
       }
-  
+
   /***************************************************************
-    Function: reset
-    Description: Resets member variables.
+    Function: scan
+    Description: Counts the states entered in scanning text.
     **************************************************************/
-  private void reset
+  private void scan
     (
+     char text[]
      )
       {
-	m_spec = null;
-	m_group = null;
-	m_ingroup = null;
+	int start = m_spec.m_state_dtrans[0];
+	int bol_col = m_spec.m_col_map[m_spec.m_ccls_map[m_spec.BOL]];
+	int pos = 0;
+
+	if (CDTrans.F == start)
+	  {
+	    return;
+	  }
+	while (pos < text.length)
+	  {
+	    int state = start;
+	    int last_end = -1;
+	    int i = pos;
+
+	    ++m_visits[state];
+	    if (0 == pos || '\n' == text[pos - 1] || '\r' == text[pos - 1])
+	      {
+		int next = row(state)[bol_col];
+
+		if (CDTrans.F != next)
+		  {
+		    state = enter(next);
+		  }
+	      }
+	    if (accepting(state))
+	      {
+		last_end = i;
+	      }
+
+	    while (i < text.length)
+	      {
+		int next = CDTrans.F;
+
+		if (text[i] < m_spec.m_ccls_map.length)
+		  {
+		    next = row(state)[m_spec.m_col_map[m_spec.m_ccls_map[text[i]]]];
+		  }
+		if (CDTrans.F == next)
+		  {
+		    break;
+		  }
+		state = enter(next);
+		++i;
+		if (accepting(state))
+		  {
+		    last_end = i;
+		  }
+	      }
+
+	    if (last_end > pos)
+	      {
+		++m_matches;
+		pos = last_end;
+	      }
+	    else
+	      {
+		++pos;
+	      }
+	  }
       }
 
   /***************************************************************
-    Function: set
-    Description: Sets member variables.
+    Function: enter
     **************************************************************/
-  private void set
+  private int enter
     (
-     CSpec spec
+     int state
      )
       {
-	if (CUtility.DEBUG)
-	  {
-	    CUtility.ASSERT(null != spec);
-	  }
+	++m_visits[state];
+	++m_steps;
+	return state;
+      }
 
-	m_spec = spec;
-	m_group = null;
-	m_ingroup = null;
+  /***************************************************************
+    Function: row
+    **************************************************************/
+  private int[] row
+    (
+     int state
+     )
+      {
+	return ((CDTrans) m_spec.m_dtrans_vector.elementAt(
+	    m_spec.m_row_map[state])).m_dtrans;
       }
 
   /***************************************************************
-    Function: min_dfa
-    Description: High-level access function to module.
+    Function: accepting
     **************************************************************/
-  void min_dfa
+  private boolean accepting
     (
-     CSpec spec
+     int state
      )
       {
-	set(spec);
+	return null != m_spec.m_accept_vector.elementAt(state);
+      }
 
-	/* Remove redundant states. */
-	minimize();
+  /***************************************************************
+    Function: order
+    Description: Returns the states, most often entered first;
+    states entered as often (or never) keep their order.
+    **************************************************************/
+  private int[] order
+    (
+     )
+      {
+	Integer sorted[] = new Integer[m_nstates];
+	int order[] = new int[m_nstates];
 
-	/* Column and row compression. 
-	   Save accept states in auxilary vector. */
-	reduce();
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    sorted[s] = Integer.valueOf(s);
+	  }
+	Arrays.sort(sorted, new java.util.Comparator<Integer>()
+	  {
+	    public int compare(Integer a, Integer b)
+	      {
+		long va = m_visits[a.intValue()];
+		long vb = m_visits[b.intValue()];
 
-	reset();
+		return va > vb ? -1 : (va < vb ? 1 : 0);
+	      }
+	  });
+	for (int s = 0; s < m_nstates; ++s)
+	  {
+	    order[s] = sorted[s].intValue();
+	  }
+	return order;
       }
 
   /***************************************************************
-    Function: col_copy
-    Description: Copies source column into destination column.
+    Function: renumber
+    Description: Makes order[k] state k, and numbers the distinct
+    rows in the order the states first use them.
     **************************************************************/
-  private void col_copy
+  private void renumber
     (
-     int dest,
-     int src
+     int order[]
      )
       {
-	int n;
-	int i;
-	CDTrans dtrans;
+	int nrows = m_spec.m_dtrans_vector.size();
+	int new_state[] = new int[m_nstates];
+	int new_row[] = new int[nrows];
+	int row_map[] = new int[m_nstates];
+	int anchor[] = new int[m_nstates];
+	Vector accept = new Vector(m_nstates);
+	Vector rows = new Vector(nrows);
+	int s;
 
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
+	for (s = 0; s < m_nstates; ++s)
 	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    dtrans.m_dtrans[dest] = dtrans.m_dtrans[src]; 
+	    new_state[order[s]] = s;
 	  }
-      }	
-	
+
+	Arrays.fill(new_row, -1);
+	for (s = 0; s < m_nstates; ++s)
+	  {
+	    int old = order[s];
+	    int r = m_spec.m_row_map[old];
+
+	    if (-1 == new_row[r])
+	      {
+		new_row[r] = rows.size();
+		rows.addElement(m_spec.m_dtrans_vector.elementAt(r));
+	      }
+	    row_map[s] = new_row[r];
+	    anchor[s] = m_spec.m_anchor_array[old];
+	    accept.addElement(m_spec.m_accept_vector.elementAt(old));
+	  }
+	/* rows no state uses, if any, go last */
+	for (int r = 0; r < nrows; ++r)
+	  {
+	    if (-1 == new_row[r])
+	      {
+		new_row[r] = rows.size();
+		rows.addElement(m_spec.m_dtrans_vector.elementAt(r));
+	      }
+	  }
+
+	for (int r = 0; r < nrows; ++r)
+	  {
+	    CDTrans dtrans = (CDTrans) rows.elementAt(r);
+
+	    dtrans.m_label = r;
+	    for (int c = 0; c < dtrans.m_dtrans.length; ++c)
+	      {
+		if (CDTrans.F != dtrans.m_dtrans[c])
+		  {
+		    dtrans.m_dtrans[c] = new_state[dtrans.m_dtrans[c]];
+		  }
+	      }
+	  }
+	for (int i = 0; i < m_spec.m_state_dtrans.length; ++i)
+	  {
+	    if (CDTrans.F != m_spec.m_state_dtrans[i])
+	      {
+		m_spec.m_state_dtrans[i] = new_state[m_spec.m_state_dtrans[i]];
+	      }
+	  }
+
+	m_spec.m_dtrans_vector = rows;
+	m_spec.m_row_map = row_map;
+	m_spec.m_anchor_array = anchor;
+	m_spec.m_accept_vector = accept;
+      }
+
   /***************************************************************
-    Function: trunc_col
-    Description: Truncates each column to the 'correct' length.
+    Function: report
+    Description: Prints what the sample did, and how many of the
+    hottest states took nine tenths of its transitions.
     **************************************************************/
-  private void trunc_col
+  private void report
     (
+     int length,
+     int order[]
      )
       {
-	int n;
-	int i;
-	CDTrans dtrans;
+	long total = 0;
+	long sum = 0;
+	int visited = 0;
+	int hot = 0;
 
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
+	for (int s = 0; s < m_nstates; ++s)
 	  {
-	    int[] ndtrans = new int[m_spec.m_dtrans_ncols];
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    System.arraycopy(dtrans.m_dtrans, 0, ndtrans, 0, ndtrans.length);
-	    dtrans.m_dtrans = ndtrans;
+	    total += m_visits[s];
+	    if (0 != m_visits[s])
+	      {
+		++visited;
+	      }
+	  }
+	while (hot < m_nstates && 10 * sum < 9 * total)
+	  {
+	    sum += m_visits[order[hot++]];
 	  }
+
+	System.out.println("Profile: " + length + " characters, "
+			   + m_matches + " matches, " + m_steps
+			   + " transitions; " + visited + " of " + m_nstates
+			   + " states entered, 90% of the time in the first "
+			   + hot + ".");
       }
+}
+
+/***************************************************************
+  Class: CNfa2Dfa
+  Description: Subset construction.  The NFA is first copied out
+  of its CNfa objects into arrays indexed by label.  Each lexical
+  state's DFA is then built on its own (see CStateDfa), those of
+  different lexical states at the same time on a fork/join pool,
+  and they are merged into the arrays in CSpec (m_dfa_next,
+  m_dfa_accept, m_dfa_anchor) that CMinimize works on.
+ **************************************************************/
+class CNfa2Dfa
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  private CSpec m_spec;
+  private CLexGen m_lexGen;
+
+  /* The NFA, indexed by label (see init_nfa_tables); only read
+     once the CStateDfas start. */
+  int m_nfa_next[];      /* target of the character edge, or -1 */
+  int m_nfa_eps[];       /* epsilon targets, two per state, or -1 */
+  int m_cols_start[];    /* the character edge of state s has */
+  int m_cols[];          /* classes m_cols[m_cols_start[s] ..
+			    m_cols_start[s + 1] - 1] */
+  CAccept m_nfa_accept[];
+  private int m_nfa_anchor[];
+  private int m_nfa_rules[][];   /* start states of each lexical state */
+
+  /* The merged DFA states' NFA sets, and a hash table of the states
+     keyed by set: an entry is a state plus one, or zero for an empty
+     slot. */
+  private int m_sets[][];
+  private int m_set_hash[];
+  private int m_table[];
+
   /***************************************************************
-    Function: row_copy
-    Description: Copies source row into destination row.
+    Function: CNfa2Dfa
     **************************************************************/
-  private void row_copy
+  CNfa2Dfa
     (
-     int dest,
-     int src
      )
       {
-	CDTrans dtrans;
+	reset();
+      }
 
-	dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(src);
-	m_spec.m_dtrans_vector.setElementAt(dtrans,dest); 
-      }	
-	
   /***************************************************************
-    Function: col_equiv
+    Function: set 
     Description: 
     **************************************************************/
-  private boolean col_equiv
+  private void set
     (
-     int col1,
-     int col2
+     CLexGen lexGen,
+     CSpec spec
      )
       {
-	int n;
-	int i;
-	CDTrans dtrans;
-
-	n = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < n; ++i)
-	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    if (dtrans.m_dtrans[col1] != dtrans.m_dtrans[col2]) 
-	      {
-		return false;
-	      }
-	  }
-	
-	return true;
+	m_lexGen = lexGen;
+	m_spec = spec;
       }
 
   /***************************************************************
-    Function: row_equiv
+    Function: reset 
     Description: 
     **************************************************************/
-  private boolean row_equiv
+  private void reset
     (
-     int row1,
-     int row2
      )
       {
-	int i;
-	CDTrans dtrans1;
-	CDTrans dtrans2;
-
-	dtrans1 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row1);
-	dtrans2 = (CDTrans) m_spec.m_dtrans_vector.elementAt(row2);
-	
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-	  {
-	    if (dtrans1.m_dtrans[i] != dtrans2.m_dtrans[i]) 
-	      {
-		return false;
-	      }
-	  }
-	
-	return true;
+	m_lexGen = null;
+	m_spec = null;
       }
 
   /***************************************************************
-    Function: reduce
-    Description: 
+    Function: make_dfa
+    Description: High-level access function to module.
     **************************************************************/
-  private void reduce
+  void make_dfa
     (
+     CLexGen lexGen,
+     CSpec spec
      )
       {
-	int i;
-	int j;
-	int k;
-	int nrows;
-	int reduced_ncols;
-	int reduced_nrows;
-	SparseBitSet set;
-	CDTrans dtrans;
-	int size;
+	reset();
+	set(lexGen,spec);
 
-	set = new SparseBitSet();
-	
-	/* Save accept nodes and anchor entries. */
-	size = m_spec.m_dtrans_vector.size();
-	m_spec.m_anchor_array = new int[size];
-	m_spec.m_accept_vector = new Vector();
-	for (i = 0; i < size; ++i)
+	init_nfa_tables();
+	free_nfa_states();
+
+	make_dtrans();
+
+	if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
 	  {
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
-	    m_spec.m_accept_vector.addElement(dtrans.m_accept);
-	    m_spec.m_anchor_array[i] = dtrans.m_anchor;
-	    dtrans.m_accept = null;
+	    System.out.println(m_spec.m_dfa_count
+			       + " DFA states in original machine.");
 	  }
+
+	free_tables();
+      }     
+
+   /***************************************************************
+    Function: make_dtrans
+    Description: Creates the uncompressed transition table.
+    DFA states are numbered in the order they are found: the start
+    state of each lexical state, then, breadth first, the targets
+    of each DFA state's transitions in character class order.  A
+    state found from an earlier lexical state is not found again.
+    **************************************************************/
+  private void make_dtrans
+    (
+     )
+      {
+	CStateDfa dfas[];
+	int istate;
+	int nstates;
 	
-	/* Allocate column map. */
-	m_spec.m_col_map = new int[m_spec.m_dtrans_ncols];
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
+	System.out.print("Working on DFA states.");
+
+	/* Each lexical state's DFA, numbered from its start state in
+	   the same order, is made on its own. */
+	nstates = m_nfa_rules.length;
+	dfas = new CStateDfa[nstates];
+	for (istate = 0; istate < nstates; ++istate)
+	  {
+	    dfas[istate] = new CStateDfa(this,m_nfa_rules[istate],
+					 m_spec.m_dtrans_ncols);
+	  }
+	if (1 < nstates)
+	  {
+	    ForkJoinTask.invokeAll(dfas);
+	  }
+	else
+	  {
+	    for (istate = 0; istate < nstates; ++istate)
+	      {
+		dfas[istate].invoke();
+	      }
+	  }
+
+	/* Merge them in order, as if they had been made one after the
+	   other into the one table. */
+	init_dfa_tables();
+	m_spec.m_state_dtrans = new int[nstates];
+	for (istate = 0; istate < nstates; ++istate)
 	  {
-	    m_spec.m_col_map[i] = -1;
+	    m_spec.m_state_dtrans[istate] = merge(dfas[istate]);
+	    dfas[istate] = null;
 	  }
 
-	/* Process columns for reduction. */
-	for (reduced_ncols = 0; ; ++reduced_ncols)
-	  {
-	    if (CUtility.DEBUG)
-	      {
-		for (i = 0; i < reduced_ncols; ++i)
-		  {
-		    CUtility.ASSERT(-1 != m_spec.m_col_map[i]);
-		  }
-	      }
+	System.out.println();
 
-	    for (i = reduced_ncols; i < m_spec.m_dtrans_ncols; ++i)
-	      {
-		if (-1 == m_spec.m_col_map[i])
-		  {
-		    break;
-		  }
-	      }
+	/* Drop the room left to grow. */
+	m_spec.m_dfa_next = Arrays.copyOf(m_spec.m_dfa_next,
+					  m_spec.m_dfa_count 
+					  * m_spec.m_dtrans_ncols);
+      }
 
-	    if (i >= m_spec.m_dtrans_ncols)
-	      {
-		break;
-	      }
+  /***************************************************************
+    Function: merge
+    Description: Adds the states of one lexical state's DFA to
+    those of CSpec, and returns the one its start state became.
+    
+    The start state is always a new state, even if another lexical
+    state has the same one; the others are worked on in the order
+    they are added, and each transition goes to the DFA state with
+    the same NFA set, added if there is none yet.  This gives the
+    numbering of one subset construction running through the
+    lexical states in turn.
+    **************************************************************/
+  private int merge
+    (
+     CStateDfa dfa
+     )
+      {
+	int ncols = m_spec.m_dtrans_ncols;
+	int global[];   /* dfa's states as merged, or -1 */
+	int order[];    /* dfa's states in the order they were added */
+	int added;
+	int done;
+	int start;
 
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(false == set.get(i));
-		CUtility.ASSERT(-1 == m_spec.m_col_map[i]);
-	      }
+	global = new int[dfa.m_count];
+	Arrays.fill(global, -1);
+	order = new int[dfa.m_count];
 
-	    set.set(i);
-	    
-	    m_spec.m_col_map[i] = reduced_ncols;
-	    
-	    /* UNDONE: Optimize by doing all comparisons in one batch. */
-	    for (j = i + 1; j < m_spec.m_dtrans_ncols; ++j)
+	start = add_to_dstates(dfa,0);
+	global[0] = start;
+	order[0] = 0;
+	added = 1;
+
+	for (done = 0; done < added; ++done)
+	  {
+	    int local = order[done];
+	    int row = global[local] * ncols;
+
+	    System.out.print(".");
+	    System.out.flush();
+
+	    if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
 	      {
-		if (-1 == m_spec.m_col_map[j] && true == col_equiv(i,j))
-		  {
-		    m_spec.m_col_map[j] = reduced_ncols;
-		  }
+		System.out.println("---------------");
+		System.out.print("working on DFA state " 
+				 + global[local]
+				 + " = NFA states: ");
+		System.out.println(Arrays.toString(dfa.m_sets[local]));
 	      }
-	  }
 
-	/* Reduce columns. */
-	k = 0;
-	for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-	  {
-	    if (set.get(i))
+	    for (int i = 0; i < ncols; ++i)
 	      {
-		++k;
+		int next = dfa.m_next[local * ncols + i];
 
-		set.clear(i);
-		
-		j = m_spec.m_col_map[i];
-		
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(j <= i);
-		  }
-		
-		if (j == i)
+		if (CDTrans.F != next && -1 == global[next])
 		  {
-		    continue;
+		    int slot = find_slot(dfa.m_sets[next],dfa.m_set_hash[next]);
+
+		    if (0 != m_table[slot])
+		      {
+			global[next] = m_table[slot] - 1;
+		      }
+		    else
+		      {
+			global[next] = add_to_dstates(dfa,next);
+			order[added++] = next;
+		      }
 		  }
-		
-		col_copy(j,i);
+		m_spec.m_dfa_next[row + i] 
+		  = (CDTrans.F == next) ? CDTrans.F : global[next];
 	      }
 	  }
-	m_spec.m_dtrans_ncols = reduced_ncols;
-	/* truncate m_dtrans at proper length (freeing extra) */
-	trunc_col();
 
-	if (CUtility.DEBUG)
-	  {
-	    CUtility.ASSERT(k == reduced_ncols);
-	  }
+	return start;
+      }
 
-	/* Allocate row map. */
-	nrows = m_spec.m_dtrans_vector.size();
-	m_spec.m_row_map = new int[nrows];
-	for (i = 0; i < nrows; ++i)
-	  {
-	    m_spec.m_row_map[i] = -1;
-	  }
+  /***************************************************************
+    Function: init_nfa_tables
+    Description: Copies the NFA out of the CNfa objects into the 
+    per-label arrays.
+    **************************************************************/
+  private void init_nfa_tables
+    (
+     )
+      {
+	int size = m_spec.m_nfa_states.size();
+	int ncols = m_spec.m_dtrans_ncols;
+	int ncols_total = 0;
+	int label;
+	int col;
+
+	m_nfa_next = new int[size];
+	m_nfa_eps = new int[2 * size];
+	m_cols_start = new int[size + 1];
+	m_cols = new int[size];
+	m_nfa_accept = new CAccept[size];
+	m_nfa_anchor = new int[size];
+	for (label = 0; label < size; ++label)
+	  {
+	    CNfa nfa = (CNfa) m_spec.m_nfa_states.elementAt(label);
 
-	/* Process rows to reduce. */
-	for (reduced_nrows = 0; ; ++reduced_nrows)
-	  {
 	    if (CUtility.DEBUG)
 	      {
-		for (i = 0; i < reduced_nrows; ++i)
-		  {
-		    CUtility.ASSERT(-1 != m_spec.m_row_map[i]);
-		  }
+		CUtility.ASSERT(label == nfa.m_label);
 	      }
 
-	    for (i = reduced_nrows; i < nrows; ++i)
+	    m_nfa_accept[label] = nfa.m_accept;
+	    m_nfa_anchor[label] = nfa.m_anchor;
+	    m_nfa_next[label] = -1;
+	    m_nfa_eps[2 * label] = -1;
+	    m_nfa_eps[2 * label + 1] = -1;
+	    m_cols_start[label] = ncols_total;
+	    if (CNfa.EPSILON == nfa.m_edge)
 	      {
-		if (-1 == m_spec.m_row_map[i])
+		if (null != nfa.m_next)
 		  {
-		    break;
+		    m_nfa_eps[2 * label] = nfa.m_next.m_label;
+		  }
+		if (null != nfa.m_next2)
+		  {
+		    m_nfa_eps[2 * label + 1] = nfa.m_next2.m_label;
 		  }
 	      }
-
-	    if (i >= nrows)
-	      {
-		break;
-	      }
-
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(false == set.get(i));
-		CUtility.ASSERT(-1 == m_spec.m_row_map[i]);
-	      }
-
-	    set.set(i);
-
-	    m_spec.m_row_map[i] = reduced_nrows;
-	    
-	    /* UNDONE: Optimize by doing all comparisons in one batch. */
-	    for (j = i + 1; j < nrows; ++j)
+	    else if (CNfa.CCL == nfa.m_edge || 0 <= nfa.m_edge)
 	      {
-		if (-1 == m_spec.m_row_map[j] && true == row_equiv(i,j))
+		m_nfa_next[label] = nfa.m_next.m_label;
+		for (col = 0; col < ncols; ++col)
 		  {
-		    m_spec.m_row_map[j] = reduced_nrows;
+		    if (col == nfa.m_edge 
+			|| (CNfa.CCL == nfa.m_edge && nfa.m_set.contains(col)))
+		      {
+			if (ncols_total == m_cols.length)
+			  {
+			    m_cols = Arrays.copyOf(m_cols, 2 * ncols_total);
+			  }
+			m_cols[ncols_total++] = col;
+		      }
 		  }
 	      }
 	  }
+	m_cols_start[size] = ncols_total;
 
-	/* Reduce rows. */
-	k = 0;
-	for (i = 0; i < nrows; ++i)
+	m_nfa_rules = new int[m_spec.m_state_rules.length][];
+	for (int istate = 0; istate < m_nfa_rules.length; ++istate)
 	  {
-	    if (set.get(i))
-	      {
-		++k;
+	    Vector rules = m_spec.m_state_rules[istate];
 
-		set.clear(i);
-		
-		j = m_spec.m_row_map[i];
-		
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(j <= i);
-		  }
-		
-		if (j == i)
-		  {
-		    continue;
-		  }
-		
-		row_copy(j,i);
+	    m_nfa_rules[istate] = new int[rules.size()];
+	    for (int i = 0; i < rules.size(); ++i)
+	      {
+		m_nfa_rules[istate][i] = ((CNfa) rules.elementAt(i)).m_label;
 	      }
 	  }
-	m_spec.m_dtrans_vector.setSize(reduced_nrows);
+      }
 
-	if (CUtility.DEBUG)
-	  {
-	    /*System.out.println("k = " + k + "\nreduced_nrows = " + reduced_nrows + "");*/
-	    CUtility.ASSERT(k == reduced_nrows);
-	  }
+  /***************************************************************
+    Function: init_dfa_tables
+    Description: Allocates the DFA in CSpec, with room to grow,
+    and the table of NFA sets.
+    **************************************************************/
+  private void init_dfa_tables
+    (
+     )
+      {
+	int capacity = 64;
+
+	m_spec.m_dfa_count = 0;
+	m_spec.m_dfa_next = new int[capacity * m_spec.m_dtrans_ncols];
+	m_spec.m_dfa_accept = new CAccept[capacity];
+	m_spec.m_dfa_anchor = new int[capacity];
+	m_sets = new int[capacity][];
+	m_set_hash = new int[capacity];
+	m_table = new int[2 * capacity];
       }
 
   /***************************************************************
-    Function: fix_dtrans
-    Description: Updates CDTrans table after minimization 
-    using groups, removing redundant transition table states.
+    Function: free_tables
     **************************************************************/
-  private void fix_dtrans
+  private void free_tables
     (
      )
       {
-	Vector new_vector;
-	int i;
-	int size;
-	Vector dtrans_group;
-	CDTrans first;
-	int c;
+	m_nfa_next = null;
+	m_nfa_eps = null;
+	m_cols_start = null;
+	m_cols = null;
+	m_nfa_accept = null;
+	m_nfa_anchor = null;
+	m_nfa_rules = null;
+	m_sets = null;
+	m_set_hash = null;
+	m_table = null;
+      }
 
-	new_vector = new Vector();
+  /***************************************************************
+    Function: free_nfa_states
+    **************************************************************/  
+  private void free_nfa_states
+    (
+     )
+      {
+	/* UNDONE: Remove references to nfas from within dfas. */
+	/* UNDONE: Don't free CAccepts. */
 
-	size = m_spec.m_state_dtrans.length;
-	for (i = 0; i < size; ++i)
-	  {
-	    if (CDTrans.F != m_spec.m_state_dtrans[i])
-	      {
-		m_spec.m_state_dtrans[i] = m_ingroup[m_spec.m_state_dtrans[i]];
-	      }
-	  }
+	m_spec.m_nfa_states = null;
+	m_spec.m_nfa_start = null;
+	m_spec.m_state_rules = null;
+      }
 
-	size = m_group.size();
-	for (i = 0; i < size; ++i)
+  /***************************************************************
+    Function: find_slot
+    Description: Returns the slot of m_table that holds the DFA 
+    state with the given NFA set, or else the empty slot where it
+    would go.
+    **************************************************************/
+  private int find_slot
+    (
+     int labels[],
+     int hash
+     )
+      {
+	int mask = m_table.length - 1;
+	int slot;
+
+	for (slot = hash & mask; ; slot = (slot + 1) & mask)
 	  {
-	    dtrans_group = (Vector) m_group.elementAt(i);
-	    first = (CDTrans) dtrans_group.elementAt(0);
-	    new_vector.addElement(first);
+	    int state = m_table[slot] - 1;
 
-	    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
+	    if (-1 == state
+		|| (m_set_hash[state] == hash 
+		    && Arrays.equals(m_sets[state], labels)))
 	      {
-		if (CDTrans.F != first.m_dtrans[c])
-		  {
-		    first.m_dtrans[c] = m_ingroup[first.m_dtrans[c]];
-		  }
+		return slot;
 	      }
 	  }
-
-	m_group = null;
-	m_spec.m_dtrans_vector = new_vector;
       }
 
   /***************************************************************
-    Function: minimize
-    Description: Removes redundant transition table states.
+    function: add_to_dstates
+    Description: Adds a DFA state for state local of dfa, with the
+    accepting action of its lowest accepting NFA state, and returns
+    it.  The state takes the place of any other with the same set
+    in m_table.
     **************************************************************/
-  private void minimize
+  private int add_to_dstates
     (
+     CStateDfa dfa,
+     int local
      )
       {
-	Vector dtrans_group;
-	Vector new_group;
-	int i;
-	int j;
-	int old_group_count;
-	int group_count;
-	CDTrans next;
-	CDTrans first;
-	int goto_first;
-	int goto_next;
-	int c;
-	int group_size;
-	boolean added;
+	int state;
+	int ncols = m_spec.m_dtrans_ncols;
+	int accept;
+	
+	state = m_spec.m_dfa_count++;
+	if (state == m_sets.length)
+	  {
+	    int capacity = 2 * state;
 
-	init_groups();
+	    m_spec.m_dfa_next = Arrays.copyOf(m_spec.m_dfa_next, 
+					      capacity * ncols);
+	    m_spec.m_dfa_accept = Arrays.copyOf(m_spec.m_dfa_accept, capacity);
+	    m_spec.m_dfa_anchor = Arrays.copyOf(m_spec.m_dfa_anchor, capacity);
+	    m_sets = Arrays.copyOf(m_sets, capacity);
+	    m_set_hash = Arrays.copyOf(m_set_hash, capacity);
+	    rehash(2 * capacity);
+	  }
 
-	group_count = m_group.size();
-	old_group_count = group_count - 1;
+	m_sets[state] = dfa.m_sets[local];
+	m_set_hash[state] = dfa.m_set_hash[local];
+	accept = dfa.m_accept[local];
+	if (CUtility.INT_MAX == accept)
+	  {
+	    m_spec.m_dfa_accept[state] = null;
+	    m_spec.m_dfa_anchor[state] = CSpec.NONE;
+	  }
+	else
+	  {
+	    m_spec.m_dfa_accept[state] = m_nfa_accept[accept];
+	    m_spec.m_dfa_anchor[state] = m_nfa_anchor[accept];
+	  }
+	m_table[find_slot(m_sets[state],m_set_hash[state])] = state + 1;
 
-	while (old_group_count != group_count)
+	if (CUtility.OLD_DUMP_DEBUG)
 	  {
-	    old_group_count = group_count;
+	    System.out.print("Registering set : ");
+	    System.out.println(Arrays.toString(m_sets[state]));
+	  }
 
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(m_group.size() == group_count);
-	      }
+	return state;
+      }
 
-	    for (i = 0; i < group_count; ++i)
-	      {
-		dtrans_group = (Vector) m_group.elementAt(i);
+  /***************************************************************
+    Function: rehash
+    Description: Moves the states in m_table to a new table of the
+    given size, a power of two.
+    **************************************************************/
+  private void rehash
+    (
+     int size
+     )
+      {
+	int old_table[] = m_table;
+	int mask = size - 1;
 
-		group_size = dtrans_group.size();
-		if (group_size <= 1)
-		  {
-		    continue;
-		  }
+	m_table = new int[size];
+	for (int i = 0; i < old_table.length; ++i)
+	  {
+	    if (0 != old_table[i])
+	      {
+		int slot = m_set_hash[old_table[i] - 1] & mask;
 
-		new_group = new Vector();
-		added = false;
-		
-		first = (CDTrans) dtrans_group.elementAt(0);
-		for (j = 1; j < group_size; ++j)
+		while (0 != m_table[slot])
 		  {
-		    next = (CDTrans) dtrans_group.elementAt(j);
-
-		    for (c = 0; c < m_spec.m_dtrans_ncols; ++c)
-		      {
-			goto_first = first.m_dtrans[c];
-			goto_next = next.m_dtrans[c];
-
-			if (goto_first != goto_next
-			    && (goto_first == CDTrans.F
-				|| goto_next == CDTrans.F
-				|| m_ingroup[goto_next] != m_ingroup[goto_first]))
-			  {
-			    if (CUtility.DEBUG)
-			      {
-				CUtility.ASSERT(dtrans_group.elementAt(j) == next);
-			      }
-			    
-			    dtrans_group.removeElementAt(j);
-			    --j;
-			    --group_size;
-			    new_group.addElement(next);
-			    if (false == added)
-			      {
-				added = true;
-				++group_count;
-				m_group.addElement(new_group);
-			      }
-			    m_ingroup[next.m_label] = m_group.size() - 1;
-
-			    if (CUtility.DEBUG)
-			      {
-				CUtility.ASSERT(m_group.contains(new_group)
-						== true);
-				CUtility.ASSERT(m_group.contains(dtrans_group)
-						== true);
-				CUtility.ASSERT(dtrans_group.contains(first)
-						== true);
-				CUtility.ASSERT(dtrans_group.contains(next)
-						== false);
-				CUtility.ASSERT(new_group.contains(first)
-						== false);
-				CUtility.ASSERT(new_group.contains(next)
-						== true);
-				CUtility.ASSERT(dtrans_group.size() == group_size);
-				CUtility.ASSERT(i == m_ingroup[first.m_label]);
-				CUtility.ASSERT((m_group.size() - 1) 
-						== m_ingroup[next.m_label]);
-			      }
-
-			    break;
-			  }
-		      }
+		    slot = (slot + 1) & mask;
 		  }
+		m_table[slot] = old_table[i];
 	      }
 	  }
+      }
+}
 
-	System.out.println(m_group.size() + " states after removal of redundant states.");
+/***************************************************************
+  Class: CStateDfa
+  Description: The DFA of one lexical state, made by subset
+  construction from the start states of its rules, as a task for
+  CNfa2Dfa.  Its states are numbered from 0, the start state, in
+  the order they are found.  Only the NFA tables of CNfa2Dfa are
+  shared, and they are only read, so the DFAs of different lexical
+  states can be made at the same time.
+ **************************************************************/
+class CStateDfa extends RecursiveAction
+{
+  /***************************************************************
+    Member Variables
+    **************************************************************/
+  private static final long serialVersionUID = 1L;
+  private CNfa2Dfa m_nfa;
+  private int m_rules[];
+  private int m_ncols;
+
+  /* The DFA: m_count states, state s going to state 
+     m_next[s * m_ncols + c] (or CDTrans.F) on class c, with NFA set
+     m_sets[s], whose hash code is m_set_hash[s] and whose lowest
+     accepting label is m_accept[s] (or CUtility.INT_MAX). */
+  int m_count;
+  int m_next[];
+  int m_sets[][];
+  int m_set_hash[];
+  int m_accept[];
+  private int m_table[];  /* as CNfa2Dfa.m_table */
+
+  /* Per NFA state: epsilon closure, once computed, and its lowest
+     accepting label. */
+  private int m_closure[][];
+  private int m_closure_accept[];
+
+  /* Scratch space. */
+  private int m_seen[];  /* labels seen, see next_stamp() */
+  private int m_stamp;
+  private int m_found[];  /* the set e_closure() made, */
+  private int m_found_size;  /* its size, */
+  private int m_found_hash;  /* hash code */
+  private int m_found_accept;  /* and lowest accepting label */
+  private int m_move[][];  /* see move() */
+  private int m_move_size[];
 
-	if (m_spec.m_verbose
-	    && true == CUtility.OLD_DUMP_DEBUG)
-	  {
-	    System.out.println();
-	    System.out.println("States grouped as follows after minimization");
-	    pgroups();
-	  }
+  /***************************************************************
+    Constants
+    **************************************************************/
+  private static final int NOT_IN_DSTATES = -1;
 
-	fix_dtrans();
+  /***************************************************************
+    Function: CStateDfa
+    **************************************************************/
+  CStateDfa
+    (
+     CNfa2Dfa nfa,
+     int rules[],
+     int ncols
+     )
+      {
+	m_nfa = nfa;
+	m_rules = rules;
+	m_ncols = ncols;
       }
 
   /***************************************************************
-    Function: init_groups
-    Description:
+    Function: compute
+    Description: Makes the DFA, then drops the scratch space.
     **************************************************************/
-  private void init_groups
+  protected void compute
     (
      )
       {
+	int size = m_nfa.m_nfa_next.length;
+	int capacity = 16;
+	int state;
 	int i;
-	int j;
-	int group_count;
-	int size;
-	CAccept accept;
-	CDTrans dtrans;
-	Vector dtrans_group;
-	CDTrans first;
-	boolean group_found;
+	int nextstate;
+
+	m_closure = new int[size][];
+	m_closure_accept = new int[size];
+	m_seen = new int[size];
+	m_stamp = 0;
+	m_found = new int[size];
+	m_move = new int[m_ncols][];
+	m_move_size = new int[m_ncols];
+	for (i = 0; i < m_ncols; ++i)
+	  {
+	    m_move[i] = new int[8];
+	  }
 
-	m_group = new Vector();
-	group_count = 0;
-	
-	size = m_spec.m_dtrans_vector.size();
-	m_ingroup = new int[size];
-	
-	for (i = 0; i < size; ++i)
+	m_count = 0;
+	m_next = new int[capacity * m_ncols];
+	m_sets = new int[capacity][];
+	m_set_hash = new int[capacity];
+	m_accept = new int[capacity];
+	m_table = new int[2 * capacity];
+
+	e_closure(m_rules,m_rules.length);
+	add_to_dstates();
+
+	for (state = 0; state < m_count; ++state)
 	  {
-	    group_found = false;
-	    dtrans = (CDTrans) m_spec.m_dtrans_vector.elementAt(i);
+	    /* Sort the NFA states' edges by character class. */
+	    move(m_sets[state]);
 
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(i == dtrans.m_label);
-		CUtility.ASSERT(false == group_found);
-		CUtility.ASSERT(group_count == m_group.size());
-	      }
-	    
-	    for (j = 0; j < group_count; ++j)
+	    /* Set the transition for each character class. */
+	    for (i = 0; i < m_ncols; ++i)
 	      {
-		dtrans_group = (Vector) m_group.elementAt(j);
-		
-		if (CUtility.DEBUG)
+		/* Create new state or set state to empty. */
+		if (0 == m_move_size[i])
 		  {
-		    CUtility.ASSERT(false == group_found);
-		    CUtility.ASSERT(0 < dtrans_group.size());
+		    nextstate = CDTrans.F;
 		  }
-
-		first = (CDTrans) dtrans_group.elementAt(0);
-		
-		if (CUtility.SLOW_DEBUG)
+		else 
 		  {
-		    CDTrans check;
-		    int k;
-		    int s;
-
-		    s = dtrans_group.size();
-		    CUtility.ASSERT(0 < s);
+		    e_closure(m_move[i],m_move_size[i]);
+		    nextstate = in_dstates();
 
-		    for (k = 1; k < s; ++k)
+		    if (NOT_IN_DSTATES == nextstate)
 		      {
-			check = (CDTrans) dtrans_group.elementAt(k);
-			CUtility.ASSERT(check.m_accept == first.m_accept);
+			nextstate = add_to_dstates();
 		      }
 		  }
 
-		if (first.m_accept == dtrans.m_accept)
-		  {
-		    dtrans_group.addElement(dtrans);
-		    m_ingroup[i] = j;
-		    group_found = true;
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(j == m_ingroup[dtrans.m_label]);
-		      }
-
-		    break;
-		  }
-	      }
-	    
-	    if (false == group_found)
-	      {
-		dtrans_group = new Vector();
-		dtrans_group.addElement(dtrans);
-		m_ingroup[i] = m_group.size();
-		m_group.addElement(dtrans_group);
-		++group_count;
+		m_next[state * m_ncols + i] = nextstate;
 	      }
 	  }
-	
-	if (m_spec.m_verbose
-	    && true == CUtility.OLD_DUMP_DEBUG)
+
+	m_table = null;
+	m_closure = null;
+	m_closure_accept = null;
+	m_seen = null;
+	m_found = null;
+	m_move = null;
+	m_move_size = null;
+      }
+
+  /***************************************************************
+    Function: next_stamp
+    Description: Starts a new use of m_seen: a label counts as
+    seen while its entry equals the stamp returned.
+    **************************************************************/
+  private int next_stamp
+    (
+     )
+      {
+	if (Integer.MAX_VALUE == m_stamp)
 	  {
-	    System.out.println("Initial grouping:");
-	    pgroups();
-	    System.out.println();
+	    Arrays.fill(m_seen, 0);
+	    m_stamp = 0;
 	  }
+	return ++m_stamp;
       }
 
   /***************************************************************
-    Function: pset
+    Function: closure
+    Description: Returns the epsilon closure of NFA state label,
+    as sorted labels, computing it on first use.  Also records in
+    m_closure_accept[label] the lowest label of an accepting state
+    in it, or CUtility.INT_MAX if there is none.
     **************************************************************/
-  private void pset
+  private int[] closure
     (
-     Vector dtrans_group
+     int label
      )
       {
-	int i;
-	int size;
-	CDTrans dtrans;
+	if (null != m_closure[label])
+	  {
+	    return m_closure[label];
+	  }
 
-	size = dtrans_group.size();
-	for (i = 0; i < size; ++i)
+	int stamp = next_stamp();
+	int n = 0;
+	int top = 0;
+	int accept = CUtility.INT_MAX;
+	int stack[] = m_found;  /* doubles as the result */
+
+	/* Every label found is pushed once; the stack never shrinks
+	   below what has been found, so found labels are kept in
+	   stack[0 .. n-1] and the ones still to expand are the last
+	   n - top of them. */
+	m_seen[label] = stamp;
+	stack[n++] = label;
+	while (top < n)
 	  {
-	    dtrans = (CDTrans) dtrans_group.elementAt(i);
-	    System.out.print(dtrans.m_label + " ");
+	    int state = stack[top++];
+
+	    if (null != m_nfa.m_nfa_accept[state] && state < accept)
+	      {
+		accept = state;
+	      }
+
+	    for (int k = 2 * state; k < 2 * state + 2; ++k)
+	      {
+		int next = m_nfa.m_nfa_eps[k];
+
+		if (-1 != next && stamp != m_seen[next])
+		  {
+		    m_seen[next] = stamp;
+		    stack[n++] = next;
+		  }
+	      }
 	  }
+
+	int result[] = Arrays.copyOf(stack, n);
+	Arrays.sort(result);
+	m_closure[label] = result;
+	m_closure_accept[label] = accept;
+	return result;
       }
-  
+
   /***************************************************************
-    Function: pgroups
+    Function: e_closure
+    Description: Leaves in m_found[0 .. m_found_size-1] the epsilon
+    closure of the NFA states seeds[0 .. size-1], sorted, with its
+    hash code in m_found_hash and its lowest accepting label, if
+    any, in m_found_accept.
     **************************************************************/
-  private void pgroups
+  private void e_closure
     (
+     int seeds[],
+     int size
      )
       {
 	int i;
-	int dtrans_size;
-	int group_size;
-	
-	group_size = m_group.size();
-	for (i = 0; i < group_size; ++i)
+	int accept = CUtility.INT_MAX;
+	int n = 0;
+	int hash = 1;
+	int found[];
+	int stamp;
+
+	/* Debug checks. */
+	if (CUtility.DEBUG)
 	  {
-	    System.out.print("\tGroup " + i + " {");
-	    pset((Vector) m_group.elementAt(i));
-	    System.out.println("}");
-	    System.out.println();
+	    CUtility.ASSERT(0 < size);
 	  }
-	
-	System.out.println();
-	dtrans_size = m_spec.m_dtrans_vector.size();
-	for (i = 0; i < dtrans_size; ++i)
+
+	/* The union of the seeds' closures; closure() uses m_found
+	   too, so the closures are all made first. */
+	for (i = 0; i < size; ++i)
 	  {
-	    System.out.println("\tstate " + i 
-			       + " is in group " 
-			       + m_ingroup[i]);
+	    closure(seeds[i]);
 	  }
-      }
-}
+	stamp = next_stamp();
+	found = m_found;
+	for (i = 0; i < size; ++i)
+	  {
+	    int label = seeds[i];
+	    int members[] = m_closure[label];
 
-/***************************************************************
-  Class: CNfa2Dfa
- **************************************************************/
-class CNfa2Dfa
-{
-  /***************************************************************
-    Member Variables
-    **************************************************************/
-  private CSpec m_spec;
-  private int m_unmarked_dfa;
-  private CLexGen m_lexGen;
+	    if (m_closure_accept[label] < accept)
+	      {
+		accept = m_closure_accept[label];
+	      }
+	    for (int j = 0; j < members.length; ++j)
+	      {
+		if (stamp != m_seen[members[j]])
+		  {
+		    m_seen[members[j]] = stamp;
+		    found[n++] = members[j];
+		  }
+	      }
+	  }
 
-  /***************************************************************
-    Constants
-    **************************************************************/
-  private static final int NOT_IN_DSTATES = -1;
+	Arrays.sort(found, 0, n);
+	for (i = 0; i < n; ++i)
+	  {
+	    hash = 31 * hash + found[i];
+	  }
+
+	m_found_size = n;
+	m_found_hash = hash ^ (hash >>> 16);
+	m_found_accept = accept;
+      }
 
   /***************************************************************
-    Function: CNfa2Dfa
+    Function: move
+    Description: Sorts the edges out of the NFA states in labels
+    by character class: for each class c, the states they lead to
+    are left in m_move[c][0 .. m_move_size[c]-1].
     **************************************************************/
-  CNfa2Dfa
+  private void move
     (
+     int labels[]
      )
       {
-	reset();
+	int cols_start[] = m_nfa.m_cols_start;
+	int cols[] = m_nfa.m_cols;
+
+	Arrays.fill(m_move_size, 0);
+	for (int index = 0; index < labels.length; ++index)
+	  {
+	    int label = labels[index];
+	    int next = m_nfa.m_nfa_next[label];
+
+	    for (int k = cols_start[label]; k < cols_start[label + 1]; ++k)
+	      {
+		int col = cols[k];
+
+		if (m_move_size[col] == m_move[col].length)
+		  {
+		    m_move[col] = Arrays.copyOf(m_move[col], 2 * m_move_size[col]);
+		  }
+		m_move[col][m_move_size[col]++] = next;
+	      }
+	  }
       }
 
   /***************************************************************
-    Function: set 
-    Description: 
+    Function: find_slot
+    Description: Returns the slot of m_table that holds the state
+    whose set is the one in m_found, or else the empty slot where
+    it would go.
     **************************************************************/
-  private void set
+  private int find_slot
     (
-     CLexGen lexGen,
-     CSpec spec
      )
       {
-	m_lexGen = lexGen;
-	m_spec = spec;
-	m_unmarked_dfa = 0;
+	int mask = m_table.length - 1;
+	int slot;
+
+	for (slot = m_found_hash & mask; ; slot = (slot + 1) & mask)
+	  {
+	    int state = m_table[slot] - 1;
+
+	    if (-1 == state)
+	      {
+		return slot;
+	      }
+	    if (m_set_hash[state] == m_found_hash && same_set(m_sets[state]))
+	      {
+		return slot;
+	      }
+	  }
       }
 
   /***************************************************************
-    Function: reset 
-    Description: 
+    Function: same_set
+    Description: Returns whether labels holds the set in m_found.
     **************************************************************/
-  private void reset
+  private boolean same_set
     (
+     int labels[]
      )
       {
-	m_lexGen = null;
-	m_spec = null;
-	m_unmarked_dfa = 0;
+	if (labels.length != m_found_size)
+	  {
+	    return false;
+	  }
+	for (int i = 0; i < m_found_size; ++i)
+	  {
+	    if (labels[i] != m_found[i])
+	      {
+		return false;
+	      }
+	  }
+	return true;
       }
 
   /***************************************************************
-    Function: make_dfa
-    Description: High-level access function to module.
+    function: add_to_dstates
+    Description: Adds a state for the set in m_found and returns it.
     **************************************************************/
-  void make_dfa
+  private int add_to_dstates
     (
-     CLexGen lexGen,
-     CSpec spec
      )
       {
-	int i;
-
-	reset();
-	set(lexGen,spec);
-
-	make_dtrans();
-	free_nfa_states();
-
-	if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
+	int state;
+	
+	state = m_count++;
+	if (state == m_sets.length)
 	  {
-	    System.out.println(m_spec.m_dfa_states.size()
-			       + " DFA states in original machine.");
+	    int capacity = 2 * state;
+
+	    m_next = Arrays.copyOf(m_next, capacity * m_ncols);
+	    m_sets = Arrays.copyOf(m_sets, capacity);
+	    m_set_hash = Arrays.copyOf(m_set_hash, capacity);
+	    m_accept = Arrays.copyOf(m_accept, capacity);
+	    rehash(2 * capacity);
 	  }
 
-	free_dfa_states();
-      }     
+	m_sets[state] = Arrays.copyOf(m_found, m_found_size);
+	m_set_hash[state] = m_found_hash;
+	m_accept[state] = m_found_accept;
+	m_table[find_slot()] = state + 1;
+	return state;
+      }
 
-   /***************************************************************
-    Function: make_dtrans
-    Description: Creates uncompressed CDTrans transition table.
+  /***************************************************************
+    Function: rehash
+    Description: Moves the states in m_table to a new table of the
+    given size, a power of two.
     **************************************************************/
-  private void make_dtrans
+  private void rehash
     (
+     int size
      )
-     /* throws java.lang.CloneNotSupportedException*/
       {
-	CDfa next;
-	CDfa dfa;
-	CBunch bunch;
-	int i;
-	int nextstate;
-	int size;
-	CDTrans dtrans;
-	CNfa nfa;
-	int istate;
-	int nstates;
-	
-	System.out.print("Working on DFA states.");
+	int old_table[] = m_table;
+	int mask = size - 1;
 
-	/* Reference passing type and initializations. */
-	bunch = new CBunch();
-	m_unmarked_dfa = 0;
-
-	/* Allocate mapping array. */
-	nstates = m_spec.m_state_rules.length;
-	m_spec.m_state_dtrans = new int[nstates];
-
-	for (istate = 0; nstates > istate; ++istate)
+	m_table = new int[size];
+	for (int i = 0; i < old_table.length; ++i)
 	  {
-	    /* CSA bugfix: if we skip all zero size rules, then
-	       an specification with no rules produces an illegal
-	       lexer (0 states) instead of a lexer that rejects
-	       everything (1 nonaccepting state). [27-Jul-1999]
-	    if (0 == m_spec.m_state_rules[istate].size())
-	      {
-		m_spec.m_state_dtrans[istate] = CDTrans.F;
-		continue;
-	      }
-	    */
-		
-	    /* Create start state and initialize fields. */
-	    bunch.m_nfa_set = (Vector) m_spec.m_state_rules[istate].clone();
-	    sortStates(bunch.m_nfa_set);
-	    
-	    bunch.m_nfa_bit = new SparseBitSet();
-	    
-	    /* Initialize bit set. */
-	    size = bunch.m_nfa_set.size();
-	    for (i = 0; size > i; ++i)
-	      {
-		nfa = (CNfa) bunch.m_nfa_set.elementAt(i);
-		bunch.m_nfa_bit.set(nfa.m_label);
-	      }
-	    
-	    bunch.m_accept = null;
-	    bunch.m_anchor = CSpec.NONE;
-	    bunch.m_accept_index = CUtility.INT_MAX;
-	    
-	    e_closure(bunch);
-	    add_to_dstates(bunch);
-	    
-	    m_spec.m_state_dtrans[istate] = m_spec.m_dtrans_vector.size();
-
-	    /* Main loop of CDTrans creation. */
-	    while (null != (dfa = get_unmarked()))
+	    if (0 != old_table[i])
 	      {
-		System.out.print(".");
-		System.out.flush();
-		
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(false == dfa.m_mark);
-		  }
+		int slot = m_set_hash[old_table[i] - 1] & mask;
 
-		/* Get first unmarked node, then mark it. */
-		dfa.m_mark = true;
-		
-		/* Allocate new CDTrans, then initialize fields. */
-		dtrans = new CDTrans(m_spec.m_dtrans_vector.size(),m_spec);
-		dtrans.m_accept = dfa.m_accept;
-		dtrans.m_anchor = dfa.m_anchor;
-		
-		/* Set CDTrans array for each character transition. */
-		for (i = 0; i < m_spec.m_dtrans_ncols; ++i)
-		  {
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(0 <= i);
-			CUtility.ASSERT(m_spec.m_dtrans_ncols > i);
-		      }
-		    
-		    /* Create new dfa set by attempting character transition. */
-		    move(dfa.m_nfa_set,dfa.m_nfa_bit,i,bunch);
-		    if (null != bunch.m_nfa_set)
-		      {
-			e_closure(bunch);
-		      }
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT((null == bunch.m_nfa_set 
-					 && null == bunch.m_nfa_bit)
-					|| (null != bunch.m_nfa_set 
-					    && null != bunch.m_nfa_bit));
-		      }
-		    
-		    /* Create new state or set state to empty. */
-		    if (null == bunch.m_nfa_set)
-		      {
-			nextstate = CDTrans.F;
-		      }
-		    else 
-		      {
-			nextstate = in_dstates(bunch);
-			
-			if (NOT_IN_DSTATES == nextstate)
-			  {
-			    nextstate = add_to_dstates(bunch);
-			  }
-		      }
-		    
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(nextstate < m_spec.m_dfa_states.size());
-		      }
-		    
-		    dtrans.m_dtrans[i] = nextstate;
-		  }
-		
-		if (CUtility.DEBUG)
+		while (0 != m_table[slot])
 		  {
-		    CUtility.ASSERT(m_spec.m_dtrans_vector.size() == dfa.m_label);
+		    slot = (slot + 1) & mask;
 		  }
-		
-		m_spec.m_dtrans_vector.addElement(dtrans);
+		m_table[slot] = old_table[i];
 	      }
 	  }
+      }
 
-	System.out.println();
+  /***************************************************************
+    Function: in_dstates
+    Description: Returns the state for the set in m_found, or
+    NOT_IN_DSTATES if there is none yet.
+    **************************************************************/
+  private int in_dstates
+    (
+     )
+      {
+	return m_table[find_slot()] - 1;
       }
+}
 
+/***************************************************************
+  Class: CAlloc
+  **************************************************************/
+class CAlloc
+{
   /***************************************************************
-    Function: free_dfa_states
-    **************************************************************/  
-  private void free_dfa_states
+    Function: newCNfaPair
+    Description: 
+    **************************************************************/
+  static CNfaPair newCNfaPair
     (
      )
       {
-	m_spec.m_dfa_states = null;
-	m_spec.m_dfa_sets = null;
+	CNfaPair pair = new CNfaPair();
+	
+	return pair;
       }
+  /***************************************************************
+    Function: newNLPair
+    Description: return a new CNfaPair that matches a new 
+                 line: (\r\n?|[\n\uu2028\uu2029])
+		 Added by CSA 8-Aug-1999, updated 10-Aug-1999
+    **************************************************************/
+  static CNfaPair newNLPair(CSpec spec) {
+    CNfaPair pair = newCNfaPair();
+    pair.m_end=newCNfa(spec); // newline accepting state
+    pair.m_start=newCNfa(spec); // new state with two epsilon edges
+    pair.m_start.m_next = newCNfa(spec);
+    pair.m_start.m_next.m_edge = CNfa.CCL;
+    pair.m_start.m_next.m_set = new CSet();
+    pair.m_start.m_next.m_set.add('\n');
+    if (spec.m_dtrans_ncols-CSpec.NUM_PSEUDO > 2029) {
+      pair.m_start.m_next.m_set.add(2028); /*U+2028 is LS, the line separator*/
+      pair.m_start.m_next.m_set.add(2029); /*U+2029 is PS, the paragraph sep.*/
+    }
+    pair.m_start.m_next.m_next = pair.m_end; // accept '\n', U+2028, or U+2029
+    pair.m_start.m_next2 = newCNfa(spec);
+    pair.m_start.m_next2.m_edge = '\r';
+    pair.m_start.m_next2.m_next = newCNfa(spec);
+    pair.m_start.m_next2.m_next.m_next = pair.m_end; // accept '\r';
+    pair.m_start.m_next2.m_next.m_next2 = newCNfa(spec);
+    pair.m_start.m_next2.m_next.m_next2.m_edge = '\n';
+    pair.m_start.m_next2.m_next.m_next2.m_next = pair.m_end; // accept '\r\n';
+    return pair;
+  }
 
   /***************************************************************
-    Function: free_nfa_states
-    **************************************************************/  
-  private void free_nfa_states
+    Function: newCNfa
+    Description: 
+    **************************************************************/
+  static CNfa newCNfa
     (
+     CSpec spec
      )
       {
-	/* UNDONE: Remove references to nfas from within dfas. */
-	/* UNDONE: Don't free CAccepts. */
+	CNfa p;
 
-	m_spec.m_nfa_states = null;
-	m_spec.m_nfa_start = null;
-	m_spec.m_state_rules = null;
+	/* UNDONE: Buffer this? */
+
+	p = new CNfa();
+	
+	/*p.m_label = spec.m_nfa_states.size();*/
+	spec.m_nfa_states.addElement(p);
+	p.m_edge = CNfa.EPSILON;
+	
+	return p;
       }
+}
 
+/***************************************************************
+  Class: Main
+  Description: Top-level lexical analyzer generator function.
+ **************************************************************/
+public class Main
+{
   /***************************************************************
-    Function: e_closure
-    Description: Alters and returns input set.
+    Function: main
     **************************************************************/
-  private void e_closure
+  public static void main
     (
-     CBunch bunch
+     String arg[]
      )
+    throws java.io.IOException
       {
-	Stack nfa_stack;
-	int size;
+	CLexGen lg;
+	boolean pairwise = false;
+	String cache_dir = null;
+	CCache cache = null;
+	String stats_file = null;
+	CStats stats = null;
+	String profile = null;
+	String options;
+	String filename;
 	int i;
-	CNfa state;
 
-	/* Debug checks. */
-	if (CUtility.DEBUG)
+	for (i = 0; i < arg.length - 1; ++i)
+	  {
+	    if (arg[i].equals("-pairwise"))
+	      {
+		pairwise = true;
+	      }
+	    else if (arg[i].equals("-cache") && i + 2 < arg.length)
+	      {
+		cache_dir = arg[++i];
+	      }
+	    else if (arg[i].equals("-stats") && i + 2 < arg.length)
+	      {
+		stats_file = arg[++i];
+	      }
+	    else if (arg[i].equals("-profile") && i + 2 < arg.length)
+	      {
+		profile = arg[++i];
+	      }
+	    else
+	      {
+		break;
+	      }
+	  }
+
+	if (i != arg.length - 1)
 	  {
-	    CUtility.ASSERT(null != bunch);
-	    CUtility.ASSERT(null != bunch.m_nfa_set);
-	    CUtility.ASSERT(null != bunch.m_nfa_bit);
+	    System.out.println("Usage: JLex.Main [-pairwise] [-cache <dir>] "
+			       + "[-stats <file>] [-profile <sample>] "
+			       + "<filename>");
+	    return;
 	  }
+	filename = arg[i];
+	options = pairwise ? "-pairwise" : "";
 
-	bunch.m_accept = null;
-	bunch.m_anchor = CSpec.NONE;
-	bunch.m_accept_index = CUtility.INT_MAX;
-	
-	/* Create initial stack. */
-	nfa_stack = new Stack();
-	size = bunch.m_nfa_set.size();
-	for (i = 0; i < size; ++i)
+	if (null != stats_file)
 	  {
-	    state = (CNfa) bunch.m_nfa_set.elementAt(i);
-	    
-	    if (CUtility.DEBUG)
+	    /* The stats name the sample; the cache key has its contents. */
+	    String stats_options = options;
+	    if (null != profile)
 	      {
-		CUtility.ASSERT(bunch.m_nfa_bit.get(state.m_label));
+		stats_options += (0 == options.length() ? "" : " ")
+		  + "-profile " + profile;
 	      }
-
-	    nfa_stack.push(state);
+	    stats = new CStats(filename,stats_options);
 	  }
 
-	/* Main loop. */
-	while (false == nfa_stack.empty())
+	if (null != cache_dir)
 	  {
-	    state = (CNfa) nfa_stack.pop();
-	    
-	    if (CUtility.OLD_DUMP_DEBUG)
+	    cache = CCache.open(cache_dir,filename,options,profile);
+	    if (null != cache && cache.fetch(filename + ".java"))
 	      {
-		if (null != state.m_accept)
+		if (null != stats)
 		  {
-		    System.out.println("Looking at accepting state " + state.m_label
-				       + " with <"
-				       + (new String(state.m_accept.m_action,0,
-						     state.m_accept.m_action_read))
-				       + ">");
+		    stats.set_cache(true);
+		    stats.phase("cache");
+		    stats.m_output_bytes
+		      = new java.io.File(filename + ".java").length();
+		    stats.write(stats_file);
 		  }
+		return;
 	      }
-
-	    if (null != state.m_accept 
-		&& state.m_label < bunch.m_accept_index)
+	    if (null != stats && null != cache)
 	      {
-		bunch.m_accept_index = state.m_label;
-		bunch.m_accept = state.m_accept;
-		bunch.m_anchor = state.m_anchor;
-
-		if (CUtility.OLD_DUMP_DEBUG)
-		  {
-		    System.out.println("Found accepting state " + state.m_label
-				       + " with <"
-				       + (new String(state.m_accept.m_action,0,
-						     state.m_accept.m_action_read))
-				       + ">");
-		  }
-
-		if (CUtility.DEBUG)
-		  {
-		    CUtility.ASSERT(null != bunch.m_accept);
-		    CUtility.ASSERT(CSpec.NONE == bunch.m_anchor
-				    || 0 != (bunch.m_anchor & CSpec.END)
-				    || 0 != (bunch.m_anchor & CSpec.START));
-		  }
+		stats.set_cache(false);
+		stats.phase("cache");
 	      }
+	  }
 
-	    if (CNfa.EPSILON == state.m_edge)
+	/* Note: For debuging, it may be helpful to remove the try/catch
+	   block and permit the Exception to propagate to the top level. 
+	   This gives more information. */
+	try 
+	  {	
+	    lg = new CLexGen(filename);
+	    lg.set_pairwise(pairwise);
+	    lg.set_stats(stats);
+	    if (null != profile)
 	      {
-		if (null != state.m_next)
-		  {
-		    if (false == bunch.m_nfa_set.contains(state.m_next))
-		      {
-			if (CUtility.DEBUG)
-			  {
-			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next.m_label));
-			  }
-			
-			bunch.m_nfa_bit.set(state.m_next.m_label);
-			bunch.m_nfa_set.addElement(state.m_next);
-			nfa_stack.push(state.m_next);
-		      }
-		  }
-
-		if (null != state.m_next2)
-		  {
-		    if (false == bunch.m_nfa_set.contains(state.m_next2))
-		      {
-			if (CUtility.DEBUG)
-			  {
-			    CUtility.ASSERT(false == bunch.m_nfa_bit.get(state.m_next2.m_label));
-			  }
-			
-			bunch.m_nfa_bit.set(state.m_next2.m_label);
-			bunch.m_nfa_set.addElement(state.m_next2);
-			nfa_stack.push(state.m_next2);
-		      }
-		  }
+		lg.set_profile(profile);
 	      }
+	    lg.generate();
+	  }
+	catch (Error e)
+	  {
+	    System.out.println(e.getMessage());
+	    return;
 	  }
 
-	if (null != bunch.m_nfa_set)
+	if (null != cache)
 	  {
-	    sortStates(bunch.m_nfa_set);
+	    cache.store(filename + ".java");
 	  }
 
-	return;
+	if (null != stats)
+	  {
+	    stats.m_output_bytes = new java.io.File(filename + ".java").length();
+	    stats.write(stats_file);
+	  }
       }
+}    
 
+/***************************************************************
+  Class: CCache
+  Description: A directory of generated lexers, each named by the
+  SHA-256 hash of everything that goes into it: the specification,
+  the options that change the output (with the contents of a -profile
+  sample), and the class files of JLex itself.  The output does not
+  depend on the specification's file name, so a hit can simply be
+  copied.  Problems with the cache are reported and otherwise ignored;
+  the lexer is then just generated.
+ **************************************************************/
+class CCache
+{
   /***************************************************************
-    Function: move
-    Description: Returns null if resulting NFA set is empty.
+    Member Variables
+    **************************************************************/
+  private java.io.File m_dir;
+  private java.io.File m_entry;
+  private String m_key;
+
+  /***************************************************************
+    Constants
+    **************************************************************/
+  /* Changes if entries are stored differently. */
+  private static final String FORMAT = "JLex cache 1";
+
+  /***************************************************************
+    Function: CCache
     **************************************************************/
-  void move
+  private CCache
     (
-     Vector nfa_set,
-     SparseBitSet nfa_bit,
-     int b,
-     CBunch bunch
+     java.io.File dir,
+     String key
      )
       {
-	int size;
-	int index;
-	CNfa state;
-	
-	bunch.m_nfa_set = null;
-	bunch.m_nfa_bit = null;
+	m_dir = dir;
+	m_key = key;
+	m_entry = new java.io.File(dir, key + ".java");
+      }
 
-	size = nfa_set.size();
-	for (index = 0; index < size; ++index)
-	  {
-	    state = (CNfa) nfa_set.elementAt(index);
-	    
-	    if (b == state.m_edge
-		|| (CNfa.CCL == state.m_edge
-		    && true == state.m_set.contains(b)))
+  /***************************************************************
+    Function: open
+    Description: Returns the cache in directory dir (made if need
+    be) for the given specification file, options and -profile
+    sample (or null), or null if it cannot be used.  The sample, like
+    the specification, goes into the key by its contents, not its
+    name, and options does not name it.
+    **************************************************************/
+  static CCache open
+    (
+     String dir,
+     String filename,
+     String options,
+     String profile
+     )
+      {
+	java.security.MessageDigest digest;
+	java.io.File cache_dir = new java.io.File(dir);
+	StringBuffer key = new StringBuffer();
+
+	try
+	  {
+	    digest = java.security.MessageDigest.getInstance("SHA-256");
+	    add_string(digest, FORMAT);
+	    add_string(digest, options);
+	    add_generator(digest);
+	    add_string(digest, "spec");
+	    digest.update(java.nio.file.Files.readAllBytes(
+		new java.io.File(filename).toPath()));
+	    if (null != profile)
 	      {
-		if (null == bunch.m_nfa_set)
-		  {
-		    if (CUtility.DEBUG)
-		      {
-			CUtility.ASSERT(null == bunch.m_nfa_bit);
-		      }
-		    
-		    bunch.m_nfa_set = new Vector();
-		    /*bunch.m_nfa_bit 
-			= new SparseBitSet(m_spec.m_nfa_states.size());*/
-		    bunch.m_nfa_bit = new SparseBitSet();
-		  }
-
-		bunch.m_nfa_set.addElement(state.m_next);
-		/*System.out.println("Size of bitset: " + bunch.m_nfa_bit.size());
-		System.out.println("Reference index: " + state.m_next.m_label);
-		System.out.flush();*/
-		bunch.m_nfa_bit.set(state.m_next.m_label);
+		add_string(digest, "profile");
+		digest.update(java.nio.file.Files.readAllBytes(
+		    new java.io.File(profile).toPath()));
 	      }
+	    java.nio.file.Files.createDirectories(cache_dir.toPath());
 	  }
-	
-	if (null != bunch.m_nfa_set)
+	catch (java.security.NoSuchAlgorithmException e)
 	  {
-	    if (CUtility.DEBUG)
-	      {
-		CUtility.ASSERT(null != bunch.m_nfa_bit);
-	      }
-	    
-	    sortStates(bunch.m_nfa_set);
+	    System.out.println("Warning: not using the cache: " + e);
+	    return null;
+	  }
+	catch (java.io.IOException e)
+	  {
+	    System.out.println("Warning: not using the cache: " + e);
+	    return null;
 	  }
 
-	return;
+	byte hash[] = digest.digest();
+	for (int i = 0; i < hash.length; ++i)
+	  {
+	    key.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+	    key.append(Character.forDigit(hash[i] & 0xf, 16));
+	  }
+	return new CCache(cache_dir, key.toString());
       }
 
   /***************************************************************
-    Function: sortStates
+    Function: add_string
+    Description: Adds s to digest, with its length, so that 
+    consecutive strings cannot run together.
     **************************************************************/
-  private void sortStates
+  private static void add_string
     (
-     Vector nfa_set
+     java.security.MessageDigest digest,
+     String s
      )
       {
-	CNfa elem;
-	int begin;
-	int size;
-	int index;
-	int value;
-	int smallest_index;
-	int smallest_value;
-	CNfa begin_elem;
+	byte bytes[];
 
-	size = nfa_set.size();
-	for (begin = 0; begin < size; ++begin)
+	try
 	  {
-	    elem = (CNfa) nfa_set.elementAt(begin);
-	    smallest_value = elem.m_label;
-	    smallest_index = begin;
-
-	    for (index = begin + 1; index < size; ++index)
-	      {
-		elem = (CNfa) nfa_set.elementAt(index);
-		value = elem.m_label;
-
-		if (value < smallest_value)
-		  {
-		    smallest_index = index;
-		    smallest_value = value;
-		  }
-	      }
-
-	    begin_elem = (CNfa) nfa_set.elementAt(begin);
-	    elem = (CNfa) nfa_set.elementAt(smallest_index);
-	    nfa_set.setElementAt(elem,begin);
-	    nfa_set.setElementAt(begin_elem,smallest_index);
+	    bytes = s.getBytes("UTF-8");
 	  }
-
-	if (CUtility.OLD_DEBUG)
+	catch (java.io.UnsupportedEncodingException e)
 	  {
-	    System.out.print("NFA vector indices: ");  
-	    
-	    for (index = 0; index < size; ++index)
-	      {
-		elem = (CNfa) nfa_set.elementAt(index);
-		System.out.print(elem.m_label + " ");
-	      }
-	    System.out.println();
-	  }	
+	    throw new Error(e.toString());
+	  }
+	add_int(digest, bytes.length);
+	digest.update(bytes);
+      }
 
-	return;
+  /***************************************************************
+    Function: add_int
+    **************************************************************/
+  private static void add_int
+    (
+     java.security.MessageDigest digest,
+     int n
+     )
+      {
+	digest.update((byte) (n >>> 24));
+	digest.update((byte) (n >>> 16));
+	digest.update((byte) (n >>> 8));
+	digest.update((byte) n);
       }
 
   /***************************************************************
-    Function: get_unmarked
-    Description: Returns next unmarked DFA state.
+    Function: add_generator
+    Description: Adds the running JLex to digest: the jar it came
+    from, or else, when it was loaded from a directory, all of its
+    class files, in name order.
     **************************************************************/
-  private CDfa get_unmarked
+  private static void add_generator
     (
+     java.security.MessageDigest digest
      )
+      throws java.io.IOException
       {
-	int size;
-	CDfa dfa;
+	java.security.CodeSource source
+	  = CCache.class.getProtectionDomain().getCodeSource();
+	java.io.File location;
+	java.io.File classes[];
 
-	size = m_spec.m_dfa_states.size();
-	while (m_unmarked_dfa < size)
+	if (null == source)
+	  {
+	    throw new java.io.IOException("cannot find JLex's classes");
+	  }
+	try
 	  {
-	    dfa = (CDfa) m_spec.m_dfa_states.elementAt(m_unmarked_dfa);
+	    location = new java.io.File(source.getLocation().toURI());
+	  }
+	catch (java.net.URISyntaxException e)
+	  {
+	    throw new java.io.IOException(e.toString());
+	  }
 
-	    if (false == dfa.m_mark)
-	      {
-		if (CUtility.OLD_DUMP_DEBUG)
-		  {
-		    System.out.print("*");
-		    System.out.flush();
-		  }
+	if (location.isFile())
+	  {
+	    add_string(digest, "jar");
+	    digest.update(java.nio.file.Files.readAllBytes(location.toPath()));
+	    return;
+	  }
 
-		if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
-		  {
-		    System.out.println("---------------");
-		    System.out.print("working on DFA state " 
-				     + m_unmarked_dfa
-				     + " = NFA states: ");
-		    m_lexGen.print_set(dfa.m_nfa_set);
-		    System.out.println();
-		  }
+	classes = new java.io.File(location, "JLex").listFiles();
+	if (null == classes)
+	  {
+	    throw new java.io.IOException("cannot list " + location);
+	  }
+	Arrays.sort(classes);
+	for (int i = 0; i < classes.length; ++i)
+	  {
+	    if (classes[i].getName().endsWith(".class"))
+	      {
+		byte bytes[] = java.nio.file.Files.readAllBytes(classes[i].toPath());
 
-		return dfa;
+		add_string(digest, classes[i].getName());
+		add_int(digest, bytes.length);
+		digest.update(bytes);
 	      }
-
-	    ++m_unmarked_dfa;
 	  }
-
-	return null;
       }
-  
+
   /***************************************************************
-    function: add_to_dstates
-    Description: Takes as input a CBunch with details of
-    a dfa state that needs to be created.
-    1) Allocates a new dfa state and saves it in 
-    the appropriate CSpec vector.
-    2) Initializes the fields of the dfa state
-    with the information in the CBunch.
-    3) Returns index of new dfa.
+    Function: fetch
+    Description: Copies the cached lexer to output and returns
+    true, or returns false if there is none.
     **************************************************************/
-  private int add_to_dstates
+  boolean fetch
     (
-     CBunch bunch
+     String output
      )
       {
-	CDfa dfa;
-	
-	if (CUtility.DEBUG)
+	if (false == m_entry.isFile())
 	  {
-	    CUtility.ASSERT(null != bunch.m_nfa_set);
-	    CUtility.ASSERT(null != bunch.m_nfa_bit);
-	    CUtility.ASSERT(null != bunch.m_accept 
-			    || CSpec.NONE == bunch.m_anchor);
+	    return false;
 	  }
 
-	/* Allocate, passing CSpec so dfa label can be set. */
-	dfa = CAlloc.newCDfa(m_spec);
-	
-	/* Initialize fields, including the mark field. */
-	dfa.m_nfa_set = (Vector) bunch.m_nfa_set.clone();
-	dfa.m_nfa_bit = (SparseBitSet) bunch.m_nfa_bit.clone();
-	dfa.m_accept = bunch.m_accept;
-	dfa.m_anchor = bunch.m_anchor;
-	dfa.m_mark = false;
-	
-	/* Register dfa state using BitSet in CSpec Hashtable. */
-	m_spec.m_dfa_sets.put(dfa.m_nfa_bit,dfa);
-	/*registerCDfa(dfa);*/
-
-	if (CUtility.OLD_DUMP_DEBUG)
+	try
 	  {
-	    System.out.print("Registering set : ");
-	    m_lexGen.print_set(dfa.m_nfa_set);
-	    System.out.println();
+	    java.nio.file.Files.copy(m_entry.toPath(),
+		new java.io.File(output).toPath(),
+		java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+	  }
+	catch (java.io.IOException e)
+	  {
+	    System.out.println("Warning: not using the cache: " + e);
+	    return false;
 	  }
 
-	return dfa.m_label;
+	System.out.println("Copied " + output + " from the cache ("
+			   + m_key.substring(0, 12) + ").");
+	return true;
       }
 
   /***************************************************************
-    Function: in_dstates
+    Function: store
+    Description: Saves the lexer just generated in output.  It is
+    written under a temporary name and then renamed, so that other
+    JLex runs sharing the directory never see part of an entry.
     **************************************************************/
-  private int in_dstates
+  void store
     (
-     CBunch bunch
+     String output
      )
       {
-	CDfa dfa;
-	
-	if (CUtility.OLD_DEBUG)
+	java.io.File temp = null;
+
+	try
 	  {
-	    System.out.print("Looking for set : ");
-	    m_lexGen.print_set(bunch.m_nfa_set);
+	    temp = java.io.File.createTempFile(m_key, ".tmp", m_dir);
+	    java.nio.file.Files.copy(new java.io.File(output).toPath(),
+		temp.toPath(),
+		java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+	    java.nio.file.Files.move(temp.toPath(), m_entry.toPath(),
+		java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+		java.nio.file.StandardCopyOption.ATOMIC_MOVE);
 	  }
-
-	dfa = (CDfa) m_spec.m_dfa_sets.get(bunch.m_nfa_bit);
-
-	if (null != dfa)
+	catch (java.io.IOException e)
 	  {
-	    if (CUtility.OLD_DUMP_DEBUG)
+	    System.out.println("Warning: not saved in the cache: " + e);
+	    if (null != temp)
 	      {
-		System.out.println(" FOUND!");
+		temp.delete();
 	      }
-	    
-	    return dfa.m_label;
-	  }
-
-	if (CUtility.OLD_DUMP_DEBUG)
-	  {
-	    System.out.println(" NOT FOUND!");
 	  }
-	return NOT_IN_DSTATES;
       }
-
 }
-
-/***************************************************************
-  Class: CAlloc
-  **************************************************************/
-class CAlloc
+
+/***************************************************************
+  Class: CStats
+  Description: What one run of JLex did, for the -stats option:
+  the sizes of the machines it built and the wall time of each of
+  its phases.  write() appends them to a file as one JSON object
+  on a line of its own, so that one file can collect the runs of
+  many builds; a count is -1 if its phase did not run (as when
+  the lexer came from the cache).
+ **************************************************************/
+class CStats
 {
   /***************************************************************
-    Function: newCDfa
+    Member Variables
+    **************************************************************/
+  private String m_filename; /* The specification. */
+  private String m_options; /* Options that change the output. */
+  private String m_cache; /* "hit", "miss" or "off". */
+  private long m_start; /* System.nanoTime() at the start of the run. */
+  private long m_mark; /* System.nanoTime() at the end of the last phase. */
+  private StringBuffer m_phases; /* "name":ms pairs, in phase order. */
+
+  /* The counts; set by CLexGen and CEmit as they go. */
+  int m_nfa_states; /* NFA states made by CMakeNfa. */
+  int m_charset; /* Characters (with BOL and EOF) before CSimplifyNfa. */
+  int m_classes; /* Character classes after CSimplifyNfa. */
+  int m_dfa_states; /* DFA states before CMinimize. */
+  int m_min_states; /* DFA states after CMinimize. */
+  int m_min_rows; /* Distinct rows of the minimized table. */
+  int m_min_columns; /* Distinct columns of the minimized table. */
+  int m_backup_states; /* States that can back up (see CBackup). */
+  int m_unbounded_states; /* Those that can first read any amount. */
+  int m_table_ints; /* Ints in the tables of the lexer (see CEmit). */
+  long m_output_bytes; /* Size of the lexer source file. */
+
+  /***************************************************************
+    Function: CStats
     **************************************************************/
-  static CDfa newCDfa
+  CStats
     (
-     CSpec spec
+     String filename,
+     String options
      )
       {
-	CDfa dfa;
-	
-	dfa = new CDfa(spec.m_dfa_states.size());
-	spec.m_dfa_states.addElement(dfa);
-
-	return dfa;
+	m_filename = filename;
+	m_options = options;
+	m_cache = "off";
+	m_start = System.nanoTime();
+	m_mark = m_start;
+	m_phases = new StringBuffer();
+
+	m_nfa_states = -1;
+	m_charset = -1;
+	m_classes = -1;
+	m_dfa_states = -1;
+	m_min_states = -1;
+	m_min_rows = -1;
+	m_min_columns = -1;
+	m_backup_states = -1;
+	m_unbounded_states = -1;
+	m_table_ints = -1;
+	m_output_bytes = -1;
       }
 
   /***************************************************************
-    Function: newCNfaPair
-    Description: 
+    Function: set_cache
     **************************************************************/
-  static CNfaPair newCNfaPair
+  void set_cache
     (
+     boolean hit
      )
       {
-	CNfaPair pair = new CNfaPair();
-	
-	return pair;
+	m_cache = hit ? "hit" : "miss";
       }
-  /***************************************************************
-    Function: newNLPair
-    Description: return a new CNfaPair that matches a new 
-                 line: (\r\n?|[\n\uu2028\uu2029])
-		 Added by CSA 8-Aug-1999, updated 10-Aug-1999
-    **************************************************************/
-  static CNfaPair newNLPair(CSpec spec) {
-    CNfaPair pair = newCNfaPair();
-    pair.m_end=newCNfa(spec); // newline accepting state
-    pair.m_start=newCNfa(spec); // new state with two epsilon edges
-    pair.m_start.m_next = newCNfa(spec);
-    pair.m_start.m_next.m_edge = CNfa.CCL;
-    pair.m_start.m_next.m_set = new CSet();
-    pair.m_start.m_next.m_set.add('\n');
-    if (spec.m_dtrans_ncols-CSpec.NUM_PSEUDO > 2029) {
-      pair.m_start.m_next.m_set.add(2028); /*U+2028 is LS, the line separator*/
-      pair.m_start.m_next.m_set.add(2029); /*U+2029 is PS, the paragraph sep.*/
-    }
-    pair.m_start.m_next.m_next = pair.m_end; // accept '\n', U+2028, or U+2029
-    pair.m_start.m_next2 = newCNfa(spec);
-    pair.m_start.m_next2.m_edge = '\r';
-    pair.m_start.m_next2.m_next = newCNfa(spec);
-    pair.m_start.m_next2.m_next.m_next = pair.m_end; // accept '\r';
-    pair.m_start.m_next2.m_next.m_next2 = newCNfa(spec);
-    pair.m_start.m_next2.m_next.m_next2.m_edge = '\n';
-    pair.m_start.m_next2.m_next.m_next2.m_next = pair.m_end; // accept '\r\n';
-    return pair;
-  }
 
   /***************************************************************
-    Function: newCNfa
-    Description: 
+    Function: phase
+    Description: Records the time since the end of the last phase
+    (or the start of the run) as that of the phase just ended.
     **************************************************************/
-  static CNfa newCNfa
+  void phase
     (
-     CSpec spec
+     String name
      )
       {
-	CNfa p;
-
-	/* UNDONE: Buffer this? */
+	long now = System.nanoTime();
 
-	p = new CNfa();
-	
-	/*p.m_label = spec.m_nfa_states.size();*/
-	spec.m_nfa_states.addElement(p);
-	p.m_edge = CNfa.EPSILON;
-	
-	return p;
+	add_time(name, now - m_mark);
+	m_mark = now;
       }
-}
 
-/***************************************************************
-  Class: Main
-  Description: Top-level lexical analyzer generator function.
- **************************************************************/
-public class Main
-{
   /***************************************************************
-    Function: main
+    Function: add_time
     **************************************************************/
-  public static void main
+  private void add_time
     (
-     String arg[]
+     String name,
+     long nanos
      )
-    throws java.io.IOException
       {
-	CLexGen lg;
-
-	if (arg.length < 1)
+	if (0 != m_phases.length())
 	  {
-	    System.out.println("Usage: JLex.Main <filename>");
-	    return;
+	    m_phases.append(',');
 	  }
+	m_phases.append(quote(name)).append(':');
+	m_phases.append(String.format(java.util.Locale.ROOT, "%.3f",
+				      nanos / 1e6));
+      }
 
-	/* Note: For debuging, it may be helpful to remove the try/catch
-	   block and permit the Exception to propagate to the top level. 
-	   This gives more information. */
-	try 
-	  {	
-	    lg = new CLexGen(arg[0]);
-	    lg.generate();
+  /***************************************************************
+    Function: write
+    Description: Appends the record of the run, ended now, to the
+    file stats.  A failure to do so is only reported.
+    **************************************************************/
+  void write
+    (
+     String stats
+     )
+      {
+	StringBuffer line = new StringBuffer();
+
+	add_time("total", System.nanoTime() - m_start);
+
+	line.append("{\"spec\":").append(quote(m_filename));
+	line.append(",\"options\":").append(quote(m_options));
+	line.append(",\"cache\":").append(quote(m_cache));
+	line.append(",\"nfa_states\":").append(m_nfa_states);
+	line.append(",\"charset\":").append(m_charset);
+	line.append(",\"classes\":").append(m_classes);
+	line.append(",\"dfa_states\":").append(m_dfa_states);
+	line.append(",\"min_dfa_states\":").append(m_min_states);
+	line.append(",\"min_rows\":").append(m_min_rows);
+	line.append(",\"min_columns\":").append(m_min_columns);
+	line.append(",\"backup_states\":").append(m_backup_states);
+	line.append(",\"unbounded_backup_states\":").append(m_unbounded_states);
+	line.append(",\"table_bytes\":")
+	  .append(m_table_ints < 0 ? -1 : 4L * m_table_ints);
+	line.append(",\"output_bytes\":").append(m_output_bytes);
+	line.append(",\"time_ms\":{").append(m_phases).append("}}");
+
+	try
+	  {
+	    java.io.Writer out = new java.io.OutputStreamWriter(
+		new java.io.FileOutputStream(stats, true), "UTF-8");
+	    out.write(line.toString());
+	    out.write('\n');
+	    out.close();
+	  }
+	catch (java.io.IOException e)
+	  {
+	    System.out.println("Warning: statistics not written: " + e);
 	  }
-	catch (Error e)
+      }
+
+  /***************************************************************
+    Function: quote
+    Description: Returns s as a JSON string.
+    **************************************************************/
+  private static String quote
+    (
+     String s
+     )
+      {
+	StringBuffer buf = new StringBuffer("\"");
+
+	for (int i = 0; i < s.length(); ++i)
 	  {
-	    System.out.println(e.getMessage());
+	    char c = s.charAt(i);
+
+	    if ('"' == c || '\\' == c)
+	      {
+		buf.append('\\').append(c);
+	      }
+	    else if (c < ' ')
+	      {
+		buf.append(String.format("\\u%04x", (int) c));
+	      }
+	    else
+	      {
+		buf.append(c);
+	      }
 	  }
+	return buf.append('"').toString();
       }
-}    
+}
 
 /***************************************************************
   Class: CDTrans
@@ -3888,43 +7247,6 @@ class CDTrans
       }
 }
 
-/***************************************************************
-  Class: CDfa
-  **************************************************************/
-class CDfa 
-{
-  /***************************************************************
-    Member Variables
-    ***********************************************************/
-  int m_group;
-  boolean m_mark;
-  CAccept m_accept;
-  int m_anchor;
-  Vector m_nfa_set;
-  SparseBitSet m_nfa_bit;
-  int m_label;
-
-  /***************************************************************
-    Function: CDfa
-    **************************************************************/
-  CDfa
-    (
-     int label
-     )
-      {
-	m_group = 0;
-	m_mark = false;
-
-	m_accept = null;
-	m_anchor = CSpec.NONE;
-
-	m_nfa_set = null;
-	m_nfa_bit = null;
-
-	m_label = label;
-      }
-}
-
 /***************************************************************
   Class: CAccept
  **************************************************************/
@@ -4814,6 +8136,8 @@ class CLexGen
   private CNfa2Dfa m_nfa2dfa; /* NFA to DFA machine (transition table) 
 				 conversion module. */
   private CMinimize m_minimize; /* Transition table compressor. */
+  private CBackup m_backup; /* Finds where the lexer backs up. */
+  private CProfile m_profile; /* Renumbers states by a sample input. */
   private CSimplifyNfa m_simplifyNfa; /* NFA simplifier using char classes */
   private CEmit m_emit; /* Output module that emits source code
 			   into the generated lexer file. */
@@ -4905,6 +8229,8 @@ class CLexGen
 	/* Nfa to dfa converter. */
 	m_nfa2dfa = new CNfa2Dfa();
 	m_minimize = new CMinimize();
+	m_backup = new CBackup();
+	m_profile = new CProfile();
 	m_makeNfa = new CMakeNfa();
 	m_simplifyNfa = new CSimplifyNfa();
 
@@ -4914,6 +8240,60 @@ class CLexGen
 	m_init_flag = true;
       }
 
+  /***************************************************************
+    Function: set_pairwise
+    Description: Selects the old pairwise DFA minimization
+    (CMinimize.pairwise) instead of Hopcroft's.
+    **************************************************************/
+  void set_pairwise
+    (
+     boolean pairwise
+     )
+      {
+	m_spec.m_pairwise = pairwise;
+      }
+
+  /***************************************************************
+    Function: set_profile
+    Description: Has the DFA states numbered by how often the
+    file sample enters them (for the -profile option).
+    **************************************************************/
+  void set_profile
+    (
+     String sample
+     )
+      {
+	m_spec.m_profile = sample;
+      }
+
+  /***************************************************************
+    Function: set_stats
+    Description: Has the counts and phase times of this run
+    recorded in stats (for the -stats option).
+    **************************************************************/
+  void set_stats
+    (
+     CStats stats
+     )
+      {
+	m_spec.m_stats = stats;
+      }
+
+  /***************************************************************
+    Function: phase
+    Description: Marks the end of a phase for -stats.
+    **************************************************************/
+  private void phase
+    (
+     String name
+     )
+      {
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.phase(name);
+	  }
+      }
+
   /***************************************************************
     Function: generate
     Description: 
@@ -4949,6 +8329,7 @@ class CLexGen
 	  {
 	    CError.parse_error(CError.E_EOF,m_input.m_line_number);
 	  }
+	phase("user_code");
 
 	if (m_spec.m_verbose)
 	  {
@@ -4960,6 +8341,7 @@ class CLexGen
 	  {
 	    CError.parse_error(CError.E_EOF,m_input.m_line_number);
 	  }
+	phase("declarations");
 
 	if (m_spec.m_verbose)
 	  {
@@ -4975,6 +8357,10 @@ class CLexGen
 	  {
 	    System.out.println("Outputting lexical analyzer code.");
 	  }
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_table_ints = 0;
+	  }
 	m_emit.emit(m_spec,m_outstream);
 
 	if (m_spec.m_verbose && true == CUtility.OLD_DUMP_DEBUG)
@@ -4983,6 +8369,7 @@ class CLexGen
 	  }
 	
 	m_outstream.close();
+	phase("emit");
       }
 
   /***************************************************************
@@ -5092,6 +8479,8 @@ class CLexGen
   private final int YYLEX_THROW_CODE = 4;
   private final int EOF_THROW_CODE = 5;
   private final int EOF_VALUE_CODE = 6;
+  private final int SKIP_CODE = 7;
+  private final int RESET_CODE = 8;
 
   /***************************************************************
     Function: packCode
@@ -5115,6 +8504,8 @@ class CLexGen
 			    || EOF_VALUE_CODE == specified
 			    || INIT_THROW_CODE == specified
 			    || YYLEX_THROW_CODE == specified
+			    || SKIP_CODE == specified
+			    || RESET_CODE == specified
 			    || EOF_THROW_CODE == specified);
 	  }
 
@@ -5185,6 +8576,14 @@ class CLexGen
 		      case EOF_THROW_CODE:
 			m_spec.m_eof_throw_read = prev_read;
 			break;
+
+		      case SKIP_CODE:
+			m_spec.m_skip_read = prev_read;
+			break;
+
+		      case RESET_CODE:
+			m_spec.m_reset_read = prev_read;
+			break;
 			
 		      default:
 			CError.parse_error(CError.E_INTERNAL,m_input.m_line_number);
@@ -5230,6 +8629,13 @@ class CLexGen
     '\0'
     };
 
+  private char m_linear_dir[] = { 
+    '%', 'l', 'i',
+    'n', 'e', 'a',
+    'r',
+    '\0'
+    };
+
   private char m_cup_dir[] = { 
     '%', 'c', 'u',
     'p', 
@@ -5242,6 +8648,27 @@ class CLexGen
     '\0'
     };
 
+  private char m_compress_dir[] = { 
+    '%', 'c', 'o', 
+    'm', 'p', 'r',
+    'e', 's', 's',
+    '\0'
+    };
+
+  private char m_directcode_dir[] = { 
+    '%', 'd', 'i', 
+    'r', 'e', 'c',
+    't', 'c', 'o',
+    'd', 'e',
+    '\0'
+    };
+
+  private char m_flat_dir[] = { 
+    '%', 'f', 'l', 
+    'a', 't',
+    '\0'
+    };
+
   private char m_implements_dir[] = { 
     '%', 'i', 'm', 'p', 'l', 'e', 'm', 'e', 'n', 't', 's', 
     '\0'
@@ -5388,6 +8815,32 @@ class CLexGen
     '\0'
     };
 
+  private char m_skip_code_dir[] = { 
+    '%', 's', 'k',
+    'i', 'p', '{',
+    '\0'
+    };
+
+  private char m_skip_code_end_dir[] = { 
+    '%', 's', 'k',
+    'i', 'p', '}',
+    '\0'
+    };
+
+  private char m_reset_code_dir[] = { 
+    '%', 'r', 'e',
+    's', 'e', 't',
+    '{',
+    '\0'
+    };
+
+  private char m_reset_code_end_dir[] = { 
+    '%', 'r', 'e',
+    's', 'e', 't',
+    '}',
+    '\0'
+    };
+
   private char m_class_code_dir[] = { 
     '%', '{',
     '\0'
@@ -5537,11 +8990,40 @@ class CLexGen
 			      "java_cup.runtime.Symbol".toCharArray();
 			  break;
 			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_compress_dir,
+						      0,
+						      m_compress_dir.length - 1))
+			{
+			  /* Set table compression to ON. */
+			  m_input.m_line_index = m_compress_dir.length;
+			  m_spec.m_compress = true;
+			  break;
+			}
 	      
 		      /* Bad directive. */
 		      CError.parse_error(CError.E_DIRECT,
 					 m_input.m_line_number);
 		      break;
+
+		    case 'd':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_directcode_dir,
+						 0,
+						 m_directcode_dir.length - 1))
+			{
+			  /* Set direct-coded transitions to ON. */
+			  m_input.m_line_index = m_directcode_dir.length;
+			  m_spec.m_directcode = true;
+			  break;
+			}
+
+		      /* Bad directive. */
+		      CError.parse_error(CError.E_DIRECT,
+					 m_input.m_line_number);
+		      break;
 		      
 		    case 'e':
 		      if (0 == CUtility.charncmp(m_input.m_line,
@@ -5611,6 +9093,17 @@ class CLexGen
 			  m_spec.m_dtrans_ncols = CUtility.MAX_EIGHT_BIT + 1;
 			  break;
 			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
+						      0,
+						      m_flat_dir,
+						      0,
+						      m_flat_dir.length - 1))
+			{
+			  /* One flat transition table (see emit_flat_table). */
+			  m_input.m_line_index = m_flat_dir.length;
+			  m_spec.m_flat = true;
+			  break;
+			}
 
 		      /* Bad directive. */
 		      CError.parse_error(CError.E_DIRECT,
@@ -5694,6 +9187,18 @@ class CLexGen
 		      break;
 
 		    case 'l':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_linear_dir,
+						 0,
+						 m_linear_dir.length - 1))
+			{
+			  /* Remember failures, so that scanning is linear. */
+			  m_input.m_line_index = m_linear_dir.length;
+			  m_spec.m_linear = true;
+			  break;
+			}
+
 		      if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
 						 m_line_dir,
@@ -5747,8 +9252,41 @@ class CLexGen
 					 m_input.m_line_number);
 		      break;
 
+		    case 'r':
+		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_reset_code_dir,
+						 0,
+						 m_reset_code_dir.length - 1))
+			{
+			  m_spec.m_reset_code = packCode(m_reset_code_dir,
+							 m_reset_code_end_dir,
+							 m_spec.m_reset_code,
+							 m_spec.m_reset_read,
+							 RESET_CODE);
+			  break;
+			}
+
+		      /* Bad directive. */
+		      CError.parse_error(CError.E_DIRECT,
+					 m_input.m_line_number);
+		      break;
+
 		    case 's':
 		      if (0 == CUtility.charncmp(m_input.m_line,
+						 0,
+						 m_skip_code_dir,
+						 0,
+						 m_skip_code_dir.length - 1))
+			{
+			  m_spec.m_skip_code = packCode(m_skip_code_dir,
+							m_skip_code_end_dir,
+							m_spec.m_skip_code,
+							m_spec.m_skip_read,
+							SKIP_CODE);
+			  break;
+			}
+		      else if (0 == CUtility.charncmp(m_input.m_line,
 						 0,
 						 m_state_dir,
 						 0,
@@ -5888,8 +9426,19 @@ class CLexGen
 	  }
 	m_makeNfa.allocate_BOL_EOF(m_spec);
 	m_makeNfa.thompson(this,m_spec,m_input);
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_nfa_states = m_spec.m_nfa_states.size();
+	    m_spec.m_stats.m_charset = m_spec.m_dtrans_ncols;
+	  }
+	phase("nfa");
 	
 	m_simplifyNfa.simplify(m_spec);
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_classes = m_spec.m_dtrans_ncols;
+	  }
+	phase("classes");
 
 	/*print_nfa();*/
 
@@ -5903,6 +9452,11 @@ class CLexGen
 	    System.out.println("Creating DFA transition table.");
 	  }
 	m_nfa2dfa.make_dfa(this,m_spec);
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_dfa_states = m_spec.m_dfa_count;
+	  }
+	phase("dfa");
 
 	if (CUtility.FOODEBUG) {
 	  print_header();
@@ -5913,6 +9467,27 @@ class CLexGen
 	    System.out.println("Minimizing DFA transition table.");
 	  }
 	m_minimize.min_dfa(m_spec);
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_min_states = m_spec.m_row_map.length;
+	    m_spec.m_stats.m_min_rows = m_spec.m_dtrans_vector.size();
+	    m_spec.m_stats.m_min_columns = m_spec.m_dtrans_ncols;
+	  }
+	phase("minimize");
+
+	if (null != m_spec.m_profile)
+	  {
+	    m_profile.reorder(m_spec, m_spec.m_profile);
+	    phase("profile");
+	  }
+
+	m_backup.analyze(m_spec);
+	if (null != m_spec.m_stats)
+	  {
+	    m_spec.m_stats.m_backup_states = m_spec.m_backup_count;
+	    m_spec.m_stats.m_unbounded_states = m_spec.m_unbounded_count;
+	  }
+	phase("backup");
       }
 
   /***************************************************************
@@ -7716,17 +11291,17 @@ final class SparseBitSet implements Cloneable {
      * Return an <code>Enumeration</code> of <code>Integer</code>s
      * which represent set bit indices in this SparseBitSet.
      */
-    public Enumeration elements() {
-	return new Enumeration() {
+    public Enumeration<Integer> elements() {
+	return new Enumeration<Integer>() {
 	    int idx=-1, bit=BITS;
 	    { advance(); }
 	    public boolean hasMoreElements() {
 		return (idx<size);
 	    }
-	    public Object nextElement() {
+	    public Integer nextElement() {
 		int r = bit + (offs[idx] << LG_BITS);
 		advance();
-		return new Integer(r);
+		return Integer.valueOf(r);
 	    }
 	    private void advance() {
 		while (idx<size) {